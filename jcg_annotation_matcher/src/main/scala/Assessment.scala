@@ -72,4 +72,16 @@ object Error extends Assessment {
     override def combine(other: Assessment): Assessment = Error
     override def toString: String = "Error"
     override def shortNotation: String = "E"
+}
+
+object Timeout extends Assessment {
+    override def combine(other: Assessment): Assessment = Timeout
+    override def toString: String = "Timeout"
+    override def shortNotation: String = "TO"
+}
+
+object OutOfMemory extends Assessment {
+    override def combine(other: Assessment): Assessment = OutOfMemory
+    override def toString: String = "OutOfMemory"
+    override def shortNotation: String = "OOM"
 }
\ No newline at end of file
@@ -1,5 +1,4 @@
 import java.io.File
-import java.io.FileInputStream
 
 import org.opalj.br
 import org.opalj.br.Annotation
@@ -7,7 +6,6 @@ import org.opalj.br.analyses.Project
 import org.opalj.br.analyses.SomeProject
 import org.opalj.log.GlobalLogContext
 import org.opalj.log.OPALLogger
-import play.api.libs.json.Json
 
 /**
  * For a given project and a computed (serialized as json representation of [[ReachableMethods]])
@@ -32,23 +30,41 @@ object CGMatcher {
         verbose:             Boolean              = false,
         locationSupport:     Boolean              = true
     ): Array[Assessment]  = {
+        if(!serializedCallGraph.exists()){
+            return Array(Error, Error);
+        }
+
+        matchCallSites(
+            projectSpec, JREPath, parent, IndexedCallGraph.read(serializedCallGraph), verbose, locationSupport
+        )
+    }
+
+    /**
+     * Computes whether the computed call graph, e.g., as built by an [[IndexedCallGraphSink]], is
+     * sound/unsound/imprecise with regards to the annotations in the specified target project.
+     */
+    def matchCallSites(
+        projectSpec:       ProjectSpecification,
+        JREPath:           String,
+        parent:            File,
+        computedCallGraph: IndexedCallGraph,
+        verbose:           Boolean,
+        locationSupport:   Boolean
+    ): Array[Assessment] = {
         var finalAssessment: Array[Assessment] = Array(Sound, NoTests)
         if (!verbose)
             OPALLogger.updateLogger(GlobalLogContext, new DevNullLogger())
 
-        val jreFiles = JRELocation.getAllJREJars(JREPath)
+        val reader = Project.JavaClassFileReader()
+        val jreClassFiles = JREClassFiles(JREPath, reader.AllClassFiles(_), reader.ClassFile(_))
         implicit val p: SomeProject = Project(
-            Array(projectSpec.target(parent)) ++ projectSpec.allClassPathEntryFiles(parent) ++ jreFiles,
-            Array.empty[File]
+            reader.AllClassFiles(Array(projectSpec.target(parent)) ++ projectSpec.allClassPathEntryFiles(parent)) ++
+                jreClassFiles,
+            Seq.empty,
+            libraryClassFilesAreInterfacesOnly = true,
+            Seq.empty
         )
 
-        if(!serializedCallGraph.exists()){
-            return Array(Error, Error);
-        }
-
-        val computedReachableMethods =
-            Json.parse(new FileInputStream(serializedCallGraph)).validate[ReachableMethods].get.toMap
-
         for {
             clazz ← p.allProjectClassFiles
             method ← clazz.methodsWithBody
@@ -64,7 +80,7 @@ object CGMatcher {
                 val directCallAnnotations = AnnotationHelper.directCallAnnotations(annotation)
 
                 val csAssessment = handleDirectCallAnnotations(
-                    computedReachableMethods.getOrElse(annotatedMethod, Set.empty),
+                    computedCallGraph.callSites(annotatedMethod),
                     annotatedMethod,
                     method,
                     directCallAnnotations,
@@ -79,7 +95,7 @@ object CGMatcher {
                 val indirectCallAnnotations = AnnotationHelper.indirectCallAnnotations(annotation)
 
                 val icsAssessment = handleIndirectCallAnnotations(
-                    computedReachableMethods,
+                    computedCallGraph,
                     method,
                     indirectCallAnnotations,
                     verbose
@@ -171,7 +187,7 @@ object CGMatcher {
      * whether the prohibit call targets are not present in the computed call graph.
      */
     private def handleIndirectCallAnnotations(
-        reachableMethods:        Map[Method, Set[CallSite]],
+        callGraph:               IndexedCallGraph,
         source:                  br.Method,
         indirectCallAnnotations: Seq[Annotation],
         verbose:                 Boolean
@@ -190,7 +206,7 @@ object CGMatcher {
             AnnotationVerifier.verifyJVMTypes(resolvedTargets)
             for (declaringClass ← resolvedTargets) {
                 val annotatedTarget = Method(name, declaringClass, returnType, rtParameterTypes)
-                if (!callsIndirectly(reachableMethods, annotatedSource, annotatedTarget, verbose))
+                if (!callsIndirectly(callGraph, annotatedSource, annotatedTarget, verbose))
                     finalAssessment(0) = finalAssessment(0).combine(Unsound)
             }
 
@@ -198,7 +214,7 @@ object CGMatcher {
             AnnotationVerifier.verifyJVMTypes(prohibitedTargets)
             for (prohibitedTgt ← prohibitedTargets) {
                 val annotatedTarget = Method(name, prohibitedTgt, returnType, ptParameterTypes)
-                if (callsIndirectly(reachableMethods, annotatedSource, annotatedTarget, verbose))
+                if (callsIndirectly(callGraph, annotatedSource, annotatedTarget, verbose))
                     finalAssessment(1) = finalAssessment(1).combine(Imprecise)
                 else
                     finalAssessment(1) = finalAssessment(1).combine(Precise)
@@ -213,36 +229,18 @@ object CGMatcher {
      * Is there a path in the call graph from the `source` to the `annotatedTarget`?
      */
     private def callsIndirectly(
-        reachableMethods: Map[Method, Set[CallSite]],
-        source:           Method,
-        annotatedTarget:  Method,
-        verbose:          Boolean
+        callGraph:       IndexedCallGraph,
+        source:          Method,
+        annotatedTarget: Method,
+        verbose:         Boolean
     ): Boolean = {
-        var visited: Set[Method] = Set(source)
-        var workset: Set[Method] = Set(source)
-
-        while (workset.nonEmpty) {
-            val currentSource = workset.head
-            workset = workset.tail
-
-            val computedCallSites = reachableMethods.getOrElse(currentSource, Set.empty)
-
-            for (tgt ← computedCallSites.flatMap(_.targets)) {
-                if (tgt == annotatedTarget) {
-                    if (verbose) println(s"Found transitive call $source -> $annotatedTarget")
-                    return true;
-                }
-
-                if (!visited.contains(tgt)) {
-                    visited += tgt
-                    workset += tgt
-                }
-            }
+        if (callGraph.isReachableFrom(source, annotatedTarget)) {
+            if (verbose) println(s"Found transitive call $source -> $annotatedTarget")
+            true
+        } else {
+            if (verbose) println(s"Missed transitive call $source -> $annotatedTarget")
+            false
         }
-
-        if (verbose) println(s"Missed transitive call $source -> $annotatedTarget")
-
-        false
     }
 
     //
@@ -0,0 +1,43 @@
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.io.File
+import java.net.URL
+
+import org.opalj.br.ClassFile
+
+/**
+ * Reads the class files of a JRE using OPAL: the classes of its archives are read by OPAL itself,
+ * the classes that are only available in the run-time image of a modular JDK (see
+ * [[JREIndex.imageClasses]]) are read straight from the image (see [[JREIndex.classFile]]).
+ * Hence, in contrast to [[JRELocation.getAllJREJars]], JDK 9+ installations without jmod files
+ * are supported.
+ */
+object JREClassFiles {
+
+    /**
+     * @param readArchives  reads all class files of the given archives, e.g.,
+     *                      `reader.AllClassFiles(_)` of an OPAL class file reader
+     * @param readClassFile reads the class file(s) of the given stream, e.g., `reader.ClassFile(_)`
+     */
+    def apply(
+        JREPath:       String,
+        readArchives:  Array[File] ⇒ Iterable[(ClassFile, URL)],
+        readClassFile: (() ⇒ DataInputStream) ⇒ Iterable[ClassFile]
+    ): Iterable[(ClassFile, URL)] = {
+        val jre = JREIndex(JREPath)
+        if (!jre.contains(JREIndex.ObjectClass))
+            throw new IllegalArgumentException(s"$JREPath does not define ${JREIndex.ObjectClass}")
+
+        val imageClassFiles = jre.modulesImage match {
+            case Some(image) if jre.imageClasses.nonEmpty ⇒
+                val source = image.toURI.toURL
+                jre.imageClasses.toSeq.par.flatMap { className ⇒
+                    readClassFile(() ⇒ new DataInputStream(new ByteArrayInputStream(jre.classFile(className).get))).map(
+                        _ → source
+                    )
+                }.seq
+            case _ ⇒ Seq.empty
+        }
+        readArchives(jre.classArchives) ++ imageClassFiles
+    }
+}
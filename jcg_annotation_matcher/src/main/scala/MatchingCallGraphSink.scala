@@ -0,0 +1,32 @@
+import java.io.File
+
+/**
+ * Matches the pushed call graph against the annotations of the specified project (see
+ * [[CGMatcher.matchCallSites]]), i.e., the call graph is neither serialized nor parsed again.
+ *
+ * @param parent in case any specified location is a relative path, the `parent` will be used
+ *               as root.
+ */
+class MatchingCallGraphSink(
+        projectSpec:     ProjectSpecification,
+        JREPath:         String,
+        parent:          File,
+        verbose:         Boolean              = false,
+        locationSupport: Boolean              = true
+) extends IndexedCallGraphSink {
+
+    private[this] var result: Array[Assessment] = _
+
+    /**
+     * The assessment of the call graph, which is computed on the first access; if the sink has
+     * not been closed, e.g., because the analysis failed, the call graph is assessed as [[Error]].
+     */
+    def assessment: Array[Assessment] = {
+        if (result eq null) {
+            result =
+                if (!isComplete) Array(Error, Error)
+                else CGMatcher.matchCallSites(projectSpec, JREPath, parent, callGraph, verbose, locationSupport)
+        }
+        result
+    }
+}
@@ -0,0 +1,429 @@
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.EOFException
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.charset.StandardCharsets
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * A compact binary representation of [[ReachableMethods]].
+ *
+ * In contrast to the json representation, every string (names and types), every [[Method]] and
+ * every set of call targets is stored only once and referenced by its id afterwards. Sharing the
+ * target sets pays off in particular for CHA-like call graphs, where many (megamorphic) call
+ * sites, e.g., of `Object.toString`, have the same large target set.
+ * Definitions are emitted right before the first record that uses them, such that files can be
+ * written and read in a single streaming pass:
+ *
+ * {{{
+ * file             := MAGIC VERSION record* END
+ * record           := STRING tag, utf8 length (varint), utf8 bytes  -- defines the next string id
+ *                   | METHOD tag, name, declaringClass, returnType (string ids),
+ *                     #parameters, parameter types (string ids)    -- defines the next method id
+ *                   | TARGET_SET tag, #targets, target method ids  -- defines the next target set id
+ *                   | CONE_TARGET_SET tag, declared target (method id), #excluded, method ids,
+ *                     #additional, method ids                     -- defines the next target set id
+ *                   | HIERARCHY tag, #types, (type (string id), #supertypes, string ids,
+ *                     #declared methods, method ids)*              -- at most once, before any cone
+ *                   | REACHABLE_METHOD tag, method id, #call sites, call site*
+ * call site        := declared target (method id), line (zig-zag varint),
+ *                     pc (0 if unknown, pc + 1 otherwise), target set id
+ * }}}
+ *
+ * If the writer knows the [[TypeHierarchy]] (see [[CallGraphSink.useTypeHierarchy]]), target
+ * sets are stored symbolically as [[ConeTargetSet]]s where this is considerably smaller.
+ *
+ * All numbers are unsigned LEB128 varints unless stated otherwise.
+ */
+object BinaryCallGraphFormat {
+
+    final val FileExtension = ".cgb"
+
+    final val Magic: Array[Byte] = Array('J'.toByte, 'C'.toByte, 'G'.toByte, 'B'.toByte)
+
+    final val Version = 1
+
+    final val EndTag = 0
+    final val StringTag = 1
+    final val MethodTag = 2
+    final val ReachableMethodTag = 3
+    final val TargetSetTag = 4
+    final val ConeTargetSetTag = 5
+    final val HierarchyTag = 6
+
+    /**
+     * Returns true, if the given bytes start with the magic number of this format.
+     */
+    def hasMagic(header: Array[Byte]): Boolean = {
+        header.length >= Magic.length && Magic.indices.forall(i ⇒ header(i) == Magic(i))
+    }
+
+    def writeVarInt(out: OutputStream, value: Int): Unit = {
+        var v = value
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80)
+            v >>>= 7
+        }
+        out.write(v)
+    }
+
+    def writeSignedVarInt(out: OutputStream, value: Int): Unit = {
+        writeVarInt(out, (value << 1) ^ (value >> 31))
+    }
+
+    def readVarInt(in: InputStream): Int = {
+        var result = 0
+        var shift = 0
+        var b = 0
+        do {
+            b = in.read()
+            if (b == -1)
+                throw new EOFException("unexpected end of binary call graph")
+            result |= (b & 0x7F) << shift
+            shift += 7
+        } while ((b & 0x80) != 0)
+        result
+    }
+
+    def readSignedVarInt(in: InputStream): Int = {
+        val v = readVarInt(in)
+        (v >>> 1) ^ -(v & 1)
+    }
+
+    def writeVarLong(out: OutputStream, value: Long): Unit = {
+        var v = value
+        while ((v & ~0x7FL) != 0) {
+            out.write(((v & 0x7F) | 0x80).toInt)
+            v >>>= 7
+        }
+        out.write(v.toInt)
+    }
+
+    /**
+     * An int array with value semantics, e.g., the sorted method ids of a target set.
+     */
+    final class IntArrayKey(val values: Array[Int]) {
+
+        override val hashCode: Int = java.util.Arrays.hashCode(values)
+
+        override def equals(other: Any): Boolean = other match {
+            case that: IntArrayKey ⇒
+                this.hashCode == that.hashCode && java.util.Arrays.equals(this.values, that.values)
+            case _ ⇒ false
+        }
+    }
+}
+
+/**
+ * Writes call graphs in the [[BinaryCallGraphFormat]].
+ */
+class BinaryCallGraphWriter(out: OutputStream) extends CallGraphWriter {
+    import BinaryCallGraphFormat._
+
+    private[this] val stringIds = new java.util.HashMap[String, Integer]()
+    private[this] val methodIds = new java.util.HashMap[Method, Integer]()
+    private[this] val targetSetIds = new java.util.HashMap[IntArrayKey, Integer]()
+    private[this] val coneTargetSetIds = new java.util.IdentityHashMap[ConeTargetSet, Integer]()
+    private[this] var targetSetCount = 0
+
+    private[this] var hierarchy: TypeHierarchy = _
+    private[this] var hierarchyWritten = false
+
+    // the call sites of the current reachable method; definitions are written directly to `out`
+    private[this] val callSitesBuffer = new ByteArrayOutputStream()
+    private[this] var callSiteCount = 0
+    private[this] var currentMethod = -1
+
+    out.write(Magic)
+    out.write(Version)
+
+    override def startReachableMethod(method: Method): Unit = {
+        assert(currentMethod == -1, "the previous reachable method has not been finished")
+        currentMethod = methodId(method)
+        callSitesBuffer.reset()
+        callSiteCount = 0
+    }
+
+    override def useTypeHierarchy(hierarchy: TypeHierarchy): Unit = {
+        assert(!hierarchyWritten, "the type hierarchy has already been written")
+        this.hierarchy = hierarchy
+    }
+
+    override def usesTypeHierarchy: Boolean = true
+
+    override def writeCallSite(callSite: CallSite): Unit = callSite.targets match {
+        case cone: ConeTargetSet if usesHierarchy(cone.hierarchy) ⇒
+            writeCallSiteRecord(callSite.declaredTarget, callSite.line, callSite.pc, coneTargetSetId(cone))
+        case _ ⇒
+            super.writeCallSite(callSite)
+    }
+
+    override def writeCallSite(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targets:        Iterator[Method]
+    ): Unit = {
+        writeCallSiteRecord(declaredTarget, line, pc, targetSetId(declaredTarget, targets))
+    }
+
+    private[this] def writeCallSiteRecord(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targetSet:      Int
+    ): Unit = {
+        assert(currentMethod != -1, "call sites must belong to a reachable method")
+
+        writeVarInt(callSitesBuffer, methodId(declaredTarget))
+        writeSignedVarInt(callSitesBuffer, line)
+        writeVarInt(callSitesBuffer, if (pc.isDefined) pc.get + 1 else 0)
+        writeVarInt(callSitesBuffer, targetSet)
+        callSiteCount += 1
+    }
+
+    /**
+     * Returns true, if cones of the given hierarchy can be stored symbolically.
+     */
+    private[this] def usesHierarchy(hierarchy: TypeHierarchy): Boolean = {
+        if (this.hierarchy eq null)
+            this.hierarchy = hierarchy
+        this.hierarchy eq hierarchy
+    }
+
+    override def endReachableMethod(): Unit = {
+        assert(currentMethod != -1, "there is no reachable method to be finished")
+        out.write(ReachableMethodTag)
+        writeVarInt(out, currentMethod)
+        writeVarInt(out, callSiteCount)
+        callSitesBuffer.writeTo(out)
+        currentMethod = -1
+    }
+
+    override def close(): Unit = {
+        assert(currentMethod == -1, "the last reachable method has not been finished")
+        out.write(EndTag)
+        out.close()
+    }
+
+    override def abort(): Unit = out.close()
+
+    private[this] def methodId(method: Method): Int = {
+        val id = methodIds.get(method)
+        if (id ne null)
+            id
+        else {
+            val name = stringId(method.name)
+            val declaringClass = stringId(method.declaringClass)
+            val returnType = stringId(method.returnType)
+            val parameterTypes = method.parameterTypes.map(stringId)
+            out.write(MethodTag)
+            writeVarInt(out, name)
+            writeVarInt(out, declaringClass)
+            writeVarInt(out, returnType)
+            writeVarInt(out, parameterTypes.size)
+            parameterTypes.foreach(writeVarInt(out, _))
+            val newId = methodIds.size
+            methodIds.put(method, newId)
+            newId
+        }
+    }
+
+    private[this] def targetSetId(declaredTarget: Method, targets: Iterator[Method]): Int = {
+        val targetMethods = targets.toArray
+        val targetIds = targetMethods.map(methodId)
+        java.util.Arrays.sort(targetIds)
+        val key = new IntArrayKey(targetIds)
+        val id = targetSetIds.get(key)
+        if (id ne null)
+            id
+        else {
+            val newId =
+                if (hierarchy eq null)
+                    defineTargetSet(targetIds)
+                else ConeTargetSet.compress(declaredTarget, targetMethods.toSet, hierarchy) match {
+                    case cone: ConeTargetSet ⇒ coneTargetSetId(cone)
+                    case _                   ⇒ defineTargetSet(targetIds)
+                }
+            targetSetIds.put(key, newId)
+            newId
+        }
+    }
+
+    private[this] def defineTargetSet(targetIds: Array[Int]): Int = {
+        out.write(TargetSetTag)
+        writeVarInt(out, targetIds.length)
+        targetIds.foreach(writeVarInt(out, _))
+        targetSetCount += 1
+        targetSetCount - 1
+    }
+
+    private[this] def coneTargetSetId(cone: ConeTargetSet): Int = {
+        val id = coneTargetSetIds.get(cone)
+        if (id ne null)
+            id
+        else {
+            writeHierarchy()
+            val declaredTarget = methodId(cone.declaredTarget)
+            val excluded = cone.excluded.toArray.map(methodId)
+            val additional = cone.additional.toArray.map(methodId)
+            out.write(ConeTargetSetTag)
+            writeVarInt(out, declaredTarget)
+            writeVarInt(out, excluded.length)
+            excluded.foreach(writeVarInt(out, _))
+            writeVarInt(out, additional.length)
+            additional.foreach(writeVarInt(out, _))
+            targetSetCount += 1
+            coneTargetSetIds.put(cone, targetSetCount - 1)
+            targetSetCount - 1
+        }
+    }
+
+    private[this] def writeHierarchy(): Unit = {
+        if (!hierarchyWritten) {
+            hierarchyWritten = true
+            // all strings and methods have to be defined before the hierarchy record
+            val record = new ByteArrayOutputStream()
+            val types = hierarchy.types
+            writeVarInt(record, types.size)
+            for (tpe ← types) {
+                writeVarInt(record, stringId(tpe))
+                val supertypes = hierarchy.supertypes.getOrElse(tpe, Nil)
+                writeVarInt(record, supertypes.size)
+                supertypes.foreach(t ⇒ writeVarInt(record, stringId(t)))
+                val declaredMethods = hierarchy.declaredMethods.getOrElse(tpe, Set.empty)
+                writeVarInt(record, declaredMethods.size)
+                declaredMethods.foreach(m ⇒ writeVarInt(record, methodId(m)))
+            }
+            out.write(HierarchyTag)
+            record.writeTo(out)
+        }
+    }
+
+    private[this] def stringId(s: String): Int = {
+        val id = stringIds.get(s)
+        if (id ne null)
+            id
+        else {
+            val bytes = s.getBytes(StandardCharsets.UTF_8)
+            out.write(StringTag)
+            writeVarInt(out, bytes.length)
+            out.write(bytes)
+            val newId = stringIds.size
+            stringIds.put(s, newId)
+            newId
+        }
+    }
+}
+
+/**
+ * Reads call graphs in the [[BinaryCallGraphFormat]]; the magic number must already have been
+ * consumed from the given stream.
+ */
+class BinaryReachableMethodsIterator(
+        in:       DataInputStream,
+        interner: MethodInterner
+) extends ReachableMethodsIterator {
+    import BinaryCallGraphFormat._
+
+    private[this] val strings = ArrayBuffer.empty[String]
+    private[this] val methods = ArrayBuffer.empty[Method]
+    private[this] val targetSets = ArrayBuffer.empty[Set[Method]]
+    private[this] var hierarchy: TypeHierarchy = _
+
+    private[this] var nextRM: ReachableMethod = _
+
+    private[this] val version = in.readUnsignedByte()
+    if (version != Version)
+        throw new IllegalArgumentException(s"unsupported binary call graph version $version")
+    advance()
+
+    override def hasNext: Boolean = nextRM ne null
+
+    override def next(): ReachableMethod = {
+        if (nextRM eq null)
+            throw new NoSuchElementException("no more reachable methods")
+        val rm = nextRM
+        advance()
+        rm
+    }
+
+    override def close(): Unit = in.close()
+
+    private[this] def advance(): Unit = {
+        nextRM = null
+        while (nextRM eq null) {
+            in.readUnsignedByte() match {
+                case EndTag ⇒
+                    close()
+                    return ;
+                case StringTag ⇒
+                    val bytes = new Array[Byte](readVarInt(in))
+                    in.readFully(bytes)
+                    strings += interner.intern(new String(bytes, StandardCharsets.UTF_8))
+                case MethodTag ⇒
+                    val name = strings(readVarInt(in))
+                    val declaringClass = strings(readVarInt(in))
+                    val returnType = strings(readVarInt(in))
+                    val parameterTypes = List.fill(readVarInt(in))(strings(readVarInt(in)))
+                    methods += interner.method(name, declaringClass, returnType, parameterTypes)
+                case TargetSetTag ⇒
+                    targetSets += interner.targets(readTargets())
+                case ConeTargetSetTag ⇒
+                    if (hierarchy eq null)
+                        throw new IllegalArgumentException("invalid binary call graph: cone without hierarchy")
+                    val declaredTarget = methods(readVarInt(in))
+                    val excluded = readTargets()
+                    val additional = readTargets()
+                    // cones are not interned, as this would require their expansion
+                    targetSets += new ConeTargetSet(hierarchy, declaredTarget, excluded, additional)
+                case HierarchyTag ⇒
+                    hierarchy = readHierarchy()
+                case ReachableMethodTag ⇒
+                    nextRM = readReachableMethod()
+                case tag ⇒
+                    throw new IllegalArgumentException(s"invalid binary call graph: unknown tag $tag")
+            }
+        }
+    }
+
+    private[this] def readReachableMethod(): ReachableMethod = {
+        val method = methods(readVarInt(in))
+        var callSites = Set.empty[CallSite]
+        var i = readVarInt(in)
+        while (i > 0) {
+            val declaredTarget = methods(readVarInt(in))
+            val line = readSignedVarInt(in)
+            val pc = readVarInt(in)
+            val targets = targetSets(readVarInt(in))
+            callSites += CallSite(declaredTarget, line, if (pc == 0) None else Some(pc - 1), targets)
+            i -= 1
+        }
+        ReachableMethod(method, callSites)
+    }
+
+    private[this] def readHierarchy(): TypeHierarchy = {
+        var supertypes = Map.empty[String, List[String]]
+        var declaredMethods = Map.empty[String, Set[Method]]
+        var i = readVarInt(in)
+        while (i > 0) {
+            val tpe = strings(readVarInt(in))
+            supertypes += tpe → List.fill(readVarInt(in))(strings(readVarInt(in)))
+            declaredMethods += tpe → readTargets()
+            i -= 1
+        }
+        new TypeHierarchy(supertypes, declaredMethods)
+    }
+
+    private[this] def readTargets(): Set[Method] = {
+        var targets = Set.empty[Method]
+        var j = readVarInt(in)
+        while (j > 0) {
+            targets += methods(readVarInt(in))
+            j -= 1
+        }
+        targets
+    }
+}
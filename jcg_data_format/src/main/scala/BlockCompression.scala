@@ -0,0 +1,333 @@
+import java.io.ByteArrayOutputStream
+import java.io.EOFException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.GZIPInputStream
+import java.util.zip.Inflater
+
+/**
+ * Block-compressed serialized call graphs (e.g., `cg.json.gz`).
+ *
+ * A block-compressed file is a sequence of independent gzip members, each holding at most
+ * [[BlockSize]] bytes of the uncompressed call graph, followed by an empty member that marks the
+ * end of the file. Hence, it is a valid gzip file that can be processed by standard tools.
+ * Additionally, the header of each member contains an extra field that stores the size of the
+ * member and of the uncompressed data:
+ *
+ * {{{
+ * member := 1f 8b 08 04 (FEXTRA) mtime (0) xfl (0) os (ff) xlen (12)
+ *           'J' 'C' len (8) member size (int) uncompressed size (int)
+ *           deflated data, crc32 (int), uncompressed size (int)
+ * }}}
+ *
+ * All numbers are little endian. As the members can be located without inflating them, blocks
+ * are compressed and decompressed in parallel on a background thread pool. Plain gzip files
+ * (without the extra field) are supported by the readers as well, but are decompressed
+ * sequentially.
+ */
+object BlockCompression {
+
+    final val FileExtension = ".gz"
+
+    final val BlockSize: Int = 1 << 20
+
+    private final val HeaderSize = 24
+    private final val TrailerSize = 8
+
+    // limits the memory used by blocks that are compressed or decompressed but not yet consumed
+    private val MaxPendingBlocks = 2 * Runtime.getRuntime.availableProcessors() + 2
+
+    private lazy val executor: ExecutorService = {
+        Executors.newFixedThreadPool(
+            Runtime.getRuntime.availableProcessors(),
+            new ThreadFactory {
+                override def newThread(r: Runnable): Thread = {
+                    val thread = new Thread(r, "jcg-block-compression")
+                    thread.setDaemon(true)
+                    thread
+                }
+            }
+        )
+    }
+
+    def isCompressed(fileName: String): Boolean = fileName.endsWith(FileExtension)
+
+    /**
+     * The file name without the [[FileExtension]], i.e., the name that determines the format of the
+     * compressed call graph.
+     */
+    def uncompressedName(fileName: String): String = {
+        if (isCompressed(fileName)) fileName.dropRight(FileExtension.length) else fileName
+    }
+
+    /**
+     * Returns true, if the given bytes start with a gzip header.
+     */
+    def isGzip(header: Array[Byte], length: Int): Boolean = {
+        length >= 2 && (header(0) & 0xFF) == 0x1f && (header(1) & 0xFF) == 0x8b
+    }
+
+    /**
+     * Returns true, if the given bytes start with the header of a block-compressed member.
+     */
+    def isBlockCompressed(header: Array[Byte], length: Int): Boolean = {
+        length >= HeaderSize && isGzip(header, length) && header(2) == 8 && (header(3) & 4) != 0 &&
+            readShort(header, 10) == 12 && header(12) == 'J' && header(13) == 'C' &&
+            readShort(header, 14) == 8
+    }
+
+    /**
+     * Wraps the given (gzip-compressed) stream; `header` are the first bytes of the stream, which
+     * must not have been consumed yet.
+     */
+    def decompress(in: InputStream, header: Array[Byte], length: Int): InputStream = {
+        if (isBlockCompressed(header, length)) new BlockCompressedInputStream(in)
+        else new GZIPInputStream(in, 1 << 16)
+    }
+
+    /**
+     * Compresses everything that is written to it in blocks of [[BlockSize]] bytes, which are
+     * deflated in parallel and written to `out` in order.
+     */
+    class BlockCompressedOutputStream(
+            out:   OutputStream,
+            level: Int          = Deflater.DEFAULT_COMPRESSION
+    ) extends OutputStream {
+
+        private[this] var buffer = new Array[Byte](BlockSize)
+        private[this] var count = 0
+        private[this] val pending = new java.util.ArrayDeque[Future[Array[Byte]]]()
+
+        override def write(b: Int): Unit = {
+            if (count == BlockSize)
+                submitBlock()
+            buffer(count) = b.toByte
+            count += 1
+        }
+
+        override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+            var offset = off
+            var remaining = len
+            while (remaining > 0) {
+                if (count == BlockSize)
+                    submitBlock()
+                val n = math.min(remaining, BlockSize - count)
+                System.arraycopy(b, offset, buffer, count, n)
+                count += n
+                offset += n
+                remaining -= n
+            }
+        }
+
+        /**
+         * Compresses the current (partial) block and writes all pending blocks.
+         */
+        override def flush(): Unit = {
+            if (count > 0)
+                submitBlock()
+            while (!pending.isEmpty)
+                out.write(await(pending.poll()))
+            out.flush()
+        }
+
+        override def close(): Unit = {
+            flush()
+            out.write(compressBlock(Array.emptyByteArray, 0, level))
+            out.close()
+        }
+
+        private[this] def submitBlock(): Unit = {
+            val block = buffer
+            val length = count
+            pending.add(executor.submit(new Callable[Array[Byte]] {
+                override def call(): Array[Byte] = compressBlock(block, length, level)
+            }))
+            buffer = new Array[Byte](BlockSize)
+            count = 0
+            while (pending.size > MaxPendingBlocks)
+                out.write(await(pending.poll()))
+        }
+    }
+
+    /**
+     * Reads block-compressed data; the members are read ahead and inflated in parallel.
+     */
+    class BlockCompressedInputStream(in: InputStream) extends InputStream {
+
+        private[this] val pending = new java.util.ArrayDeque[Future[Array[Byte]]]()
+        private[this] var endOfInput = false
+
+        private[this] var block = Array.emptyByteArray
+        private[this] var position = 0
+
+        override def read(): Int = {
+            if (nextBlock()) {
+                val b = block(position) & 0xFF
+                position += 1
+                b
+            } else -1
+        }
+
+        override def read(b: Array[Byte], off: Int, len: Int): Int = {
+            if (len == 0)
+                0
+            else if (nextBlock()) {
+                val n = math.min(len, block.length - position)
+                System.arraycopy(block, position, b, off, n)
+                position += n
+                n
+            } else -1
+        }
+
+        override def available(): Int = block.length - position
+
+        override def close(): Unit = {
+            pending.forEach(_.cancel(false))
+            pending.clear()
+            in.close()
+        }
+
+        /**
+         * Ensures that the current block has remaining bytes; returns false at the end of the data.
+         */
+        private[this] def nextBlock(): Boolean = {
+            while (position == block.length) {
+                while (!endOfInput && pending.size < MaxPendingBlocks) {
+                    val member = readMember()
+                    if (member eq null)
+                        endOfInput = true
+                    else
+                        pending.add(executor.submit(new Callable[Array[Byte]] {
+                            override def call(): Array[Byte] = inflateMember(member)
+                        }))
+                }
+                if (pending.isEmpty)
+                    return false;
+                block = await(pending.poll())
+                position = 0
+            }
+            true
+        }
+
+        /**
+         * Reads the next member as is or returns null at the end of the input.
+         */
+        private[this] def readMember(): Array[Byte] = {
+            val header = new Array[Byte](HeaderSize)
+            val read = readFully(header, 0, HeaderSize)
+            if (read == 0)
+                null
+            else {
+                if (read < HeaderSize || !isBlockCompressed(header, HeaderSize))
+                    throw new IllegalArgumentException("invalid block-compressed call graph")
+                val member = new Array[Byte](readInt(header, 16))
+                System.arraycopy(header, 0, member, 0, HeaderSize)
+                if (readFully(member, HeaderSize, member.length - HeaderSize) < member.length - HeaderSize)
+                    throw new EOFException("unexpected end of block-compressed call graph")
+                member
+            }
+        }
+
+        private[this] def readFully(b: Array[Byte], off: Int, len: Int): Int = {
+            var total = 0
+            var n = 0
+            while (total < len && n != -1) {
+                n = in.read(b, off + total, len - total)
+                if (n > 0) total += n
+            }
+            total
+        }
+    }
+
+    private def compressBlock(block: Array[Byte], length: Int, level: Int): Array[Byte] = {
+        val deflater = new Deflater(level, true)
+        val deflated = new ByteArrayOutputStream(length / 2 + 64)
+        try {
+            deflater.setInput(block, 0, length)
+            deflater.finish()
+            val chunk = new Array[Byte](1 << 16)
+            while (!deflater.finished()) {
+                val n = deflater.deflate(chunk)
+                deflated.write(chunk, 0, n)
+            }
+        } finally {
+            deflater.end()
+        }
+        val crc = new CRC32()
+        crc.update(block, 0, length)
+
+        val memberSize = HeaderSize + deflated.size() + TrailerSize
+        val member = new Array[Byte](memberSize)
+        member(0) = 0x1f.toByte
+        member(1) = 0x8b.toByte
+        member(2) = 8 // deflate
+        member(3) = 4 // FEXTRA
+        member(9) = 0xff.toByte // unknown OS
+        writeShort(member, 10, 12)
+        member(12) = 'J'
+        member(13) = 'C'
+        writeShort(member, 14, 8)
+        writeInt(member, 16, memberSize)
+        writeInt(member, 20, length)
+        System.arraycopy(deflated.toByteArray, 0, member, HeaderSize, deflated.size())
+        writeInt(member, memberSize - 8, crc.getValue.toInt)
+        writeInt(member, memberSize - 4, length)
+        member
+    }
+
+    private def inflateMember(member: Array[Byte]): Array[Byte] = {
+        val block = new Array[Byte](readInt(member, 20))
+        val inflater = new Inflater(true)
+        try {
+            inflater.setInput(member, HeaderSize, member.length - HeaderSize - TrailerSize)
+            var n = 0
+            while (n < block.length && !inflater.finished()) {
+                val inflated = inflater.inflate(block, n, block.length - n)
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IllegalArgumentException("invalid block-compressed call graph: truncated block")
+                n += inflated
+            }
+        } finally {
+            inflater.end()
+        }
+        val crc = new CRC32()
+        crc.update(block)
+        if (crc.getValue.toInt != readInt(member, member.length - 8))
+            throw new IllegalArgumentException("invalid block-compressed call graph: checksum mismatch")
+        block
+    }
+
+    private def await(future: Future[Array[Byte]]): Array[Byte] = {
+        try {
+            future.get()
+        } catch {
+            case e: ExecutionException ⇒ throw e.getCause
+        }
+    }
+
+    private def readShort(bytes: Array[Byte], offset: Int): Int = {
+        (bytes(offset) & 0xFF) | ((bytes(offset + 1) & 0xFF) << 8)
+    }
+
+    private def readInt(bytes: Array[Byte], offset: Int): Int = {
+        readShort(bytes, offset) | (readShort(bytes, offset + 2) << 16)
+    }
+
+    private def writeShort(bytes: Array[Byte], offset: Int, value: Int): Unit = {
+        bytes(offset) = value.toByte
+        bytes(offset + 1) = (value >>> 8).toByte
+    }
+
+    private def writeInt(bytes: Array[Byte], offset: Int, value: Int): Unit = {
+        writeShort(bytes, offset, value)
+        writeShort(bytes, offset + 2, value >>> 16)
+    }
+}
@@ -0,0 +1,33 @@
+import java.io.File
+
+/**
+ * Converts serialized call graphs between the supported formats, e.g., from the json
+ * representation of [[ReachableMethods]] to the [[BinaryCallGraphFormat]] and vice versa.
+ * The format of the input is detected automatically, the format of the output is chosen based on
+ * the file extension (see [[CallGraphWriter.apply]]).
+ * The conversion is lossless, i.e., converting a call graph back and forth yields an equal
+ * [[ReachableMethods]] object.
+ */
+object CallGraphConverter {
+
+    def convert(input: File, output: File): Unit = {
+        val writer = CallGraphWriter(output)
+        try {
+            CallGraphReader.foreach(input) { rm ⇒
+                writer.writeReachableMethod(rm.method, rm.callSites)
+            }
+        } finally {
+            writer.close()
+        }
+    }
+
+    /**
+     * Usage: `CallGraphConverter <input> <output>`
+     */
+    def main(args: Array[String]): Unit = {
+        assert(args.length == 2, "usage: CallGraphConverter <input> <output>")
+        val input = new File(args(0))
+        assert(input.exists(), s"${input.getPath} does not exist")
+        convert(input, new File(args(1)))
+    }
+}
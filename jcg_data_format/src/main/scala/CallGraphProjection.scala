@@ -0,0 +1,239 @@
+import java.io.File
+import java.util.{BitSet ⇒ JBitSet}
+
+/**
+ * Projects a call graph onto the application, i.e., collapses the (usually predominant) internal
+ * edges of the library (e.g., the JDK) while retaining how the application interacts with it:
+ *
+ *  - application methods are kept along with all their call sites; edges to library methods are
+ *    kept as well ("application method → library entry")
+ *  - library methods that can call back into the application (on a path through library methods
+ *    only) are grouped into regions, i.e., the strongly connected components of these methods.
+ *    Each region is represented by one of its methods, whose summary call sites
+ *    (line [[CallGraphProjection.SummaryLine]], no pc) target the application methods that are
+ *    called from within the region and the representatives of the regions that are called from
+ *    within the region ("library region ⇝ application callback")
+ *  - each library entry, i.e., each reachable library method that is called by the application
+ *    or that has no callers at all (e.g., the JVM's startup code), is kept; if it belongs to a
+ *    region, it has a summary call site to the region's representative
+ *
+ * Hence, an application method is reachable from another one in the projection iff it is
+ * reachable in the original call graph, while the library part of the projection is bounded by
+ * the number of regions and the edges between them.
+ */
+object CallGraphProjection {
+
+    /**
+     * The line of the summary call sites of library methods.
+     */
+    final val SummaryLine = -1
+
+    /**
+     * Returns true, if the method is declared in one of the given packages (in JVM notation, e.g.,
+     * `org/apache`) or their sub-packages.
+     */
+    def isApplicationMethod(appPackages: Seq[String])(method: Method): Boolean = {
+        appPackages.exists(p ⇒ method.declaringClass.startsWith(s"L$p/"))
+    }
+
+    def project(input: File, output: File, appPackages: Seq[String]): Unit = {
+        val cg = IndexedCallGraph.read(input)
+        val writer = CallGraphWriter(output)
+        try {
+            project(cg, isApplicationMethod(appPackages) _, writer)
+        } finally {
+            writer.close()
+        }
+    }
+
+    /**
+     * Writes the projection of the given call graph onto the methods for which `isApplication`
+     * holds.
+     */
+    def project(cg: IndexedCallGraph, isApplication: Method ⇒ Boolean, writer: CallGraphWriter): Unit = {
+        val n = cg.methodCount
+        val application = new JBitSet(n)
+        for (id ← 0 until n if isApplication(cg.method(id))) application.set(id)
+
+        val entries = new JBitSet(n)
+        // library methods that directly call back into the application
+        val boundary = new JBitSet(n)
+        var id = 0
+        while (id < n) {
+            if (cg.isReachable(id)) {
+                if (application.get(id)) {
+                    writer.writeReachableMethod(cg.method(id), cg.callSites(id))
+                    cg.foreachSuccessor(id) { callee ⇒ if (!application.get(callee)) entries.set(callee) }
+                } else {
+                    if (cg.predecessorCount(id) == 0) entries.set(id)
+                    cg.foreachSuccessor(id) { callee ⇒ if (application.get(callee)) boundary.set(id) }
+                }
+            }
+            id += 1
+        }
+
+        // library methods that reach a boundary method on a path through library methods only
+        val relevant = reachingTo(cg, boundary, application)
+        val representative = regions(cg, relevant)
+
+        var entry = entries.nextSetBit(0)
+        while (entry >= 0) {
+            if (cg.isReachable(entry) && representative(entry) != entry) {
+                val callSites =
+                    if (representative(entry) == -1) Nil
+                    else {
+                        val region = cg.method(representative(entry))
+                        List(CallSite(region, SummaryLine, None, Set(region)))
+                    }
+                writer.writeReachableMethod(cg.method(entry), callSites)
+            }
+            entry = entries.nextSetBit(entry + 1)
+        }
+
+        // the summary call sites of each region, grouped by the original declared targets
+        val summaries = new java.util.HashMap[Int, Map[Method, Set[Method]]]()
+        var member = relevant.nextSetBit(0)
+        while (member >= 0) {
+            val region = representative(member)
+            var summary = summaries.getOrDefault(region, Map.empty)
+            for (cs ← cg.callSites(member)) {
+                val targets = cs.targets.iterator.flatMap { tgt ⇒
+                    val tgtId = cg.id(tgt)
+                    if (application.get(tgtId)) Some(tgt)
+                    else if (relevant.get(tgtId) && representative(tgtId) != region)
+                        Some(cg.method(representative(tgtId)))
+                    else None
+                }.toSet
+                if (targets.nonEmpty)
+                    summary += cs.declaredTarget → (summary.getOrElse(cs.declaredTarget, Set.empty[Method]) ++ targets)
+            }
+            summaries.put(region, summary)
+            member = relevant.nextSetBit(member + 1)
+        }
+        summaries.forEach { (region, summary) ⇒
+            writer.writeReachableMethod(
+                cg.method(region),
+                summary.map { case (dt, targets) ⇒ CallSite(dt, SummaryLine, None, targets) }
+            )
+        }
+    }
+
+    /**
+     * Computes the strongly connected components of the call graph restricted to the `included`
+     * methods (using an iterative version of Tarjan's algorithm). Returns, for each included
+     * method, the id of the root method of its component, and -1 for all other methods.
+     */
+    private[this] def regions(cg: IndexedCallGraph, included: JBitSet): Array[Int] = {
+        val n = cg.methodCount
+        val representative = Array.fill(n)(-1)
+        val index = Array.fill(n)(-1)
+        val lowLink = new Array[Int](n)
+        val onStack = new JBitSet(n)
+        val stack = new Array[Int](n)
+        var stackSize = 0
+        // the depth-first search path: methods and the index of their next successor
+        val path = new Array[Int](n)
+        val nextSuccessor = new Array[Int](n)
+        var pathLength = 0
+        var nextIndex = 0
+
+        var root = included.nextSetBit(0)
+        while (root >= 0) {
+            if (index(root) == -1) {
+                index(root) = nextIndex; lowLink(root) = nextIndex; nextIndex += 1
+                stack(stackSize) = root; stackSize += 1; onStack.set(root)
+                path(0) = root; nextSuccessor(0) = 0; pathLength = 1
+
+                while (pathLength > 0) {
+                    val current = path(pathLength - 1)
+                    val i = nextSuccessor(pathLength - 1)
+                    if (i < cg.successorCount(current)) {
+                        nextSuccessor(pathLength - 1) = i + 1
+                        val callee = cg.successor(current, i)
+                        if (included.get(callee)) {
+                            if (index(callee) == -1) {
+                                index(callee) = nextIndex; lowLink(callee) = nextIndex; nextIndex += 1
+                                stack(stackSize) = callee; stackSize += 1; onStack.set(callee)
+                                path(pathLength) = callee; nextSuccessor(pathLength) = 0; pathLength += 1
+                            } else if (onStack.get(callee)) {
+                                lowLink(current) = math.min(lowLink(current), index(callee))
+                            }
+                        }
+                    } else {
+                        pathLength -= 1
+                        if (pathLength > 0) {
+                            val caller = path(pathLength - 1)
+                            lowLink(caller) = math.min(lowLink(caller), lowLink(current))
+                        }
+                        if (lowLink(current) == index(current)) {
+                            var member = -1
+                            do {
+                                stackSize -= 1
+                                member = stack(stackSize)
+                                onStack.clear(member)
+                                representative(member) = current
+                            } while (member != current)
+                        }
+                    }
+                }
+            }
+            root = included.nextSetBit(root + 1)
+        }
+        representative
+    }
+
+    /**
+     * Computes all methods that are not `excluded` and from which one of the `start` methods is
+     * reachable without passing an excluded method (including the `start` methods).
+     */
+    private[this] def reachingTo(cg: IndexedCallGraph, start: JBitSet, excluded: JBitSet): JBitSet = {
+        val visited = start.clone().asInstanceOf[JBitSet]
+        val queue = new Array[Int](cg.methodCount)
+        var tail = 0
+        var id = start.nextSetBit(0)
+        while (id >= 0) {
+            queue(tail) = id
+            tail += 1
+            id = start.nextSetBit(id + 1)
+        }
+        var head = 0
+        while (head < tail) {
+            val current = queue(head)
+            head += 1
+            cg.foreachPredecessor(current) { caller ⇒
+                if (!excluded.get(caller) && !visited.get(caller)) {
+                    visited.set(caller)
+                    queue(tail) = caller
+                    tail += 1
+                }
+            }
+        }
+        visited
+    }
+
+    /**
+     * Usage: `CallGraphProjection --input <cg> --output <cg> --package <pkg> [--package <pkg> ...]`
+     * where the packages are given in JVM notation, e.g., `org/apache`.
+     */
+    def main(args: Array[String]): Unit = {
+        var input = ""
+        var output = ""
+        var appPackages = List.empty[String]
+
+        args.sliding(2, 2).toList.collect {
+            case Array("--input", cg) ⇒
+                assert(input.isEmpty, "--input is specified multiple times")
+                input = cg
+            case Array("--output", cg) ⇒
+                assert(output.isEmpty, "--output is specified multiple times")
+                output = cg
+            case Array("--package", pkg) ⇒
+                appPackages ::= pkg
+        }
+
+        assert(input.nonEmpty && output.nonEmpty, "--input and --output must be specified")
+        assert(appPackages.nonEmpty, "no application package specified")
+        assert(new File(input).exists(), s"$input does not exist")
+        project(new File(input), new File(output), appPackages)
+    }
+}
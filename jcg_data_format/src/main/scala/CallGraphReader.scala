@@ -0,0 +1,431 @@
+import java.io.BufferedInputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.InputStream
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveTask
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+
+/**
+ * Reads serialized call graphs (see [[ReachableMethods]]) in a streaming fashion, i.e., only a
+ * single [[ReachableMethod]] is decoded and held in memory at a time.
+ * In contrast to `Json.parse(...).validate[ReachableMethods]`, neither the json tree nor the set of
+ * all reachable methods is ever materialized, unless explicitly requested, e.g., using [[toMap]].
+ *
+ * The format of the serialized call graph (json, [[JsonLinesCallGraphFormat]],
+ * [[BinaryCallGraphFormat]], [[IndexedCallGraphFile]] or a manifest of a [[CallGraphStore]]) is
+ * detected automatically; so is a (block) compression of the first three formats (see
+ * [[BlockCompression]]).
+ *
+ * All decoded methods are canonicalized using a [[MethodInterner]]. Unless an interner is passed
+ * explicitly, each call graph uses its own one.
+ */
+object CallGraphReader {
+
+    private val jsonFactory = new JsonFactory()
+
+    private val BufferSize = 1 << 16
+
+    // number of bytes that are inspected to detect the format
+    private val HeaderSize = 64
+
+    // JSON Lines files are only split into byte ranges of at least this size
+    private val MinRangeSize = 1L << 22
+
+    /**
+     * Opens the given serialized call graph. The returned iterator yields the reachable methods in
+     * the order in which they are stored and must be closed after usage.
+     */
+    def open(
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    ): ReachableMethodsIterator = {
+        val in = new BufferedInputStream(new FileInputStream(serializedCallGraph), BufferSize)
+        val header = new Array[Byte](HeaderSize)
+        val read = peek(in, header)
+        val magicLength = BinaryCallGraphFormat.Magic.length
+        if (BlockCompression.isGzip(header, read)) {
+            val decompressed = new BufferedInputStream(
+                BlockCompression.decompress(in, header, read), BufferSize
+            )
+            val decompressedRead = peek(decompressed, header)
+            if (decompressedRead >= magicLength && IndexedCallGraphFile.hasMagic(header)) {
+                decompressed.close()
+                throw new IllegalArgumentException(
+                    s"compressed indexed call graphs are not supported: ${serializedCallGraph.getPath}"
+                )
+            }
+            if (decompressedRead >= magicLength && CallGraphStore.hasMagic(header)) {
+                decompressed.close()
+                throw new IllegalArgumentException(
+                    s"compressed call graph manifests are not supported: ${serializedCallGraph.getPath}"
+                )
+            }
+            open(decompressed, header, decompressedRead, serializedCallGraph, interner)
+        } else if (read >= magicLength && IndexedCallGraphFile.hasMagic(header)) {
+            in.close()
+            new IndexedCallGraphFile(serializedCallGraph, interner).iterator
+        } else if (read >= magicLength && CallGraphStore.hasMagic(header)) {
+            in.close()
+            CallGraphStore.open(serializedCallGraph, interner)
+        } else {
+            open(in, header, read, serializedCallGraph, interner)
+        }
+    }
+
+    private[this] def open(
+        in:                  BufferedInputStream,
+        header:              Array[Byte],
+        read:                Int,
+        serializedCallGraph: File,
+        interner:            MethodInterner
+    ): ReachableMethodsIterator = {
+        val magicLength = BinaryCallGraphFormat.Magic.length
+        if (read >= magicLength && BinaryCallGraphFormat.hasMagic(header)) {
+            in.skip(magicLength.toLong)
+            new BinaryReachableMethodsIterator(new DataInputStream(in), interner)
+        } else {
+            new JsonReachableMethodsIterator(in, interner, isJsonLines(serializedCallGraph, header, read))
+        }
+    }
+
+    /**
+     * Reads the first bytes of the given stream into `header` without consuming them and returns
+     * the number of bytes read.
+     */
+    private[this] def peek(in: BufferedInputStream, header: Array[Byte]): Int = {
+        in.mark(header.length)
+        var read = 0
+        var n = 0
+        while (n != -1 && read < header.length) {
+            n = in.read(header, read, header.length - read)
+            if (n > 0) read += n
+        }
+        in.reset()
+        read
+    }
+
+    private[this] def isJsonLines(file: File, header: Array[Byte], length: Int): Boolean = {
+        BlockCompression.uncompressedName(file.getName).endsWith(JsonLinesCallGraphFormat.FileExtension) ||
+            JsonLinesCallGraphFormat.isJsonLines(header, length)
+    }
+
+    /**
+     * Aggregates the reachable methods of the given call graph; the order in which the methods are
+     * passed to `seqop` is unspecified.
+     *
+     * Call graphs in the [[JsonLinesCallGraphFormat]] are split into byte ranges at line breaks
+     * that are parsed in parallel using the common [[ForkJoinPool]]. Each range is folded using
+     * `seqop` starting with a fresh `z` and the partial results are merged using `combop`.
+     * All other formats, including compressed JSON Lines files, are folded sequentially.
+     */
+    def aggregate[B](
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    )(z: ⇒ B)(seqop: (B, ReachableMethod) ⇒ B, combop: (B, B) ⇒ B): B = {
+        if (serializedCallGraph.length() < 2 * MinRangeSize || !isJsonLines(serializedCallGraph)) {
+            foldLeft(serializedCallGraph, interner)(z)(seqop)
+        } else {
+            val channel = FileChannel.open(serializedCallGraph.toPath, StandardOpenOption.READ)
+            try {
+                ForkJoinPool.commonPool().invoke(
+                    new ParseRangeTask(channel, 0L, channel.size(), interner, () ⇒ z, seqop, combop)
+                )
+            } finally {
+                channel.close()
+            }
+        }
+    }
+
+    /**
+     * Returns true, if the given file is an uncompressed JSON Lines file, i.e., can be split into
+     * byte ranges.
+     */
+    private[this] def isJsonLines(file: File): Boolean = {
+        val in = new FileInputStream(file)
+        try {
+            val header = new Array[Byte](HeaderSize)
+            val read = math.max(in.read(header), 0)
+            !BlockCompression.isGzip(header, read) && isJsonLines(file, header, read)
+        } finally {
+            in.close()
+        }
+    }
+
+    /**
+     * Parses the lines in the byte range [`start`, `end`); `start` must be the beginning of a line.
+     * Large ranges are split at the line break closest to their middle.
+     */
+    private[this] class ParseRangeTask[B](
+            channel:  FileChannel,
+            start:    Long,
+            end:      Long,
+            interner: MethodInterner,
+            z:        () ⇒ B,
+            seqop:    (B, ReachableMethod) ⇒ B,
+            combop:   (B, B) ⇒ B
+    ) extends RecursiveTask[B] {
+
+        override def compute(): B = {
+            val split =
+                if (end - start < 2 * MinRangeSize) end
+                else JsonLinesCallGraphFormat.nextLineStart(channel, start + (end - start) / 2, end)
+
+            if (split < end) {
+                val left = new ParseRangeTask(channel, start, split, interner, z, seqop, combop)
+                val right = new ParseRangeTask(channel, split, end, interner, z, seqop, combop)
+                left.fork()
+                val rightResult = right.compute()
+                combop(left.join(), rightResult)
+            } else {
+                val in = new BufferedInputStream(
+                    new JsonLinesCallGraphFormat.RangeInputStream(channel, start, end), BufferSize
+                )
+                val it = new JsonReachableMethodsIterator(in, interner, lines = true)
+                try {
+                    it.foldLeft(z())(seqop)
+                } finally {
+                    it.close()
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies `f` to each reachable method of the given call graph.
+     */
+    def foreach(
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    )(f: ReachableMethod ⇒ Unit): Unit = {
+        val it = open(serializedCallGraph, interner)
+        try {
+            it.foreach(f)
+        } finally {
+            it.close()
+        }
+    }
+
+    /**
+     * Pushes the reachable methods of the given call graph into the sink; the sink is not closed.
+     */
+    def replay(serializedCallGraph: File, sink: CallGraphSink): Unit = {
+        foreach(serializedCallGraph)(rm ⇒ sink.writeReachableMethod(rm.method, rm.callSites))
+    }
+
+    /**
+     * Folds over the reachable methods of the given call graph without holding the whole call
+     * graph in memory.
+     */
+    def foldLeft[B](
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    )(z: B)(op: (B, ReachableMethod) ⇒ B): B = {
+        val it = open(serializedCallGraph, interner)
+        try {
+            it.foldLeft(z)(op)
+        } finally {
+            it.close()
+        }
+    }
+
+    /**
+     * Retrieves the set of all reachable methods, dropping their call sites.
+     */
+    def reachableMethods(
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    ): Set[Method] = {
+        aggregate(serializedCallGraph, interner)(Set.empty[Method])(_ + _.method, union[Method])
+    }
+
+    /**
+     * Retrieves the mapping from each reachable method to its call sites (see
+     * [[ReachableMethods.toMap]]) without building the intermediate [[ReachableMethods]].
+     */
+    def toMap(
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    ): Map[Method, Set[CallSite]] = {
+        def add(map: Map[Method, Set[CallSite]], method: Method, callSites: Set[CallSite]) = {
+            map.get(method) match {
+                case Some(existing) ⇒ map.updated(method, existing ++ callSites)
+                case None           ⇒ map.updated(method, callSites)
+            }
+        }
+
+        aggregate(serializedCallGraph, interner)(Map.empty[Method, Set[CallSite]])(
+            (map, rm) ⇒ add(map, rm.method, rm.callSites),
+            (map1, map2) ⇒
+                if (map1.size < map2.size) map1.foldLeft(map2)((map, e) ⇒ add(map, e._1, e._2))
+                else map2.foldLeft(map1)((map, e) ⇒ add(map, e._1, e._2))
+        )
+    }
+
+    /**
+     * Reads the complete call graph.
+     */
+    def read(
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    ): ReachableMethods = {
+        ReachableMethods(
+            aggregate(serializedCallGraph, interner)(Set.empty[ReachableMethod])(
+                _ + _, union[ReachableMethod]
+            )
+        )
+    }
+
+    private[this] def union[T](set1: Set[T], set2: Set[T]): Set[T] = {
+        if (set1.size < set2.size) set2 ++ set1 else set1 ++ set2
+    }
+
+    /**
+     * Iterates over the reachable methods of a json file; if `lines` is set, the file is expected
+     * to be in the [[JsonLinesCallGraphFormat]].
+     */
+    private[this] class JsonReachableMethodsIterator(
+            in:       InputStream,
+            interner: MethodInterner,
+            lines:    Boolean
+    ) extends ReachableMethodsIterator {
+
+        private[this] val parser: JsonParser = jsonFactory.createParser(in)
+
+        private[this] var nextRM: ReachableMethod = _
+
+        if (lines) advance()
+        else seekReachableMethods()
+
+        override def hasNext: Boolean = nextRM ne null
+
+        override def next(): ReachableMethod = {
+            if (nextRM eq null)
+                throw new NoSuchElementException("no more reachable methods")
+            val rm = nextRM
+            advance()
+            rm
+        }
+
+        override def close(): Unit = parser.close()
+
+        private[this] def seekReachableMethods(): Unit = {
+            expect(parser.nextToken(), JsonToken.START_OBJECT)
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                val field = parser.getCurrentName
+                val token = parser.nextToken()
+                if (field == "reachableMethods") {
+                    expect(token, JsonToken.START_ARRAY)
+                    advance()
+                    return ;
+                } else {
+                    parser.skipChildren()
+                }
+            }
+            close()
+        }
+
+        private[this] def advance(): Unit = {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                nextRM = readReachableMethod()
+            } else {
+                nextRM = null
+                close()
+            }
+        }
+
+        private[this] def readReachableMethod(): ReachableMethod = {
+            var method: Method = null
+            var callSites = Set.empty[CallSite]
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                val field = parser.getCurrentName
+                parser.nextToken()
+                field match {
+                    case "method" ⇒ method = readMethod()
+                    case "callSites" ⇒
+                        expect(parser.getCurrentToken, JsonToken.START_ARRAY)
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            callSites += readCallSite()
+                        }
+                    case _ ⇒ parser.skipChildren()
+                }
+            }
+            if (method eq null)
+                throw new IllegalArgumentException("reachable method without method")
+            ReachableMethod(method, callSites)
+        }
+
+        private[this] def readCallSite(): CallSite = {
+            var declaredTarget: Method = null
+            var line = -1
+            var pc: Option[Int] = None
+            var targets = Set.empty[Method]
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                val field = parser.getCurrentName
+                val token = parser.nextToken()
+                field match {
+                    case "declaredTarget" ⇒ declaredTarget = readMethod()
+                    case "line"           ⇒ line = parser.getIntValue
+                    case "pc" ⇒
+                        if (token != JsonToken.VALUE_NULL) pc = Some(parser.getIntValue)
+                    case "targets" ⇒
+                        expect(token, JsonToken.START_ARRAY)
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            targets += readMethod()
+                        }
+                    case _ ⇒ parser.skipChildren()
+                }
+            }
+            if (declaredTarget eq null)
+                throw new IllegalArgumentException("call site without declared target")
+            CallSite(declaredTarget, line, pc, interner.targets(targets))
+        }
+
+        private[this] def readMethod(): Method = {
+            expect(parser.getCurrentToken, JsonToken.START_OBJECT)
+            var name: String = null
+            var declaringClass: String = null
+            var returnType: String = null
+            var parameterTypes = List.empty[String]
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                val field = parser.getCurrentName
+                val token = parser.nextToken()
+                field match {
+                    case "name"           ⇒ name = parser.getText
+                    case "declaringClass" ⇒ declaringClass = parser.getText
+                    case "returnType"     ⇒ returnType = parser.getText
+                    case "parameterTypes" ⇒
+                        expect(token, JsonToken.START_ARRAY)
+                        val params = List.newBuilder[String]
+                        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                            params += parser.getText
+                        }
+                        parameterTypes = params.result()
+                    case _ ⇒ parser.skipChildren()
+                }
+            }
+            if ((name eq null) || (declaringClass eq null) || (returnType eq null))
+                throw new IllegalArgumentException("incomplete method object")
+            interner.method(name, declaringClass, returnType, parameterTypes)
+        }
+
+        private[this] def expect(actual: JsonToken, expected: JsonToken): Unit = {
+            if (actual != expected)
+                throw new IllegalArgumentException(
+                    s"invalid call graph: expected $expected but found $actual at ${parser.getCurrentLocation}"
+                )
+        }
+    }
+}
+
+/**
+ * An iterator over the reachable methods of a serialized call graph that holds an open file handle.
+ */
+trait ReachableMethodsIterator extends Iterator[ReachableMethod] with Closeable
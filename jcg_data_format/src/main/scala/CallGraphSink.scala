@@ -0,0 +1,248 @@
+import java.io.Closeable
+import java.io.File
+
+/**
+ * Receives a call graph from an analysis, i.e., the reachable methods and their call sites are
+ * pushed into the sink as soon as the analysis emits them. Depending on the sink, the call graph is
+ * serialized (see [[CallGraphWriter]]), indexed in memory (see [[IndexedCallGraphSink]]) or
+ * dropped (see [[CallGraphSink.Discard]]), such that consumers that only need the call graph in
+ * memory neither write nor parse a file.
+ *
+ * A reachable method is either pushed at once using [[writeReachableMethod]] or incrementally
+ * using [[startReachableMethod]], an arbitrary number of [[writeCallSite]] calls and
+ * [[endReachableMethod]]. The call graph is complete once the sink is closed; if the analysis
+ * fails or is aborted, the owner of the sink (not the analysis) calls [[abort]] instead.
+ */
+trait CallGraphSink extends Closeable {
+
+    /**
+     * Writes the given `method` along with all its `callSites`.
+     */
+    def writeReachableMethod(method: Method, callSites: Iterable[CallSite]): Unit = {
+        startReachableMethod(method)
+        for (cs ← callSites) {
+            writeCallSite(cs)
+        }
+        endReachableMethod()
+    }
+
+    /**
+     * Writes the given call site of the current reachable method. Sinks that support symbolic
+     * target sets keep [[ConeTargetSet]]s symbolic, all others use the explicit targets.
+     */
+    def writeCallSite(callSite: CallSite): Unit = {
+        writeCallSite(callSite.declaredTarget, callSite.line, callSite.pc, callSite.targets.iterator)
+    }
+
+    /**
+     * Provides the type hierarchy of the analyzed program. Sinks that support symbolic target
+     * sets use it to represent the targets of call sites as [[ConeTargetSet]]s where possible;
+     * all others ignore it. Must be called before the first call site is written.
+     */
+    def useTypeHierarchy(hierarchy: TypeHierarchy): Unit = {}
+
+    /**
+     * Whether the sink uses a type hierarchy passed to [[useTypeHierarchy]]; if not, analyses
+     * should not compute one only for the sink.
+     */
+    def usesTypeHierarchy: Boolean = false
+
+    /**
+     * Starts a new reachable method. All subsequent calls to [[writeCallSite]] add call sites to
+     * this method until [[endReachableMethod]] is called.
+     */
+    def startReachableMethod(method: Method): Unit
+
+    /**
+     * Writes a call site of the current reachable method.
+     */
+    def writeCallSite(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targets:        Iterator[Method]
+    ): Unit
+
+    /**
+     * Finishes the current reachable method.
+     */
+    def endReachableMethod(): Unit
+
+    /**
+     * Releases the resources of the sink, e.g., open files, if the call graph cannot be completed;
+     * the call graph remains incomplete.
+     */
+    def abort(): Unit = {}
+}
+
+object CallGraphSink {
+
+    /**
+     * Returns a sink that writes the call graph into the given file (see [[CallGraphWriter.apply]]).
+     * The file is only created once the first reachable method is written (or the sink is closed),
+     * such that analyses that fail beforehand do not leave an invalid file behind.
+     */
+    def toFile(outputFile: File): CallGraphSink = new FileCallGraphSink(outputFile)
+
+    /**
+     * Constructs a call graph using a sink that writes the given file (see [[toFile]]); the sink is
+     * aborted if the construction fails.
+     */
+    def writeFile[T](outputFile: File)(construct: CallGraphSink ⇒ T): T = {
+        val sink = toFile(outputFile)
+        try {
+            construct(sink)
+        } catch {
+            case t: Throwable ⇒
+                sink.abort()
+                throw t
+        }
+    }
+
+    /**
+     * Drops the call graph, e.g., if only the size of the call graph is of interest.
+     */
+    object Discard extends CallGraphSink {
+
+        override def writeReachableMethod(method: Method, callSites: Iterable[CallSite]): Unit = {}
+
+        override def startReachableMethod(method: Method): Unit = {}
+
+        override def writeCallSite(
+            declaredTarget: Method,
+            line:           Int,
+            pc:             Option[Int],
+            targets:        Iterator[Method]
+        ): Unit = {}
+
+        override def endReachableMethod(): Unit = {}
+
+        override def close(): Unit = {}
+    }
+
+    private class FileCallGraphSink(outputFile: File) extends CallGraphSink {
+
+        private[this] var writer: CallGraphWriter = _
+        private[this] var hierarchy: TypeHierarchy = _
+
+        private[this] def open(): CallGraphWriter = {
+            if (writer eq null) {
+                writer = CallGraphWriter(outputFile)
+                if (hierarchy ne null)
+                    writer.useTypeHierarchy(hierarchy)
+            }
+            writer
+        }
+
+        override def useTypeHierarchy(hierarchy: TypeHierarchy): Unit = {
+            if (writer eq null) this.hierarchy = hierarchy
+            else writer.useTypeHierarchy(hierarchy)
+        }
+
+        override val usesTypeHierarchy: Boolean = CallGraphWriter.usesTypeHierarchy(outputFile)
+
+        override def writeReachableMethod(method: Method, callSites: Iterable[CallSite]): Unit = {
+            open().writeReachableMethod(method, callSites)
+        }
+
+        override def startReachableMethod(method: Method): Unit = open().startReachableMethod(method)
+
+        override def writeCallSite(callSite: CallSite): Unit = writer.writeCallSite(callSite)
+
+        override def writeCallSite(
+            declaredTarget: Method,
+            line:           Int,
+            pc:             Option[Int],
+            targets:        Iterator[Method]
+        ): Unit = {
+            writer.writeCallSite(declaredTarget, line, pc, targets)
+        }
+
+        override def endReachableMethod(): Unit = writer.endReachableMethod()
+
+        override def close(): Unit = open().close()
+
+        /**
+         * Aborts the writer, if the file has been created, and deletes the file.
+         */
+        override def abort(): Unit = {
+            if (writer ne null) {
+                try {
+                    writer.abort()
+                } finally {
+                    writer = null
+                    outputFile.delete()
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Builds an [[IndexedCallGraph]] from the pushed call graph, which is available as [[callGraph]]
+ * once the sink is closed. Methods and target sets are canonicalized using the given interner.
+ */
+class IndexedCallGraphSink(interner: MethodInterner = new MethodInterner) extends CallGraphSink {
+
+    private[this] val builder = new IndexedCallGraph.Builder
+    private[this] var currentMethod: Method = _
+    private[this] var callSites = Set.newBuilder[CallSite]
+    private[this] var result: IndexedCallGraph = _
+
+    /**
+     * Whether the sink has been closed, i.e., whether the call graph is complete.
+     */
+    def isComplete: Boolean = result ne null
+
+    /**
+     * The call graph; requires the sink to be closed.
+     */
+    def callGraph: IndexedCallGraph = {
+        assert(result ne null, "the call graph is not complete before the sink is closed")
+        result
+    }
+
+    override def startReachableMethod(method: Method): Unit = {
+        assert(currentMethod eq null, "the previous reachable method has not been finished")
+        currentMethod = interner.intern(method)
+        callSites = Set.newBuilder[CallSite]
+    }
+
+    override def writeCallSite(callSite: CallSite): Unit = callSite.targets match {
+        case _: ConeTargetSet ⇒
+            addCallSite(callSite.declaredTarget, callSite.line, callSite.pc, callSite.targets)
+        case targets ⇒
+            addCallSite(callSite.declaredTarget, callSite.line, callSite.pc, interner.targets(targets.map(interner.intern)))
+    }
+
+    override def writeCallSite(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targets:        Iterator[Method]
+    ): Unit = {
+        addCallSite(declaredTarget, line, pc, interner.targets(targets.map(interner.intern).toSet))
+    }
+
+    private[this] def addCallSite(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targets:        Set[Method]
+    ): Unit = {
+        assert(currentMethod ne null, "call sites must belong to a reachable method")
+        callSites += CallSite(interner.intern(declaredTarget), line, pc, targets)
+    }
+
+    override def endReachableMethod(): Unit = {
+        assert(currentMethod ne null, "there is no reachable method to be finished")
+        builder += ReachableMethod(currentMethod, callSites.result())
+        currentMethod = null
+    }
+
+    override def close(): Unit = {
+        assert(currentMethod eq null, "the last reachable method has not been finished")
+        if (result eq null)
+            result = builder.result()
+    }
+}
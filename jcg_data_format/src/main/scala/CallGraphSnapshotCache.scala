@@ -0,0 +1,128 @@
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.Properties
+
+/**
+ * A persistent cache of decoded call graphs for tools that read the same (json) call graphs over
+ * and over again, e.g., [[CallGraphReader]]-based comparisons.
+ *
+ * A snapshot is the call graph in the [[BinaryCallGraphFormat]], which is compact and decoded
+ * much faster than json. Each snapshot has a metadata file that records the canonical path, size,
+ * modification time and content hash (see [[ContentHash]]) of the call graph it has been created
+ * from. A snapshot is valid if the path and size match and either the modification time or the
+ * content hash matches; the (expensive) content hash is only computed if the file has been
+ * touched. Invalid snapshots are rebuilt.
+ *
+ * The cache directory is `~/.cache/jcg/snapshots` unless the system property
+ * [[CallGraphSnapshotCache.DirectoryProperty]] is set; the cache is bypassed if the system
+ * property [[CallGraphSnapshotCache.EnabledProperty]] is `false`.
+ */
+object CallGraphSnapshotCache {
+
+    final val DirectoryProperty = "jcg.snapshots.dir"
+
+    final val EnabledProperty = "jcg.snapshots"
+
+    // incremented whenever the snapshots become incompatible
+    private final val Version = "1"
+
+    def isEnabled: Boolean = System.getProperty(EnabledProperty, "true").toBoolean
+
+    def directory: File = {
+        val dir = System.getProperty(DirectoryProperty)
+        if (dir ne null) new File(dir)
+        else new File(System.getProperty("user.home"), ".cache/jcg/snapshots")
+    }
+
+    /**
+     * Returns the file from which the given call graph should be read: a valid snapshot (which is
+     * created if necessary) for json call graphs and the call graph itself for all formats that
+     * are decoded efficiently anyway or if the cache is disabled.
+     */
+    def resolve(serializedCallGraph: File): File = {
+        val name = BlockCompression.uncompressedName(serializedCallGraph.getName)
+        val isJson = name.endsWith(".json") || name.endsWith(JsonLinesCallGraphFormat.FileExtension)
+        if (!isEnabled || !isJson || !serializedCallGraph.isFile)
+            serializedCallGraph
+        else
+            snapshot(serializedCallGraph)
+    }
+
+    /**
+     * Returns a valid snapshot of the given call graph; the snapshot is (re)built if necessary.
+     */
+    def snapshot(serializedCallGraph: File): File = {
+        val source = serializedCallGraph.getCanonicalFile
+        val dir = directory
+        dir.mkdirs()
+        val key = s"${source.getName}-${ContentHash.of(source.getPath).take(16)}"
+        val snapshot = new File(dir, s"$key${BinaryCallGraphFormat.FileExtension}")
+        val metadataFile = new File(dir, s"$key.properties")
+
+        val size = source.length()
+        val lastModified = source.lastModified()
+        val metadata = readMetadata(metadataFile)
+        val isValid = snapshot.exists() && metadata.exists { m ⇒
+            m.getProperty("version") == Version &&
+                m.getProperty("path") == source.getPath &&
+                m.getProperty("size") == size.toString && (
+                    m.getProperty("lastModified") == lastModified.toString ||
+                    m.getProperty("contentHash") == ContentHash.of(source)
+                )
+        }
+
+        if (isValid) {
+            if (metadata.get.getProperty("lastModified") != lastModified.toString) {
+                // the call graph has only been touched
+                metadata.get.setProperty("lastModified", lastModified.toString)
+                writeMetadata(metadataFile, metadata.get)
+            }
+        } else {
+            val contentHash = ContentHash.of(source)
+            val tmp = File.createTempFile(s".$key-", BinaryCallGraphFormat.FileExtension, dir)
+            try {
+                CallGraphConverter.convert(source, tmp)
+                Files.move(tmp.toPath, snapshot.toPath, StandardCopyOption.REPLACE_EXISTING)
+            } finally {
+                tmp.delete()
+            }
+            val newMetadata = new Properties()
+            newMetadata.setProperty("version", Version)
+            newMetadata.setProperty("path", source.getPath)
+            newMetadata.setProperty("size", size.toString)
+            newMetadata.setProperty("lastModified", lastModified.toString)
+            newMetadata.setProperty("contentHash", contentHash)
+            writeMetadata(metadataFile, newMetadata)
+        }
+        snapshot
+    }
+
+    private def readMetadata(file: File): Option[Properties] = {
+        if (!file.exists())
+            None
+        else {
+            val in = new FileInputStream(file)
+            try {
+                val properties = new Properties()
+                properties.load(in)
+                Some(properties)
+            } finally {
+                in.close()
+            }
+        }
+    }
+
+    private def writeMetadata(file: File, metadata: Properties): Unit = {
+        val tmp = File.createTempFile(s".${file.getName}-", ".tmp", file.getParentFile)
+        val out = new FileOutputStream(tmp)
+        try {
+            metadata.store(out, "call graph snapshot")
+        } finally {
+            out.close()
+        }
+        Files.move(tmp.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING)
+    }
+}
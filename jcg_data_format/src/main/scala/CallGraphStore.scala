@@ -0,0 +1,517 @@
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.FileLock
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+import scala.collection.mutable.ArrayBuffer
+import scala.collection.mutable.LongMap
+
+/**
+ * A content-addressed store that holds the call graphs of many runs, e.g., of all frameworks and
+ * algorithms of an evaluation. Reachable methods and call sites are stored as records that are
+ * keyed by their (64-bit) hash (see [[MerkleCallGraph]]), such that records that are shared by
+ * multiple call graphs are stored only once. Each call graph is a compact manifest that lists the
+ * hashes of its reachable methods.
+ *
+ * {{{
+ * store    := objects.pack, index, lock (in the directory [[CallGraphStore.DirectoryName]])
+ * pack     := (hash (long), payload length (int), payload)*
+ * payload  := CallSiteTag, declared target, line (zig-zag), pc (0 or pc + 1), #targets,
+ *             target* (sorted)
+ *           | ReachableMethodTag, method, #call sites, call site hash (long)* (sorted)
+ * method   := name, declaring class, return type, #parameters, parameter types
+ *             (all strings as varint length and utf8 bytes)
+ * index    := length of the pack (long), #records (long),
+ *             (hash (long), offset in the pack (long))*  -- sorted by hash
+ * manifest := MAGIC VERSION store directory (utf, relative to the manifest) #methods (int)
+ *             reachable method hash (long)*
+ * }}}
+ *
+ * As the hashes are not cryptographic, a writer that encounters a record that already exists
+ * compares the payloads and fails on a mismatch (i.e., a hash collision) instead of silently
+ * referencing the record of another call graph; payloads are canonical (targets and call site
+ * hashes are sorted) for this purpose.
+ *
+ * Records are only appended; after the records have been written, a writer merges their entries
+ * into a new index that atomically replaces the previous one. Hence, a store can be read while
+ * another call graph is added. Writers of the same store are serialized using a file lock.
+ * The index is accessed through memory mapping (see [[CallGraphStore.Index]]), i.e., opening a
+ * store does not read the index and a lookup only touches the pages required for the binary search.
+ *
+ * Call graphs are added using [[CallGraphWriter.apply]] with a file that ends with
+ * [[CallGraphStore.ManifestExtension]] and the [[CallGraphReader]] reconstructs the reachable
+ * methods of a manifest transparently.
+ */
+class CallGraphStore(val directory: File) extends Closeable {
+    import CallGraphStore._
+
+    private[this] val channel = FileChannel.open(new File(directory, PackFile).toPath, StandardOpenOption.READ)
+
+    private[this] val index = new Index(directory)
+
+    /**
+     * The number of records in this store.
+     */
+    def recordCount: Int = index.size
+
+    def contains(hash: Long): Boolean = index.offset(hash) != -1L
+
+    /**
+     * Retrieves the reachable method with the given hash, including all its call sites.
+     */
+    def reachableMethod(hash: Long, interner: MethodInterner = new MethodInterner): ReachableMethod = {
+        val in = record(hash)
+        if (in.read() != ReachableMethodTag)
+            throw new IllegalArgumentException(s"record ${hash.toHexString} is not a reachable method")
+        val method = readMethod(in, interner)
+        val callSiteCount = BinaryCallGraphFormat.readVarInt(in)
+        val data = new DataInputStream(in)
+        val callSites = Set.newBuilder[CallSite]
+        var i = 0
+        while (i < callSiteCount) {
+            callSites += callSite(data.readLong(), interner)
+            i += 1
+        }
+        ReachableMethod(method, callSites.result())
+    }
+
+    /**
+     * Retrieves the call site with the given hash.
+     */
+    def callSite(hash: Long, interner: MethodInterner = new MethodInterner): CallSite = {
+        val in = record(hash)
+        if (in.read() != CallSiteTag)
+            throw new IllegalArgumentException(s"record ${hash.toHexString} is not a call site")
+        val declaredTarget = readMethod(in, interner)
+        val line = BinaryCallGraphFormat.readSignedVarInt(in)
+        val pc = BinaryCallGraphFormat.readVarInt(in)
+        val targets = Array.fill(BinaryCallGraphFormat.readVarInt(in))(readMethod(in, interner))
+        CallSite(
+            declaredTarget,
+            line,
+            if (pc == 0) None else Some(pc - 1),
+            interner.targets(targets.toSet)
+        )
+    }
+
+    /**
+     * Reconstructs the reachable methods with the given hashes, i.e., the call graph of a manifest.
+     */
+    def reachableMethods(
+        hashes:   Array[Long],
+        interner: MethodInterner = new MethodInterner
+    ): ReachableMethodsIterator = new ReachableMethodsIterator {
+        private[this] var i = 0
+        override def hasNext: Boolean = i < hashes.length
+        override def next(): ReachableMethod = {
+            i += 1
+            reachableMethod(hashes(i - 1), interner)
+        }
+        override def close(): Unit = CallGraphStore.this.close()
+    }
+
+    override def close(): Unit = channel.close()
+
+    private[this] def record(hash: Long): InputStream = {
+        val offset = index.offset(hash)
+        if (offset == -1L)
+            throw new IllegalArgumentException(s"missing record ${hash.toHexString} in ${directory.getPath}")
+        val header = ByteBuffer.allocate(RecordHeaderSize)
+        readFully(header, offset)
+        if (header.getLong(0) != hash)
+            throw new IllegalArgumentException(s"corrupt record ${hash.toHexString} in ${directory.getPath}")
+        val payload = ByteBuffer.allocate(header.getInt(8))
+        readFully(payload, offset + RecordHeaderSize)
+        new ByteArrayInputStream(payload.array())
+    }
+
+    private[this] def readFully(buffer: ByteBuffer, position: Long): Unit = {
+        while (buffer.hasRemaining) {
+            if (channel.read(buffer, position + buffer.position()) == -1)
+                throw new EOFException(s"unexpected end of ${directory.getPath}")
+        }
+    }
+}
+
+object CallGraphStore {
+
+    final val ManifestExtension = ".cgm"
+
+    /**
+     * The name of the directory that holds a store.
+     */
+    final val DirectoryName = ".jcg-store"
+
+    final val Magic: Array[Byte] = Array('J'.toByte, 'C'.toByte, 'G'.toByte, 'M'.toByte)
+
+    final val Version = 1
+
+    final val PackFile = "objects.pack"
+    final val IndexFile = "index"
+    final val LockFile = "lock"
+
+    final val CallSiteTag = 1
+    final val ReachableMethodTag = 2
+
+    final val RecordHeaderSize = 8 + 4
+    final val IndexHeaderSize = 8 + 8
+    final val IndexEntrySize = 8 + 8
+
+    // a multiple of the index entry size, i.e., entries never span two mapped chunks
+    private final val IndexChunkSize = 1L << 30
+
+    /**
+     * Returns true, if the given bytes start with the magic number of a manifest.
+     */
+    def hasMagic(header: Array[Byte]): Boolean = {
+        header.length >= Magic.length && Magic.indices.forall(i ⇒ header(i) == Magic(i))
+    }
+
+    /**
+     * Returns the store for the given manifest: the closest directory named [[DirectoryName]] in
+     * the manifest's directory or one of its parents; if there is none, a new store is placed next
+     * to the manifest.
+     */
+    def locate(manifest: File): File = {
+        val parent = manifest.getAbsoluteFile.getParentFile
+        Iterator.iterate(parent)(_.getParentFile).takeWhile(_ ne null).map(new File(_, DirectoryName)).find(
+            _.isDirectory
+        ).getOrElse(new File(parent, DirectoryName))
+    }
+
+    /**
+     * Opens the call graph of the given manifest; the iterator must be closed after usage.
+     */
+    def open(manifest: File, interner: MethodInterner = new MethodInterner): ReachableMethodsIterator = {
+        val in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest), 1 << 16))
+        val (directory, hashes) = try {
+            val magic = new Array[Byte](Magic.length)
+            in.readFully(magic)
+            if (!hasMagic(magic))
+                throw new IllegalArgumentException(s"${manifest.getPath} is not a call graph manifest")
+            val version = in.readUnsignedByte()
+            if (version != Version)
+                throw new IllegalArgumentException(s"unsupported call graph manifest version $version")
+            val directory = new File(manifest.getAbsoluteFile.getParentFile, in.readUTF())
+            (directory, Array.fill(in.readInt())(in.readLong()))
+        } finally {
+            in.close()
+        }
+        new CallGraphStore(directory).reachableMethods(hashes, interner)
+    }
+
+    /**
+     * The hash under which the given reachable method is stored, i.e., the hash of the method and
+     * (the hashes of) its call sites.
+     */
+    def hash(method: Method, callSiteHashes: Array[Long]): Long = {
+        val hashes = callSiteHashes.distinct
+        java.util.Arrays.sort(hashes)
+        new MerkleCallGraph.MethodNode(hashes, MerkleCallGraph.hash(method)).hash
+    }
+
+    /**
+     * The memory mapped index of the store in the given directory. As writers replace the index
+     * file instead of modifying it, the mapping is a consistent snapshot of the store.
+     */
+    class Index(directory: File) {
+
+        private[this] val chunks: Array[MappedByteBuffer] = {
+            val file = new File(directory, IndexFile)
+            if (!file.exists())
+                Array.empty
+            else {
+                val channel = FileChannel.open(file.toPath, StandardOpenOption.READ)
+                try {
+                    val size = channel.size()
+                    if (size < IndexHeaderSize)
+                        throw new IllegalArgumentException(s"corrupt index in ${directory.getPath}")
+                    Array.tabulate(((size + IndexChunkSize - 1) / IndexChunkSize).toInt) { i ⇒
+                        val start = i.toLong * IndexChunkSize
+                        channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(IndexChunkSize, size - start))
+                    }
+                } finally {
+                    // the mapping remains valid
+                    channel.close()
+                }
+            }
+        }
+
+        /**
+         * The length of the pack that is covered by the index, i.e., where the next record is
+         * written.
+         */
+        val packLength: Long = if (chunks.isEmpty) 0L else longAt(0)
+
+        val size: Int = if (chunks.isEmpty) 0 else longAt(8).toInt
+
+        def hashAt(i: Int): Long = longAt(IndexHeaderSize + i.toLong * IndexEntrySize)
+
+        def offsetAt(i: Int): Long = longAt(IndexHeaderSize + i.toLong * IndexEntrySize + 8)
+
+        /**
+         * The offset of the record with the given hash in the pack or -1 if there is none.
+         */
+        def offset(hash: Long): Long = {
+            var low = 0
+            var high = size - 1
+            while (low <= high) {
+                val mid = (low + high) >>> 1
+                val midHash = hashAt(mid)
+                if (midHash < hash) low = mid + 1
+                else if (midHash > hash) high = mid - 1
+                else return offsetAt(mid)
+            }
+            -1L
+        }
+
+        private[this] def longAt(pos: Long): Long = {
+            chunks((pos / IndexChunkSize).toInt).getLong((pos % IndexChunkSize).toInt)
+        }
+    }
+
+    def writeMethod(out: OutputStream, method: Method): Unit = {
+        writeString(out, method.name)
+        writeString(out, method.declaringClass)
+        writeString(out, method.returnType)
+        BinaryCallGraphFormat.writeVarInt(out, method.parameterTypes.size)
+        method.parameterTypes.foreach(writeString(out, _))
+    }
+
+    def readMethod(in: InputStream, interner: MethodInterner): Method = {
+        val name = readString(in)
+        val declaringClass = readString(in)
+        val returnType = readString(in)
+        val parameterTypes = List.fill(BinaryCallGraphFormat.readVarInt(in))(readString(in))
+        interner.method(name, declaringClass, returnType, parameterTypes)
+    }
+
+    private[this] def writeString(out: OutputStream, s: String): Unit = {
+        val bytes = s.getBytes(StandardCharsets.UTF_8)
+        BinaryCallGraphFormat.writeVarInt(out, bytes.length)
+        out.write(bytes)
+    }
+
+    private[this] def readString(in: InputStream): String = {
+        val bytes = new Array[Byte](BinaryCallGraphFormat.readVarInt(in))
+        new DataInputStream(in).readFully(bytes)
+        new String(bytes, StandardCharsets.UTF_8)
+    }
+}
+
+/**
+ * Adds a call graph to the store of the given manifest (see [[CallGraphStore.locate]]) and writes
+ * the manifest when the writer is closed. Only records that are not yet part of the store are
+ * written.
+ */
+class CallGraphStoreWriter(manifest: File) extends CallGraphWriter {
+    import CallGraphStore._
+
+    private[this] val directory = locate(manifest)
+    directory.mkdirs()
+
+    private[this] val lockChannel = FileChannel.open(
+        new File(directory, LockFile).toPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+    )
+    private[this] val lock: FileLock = lockChannel.lock()
+
+    // the index is mapped after the lock has been acquired, i.e., it is complete
+    private[this] val index = new Index(directory)
+
+    private[this] val packChannel = FileChannel.open(
+        new File(directory, PackFile).toPath,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+    )
+    // records that are not covered by the index (e.g., of an aborted writer) are overwritten
+    private[this] var position = index.packLength
+    packChannel.position(position)
+    private[this] val pack = new DataOutputStream(
+        new BufferedOutputStream(Channels.newOutputStream(packChannel), 1 << 16)
+    )
+
+    // the offsets of the records written by this writer
+    private[this] val newRecords = LongMap.empty[Long]
+    private[this] val manifestHashes = ArrayBuffer.empty[Long]
+
+    private[this] var currentMethod: Method = _
+    private[this] val callSiteHashes = ArrayBuffer.empty[Long]
+
+    override def startReachableMethod(method: Method): Unit = {
+        assert(currentMethod eq null, "the previous reachable method has not been finished")
+        currentMethod = method
+        callSiteHashes.clear()
+    }
+
+    override def writeCallSite(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targets:        Iterator[Method]
+    ): Unit = {
+        assert(currentMethod ne null, "call sites must belong to a reachable method")
+        val callSite = CallSite(declaredTarget, line, pc, targets.toSet)
+        val hash = MerkleCallGraph.hash(callSite)
+        val payload = new ByteArrayOutputStream()
+        payload.write(CallSiteTag)
+        writeMethod(payload, declaredTarget)
+        BinaryCallGraphFormat.writeSignedVarInt(payload, line)
+        BinaryCallGraphFormat.writeVarInt(payload, if (pc.isDefined) pc.get + 1 else 0)
+        BinaryCallGraphFormat.writeVarInt(payload, callSite.targets.size)
+        callSite.targets.toArray.sortBy(IndexedCallGraphFile.methodKey).foreach(writeMethod(payload, _))
+        addRecord(hash, payload)
+        callSiteHashes += hash
+    }
+
+    override def endReachableMethod(): Unit = {
+        assert(currentMethod ne null, "there is no reachable method to be finished")
+        val hashes = callSiteHashes.toArray
+        val hash = CallGraphStore.hash(currentMethod, hashes)
+        val payload = new ByteArrayOutputStream()
+        payload.write(ReachableMethodTag)
+        writeMethod(payload, currentMethod)
+        val distinctHashes = hashes.distinct
+        java.util.Arrays.sort(distinctHashes)
+        BinaryCallGraphFormat.writeVarInt(payload, distinctHashes.length)
+        val data = new DataOutputStream(payload)
+        distinctHashes.foreach(data.writeLong)
+        addRecord(hash, payload)
+        manifestHashes += hash
+        currentMethod = null
+    }
+
+    override def close(): Unit = {
+        assert(currentMethod eq null, "the last reachable method has not been finished")
+        try {
+            pack.close()
+            if (newRecords.nonEmpty)
+                writeIndex()
+        } finally {
+            lock.release()
+            lockChannel.close()
+        }
+
+        val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(manifest), 1 << 16))
+        try {
+            out.write(Magic)
+            out.writeByte(Version)
+            out.writeUTF(
+                manifest.getAbsoluteFile.getParentFile.toPath.relativize(directory.getAbsoluteFile.toPath).toString
+            )
+            out.writeInt(manifestHashes.size)
+            manifestHashes.foreach(out.writeLong)
+        } finally {
+            out.close()
+        }
+    }
+
+    /**
+     * Releases the store without adding the call graph; the records that have already been
+     * written are not indexed and, hence, overwritten by the next writer.
+     */
+    override def abort(): Unit = {
+        try {
+            pack.close()
+        } finally {
+            lock.release()
+            lockChannel.close()
+        }
+    }
+
+    /**
+     * Writes the record unless it already exists; existing records must have the same payload.
+     */
+    private[this] def addRecord(hash: Long, payload: ByteArrayOutputStream): Unit = {
+        val offset = newRecords.getOrElse(hash, index.offset(hash))
+        if (offset == -1L)
+            writeRecord(hash, payload)
+        else {
+            // records of this writer may still be buffered
+            if (newRecords.contains(hash))
+                pack.flush()
+            if (!java.util.Arrays.equals(readPayload(hash, offset), payload.toByteArray))
+                throw new IllegalStateException(
+                    s"hash collision: the record ${hash.toHexString} in ${directory.getPath} has another content"
+                )
+        }
+    }
+
+    private[this] def readPayload(hash: Long, offset: Long): Array[Byte] = {
+        val header = ByteBuffer.allocate(RecordHeaderSize)
+        readFully(header, offset)
+        if (header.getLong(0) != hash)
+            throw new IllegalArgumentException(s"corrupt record ${hash.toHexString} in ${directory.getPath}")
+        val payload = ByteBuffer.allocate(header.getInt(8))
+        readFully(payload, offset + RecordHeaderSize)
+        payload.array()
+    }
+
+    private[this] def readFully(buffer: ByteBuffer, position: Long): Unit = {
+        while (buffer.hasRemaining) {
+            if (packChannel.read(buffer, position + buffer.position()) == -1)
+                throw new EOFException(s"unexpected end of ${directory.getPath}")
+        }
+    }
+
+    private[this] def writeRecord(hash: Long, payload: ByteArrayOutputStream): Unit = {
+        pack.writeLong(hash)
+        pack.writeInt(payload.size())
+        payload.writeTo(pack)
+
+        newRecords.update(hash, position)
+        position += RecordHeaderSize + payload.size()
+    }
+
+    // merges the entries of the new records into the (sorted) index and replaces it atomically
+    private[this] def writeIndex(): Unit = {
+        val newHashes = newRecords.keys.toArray
+        java.util.Arrays.sort(newHashes)
+
+        val tmpFile = File.createTempFile(IndexFile, ".tmp", directory)
+        val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))
+        try {
+            out.writeLong(position)
+            out.writeLong(index.size.toLong + newHashes.length)
+            var i = 0
+            var j = 0
+            while (i < index.size || j < newHashes.length) {
+                if (j == newHashes.length || (i < index.size && index.hashAt(i) < newHashes(j))) {
+                    out.writeLong(index.hashAt(i))
+                    out.writeLong(index.offsetAt(i))
+                    i += 1
+                } else {
+                    out.writeLong(newHashes(j))
+                    out.writeLong(newRecords(newHashes(j)))
+                    j += 1
+                }
+            }
+        } finally {
+            out.close()
+        }
+        Files.move(
+            tmpFile.toPath,
+            new File(directory, IndexFile).toPath,
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE
+        )
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.BufferedOutputStream
+import java.io.BufferedWriter
+import java.io.File
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.io.Writer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.StandardOpenOption
+
+/**
+ * A [[CallGraphSink]] that streams a call graph into a file, i.e., reachable methods and their
+ * call sites are written as soon as they are passed to the writer and neither the set of
+ * [[ReachableMethod]]s nor any other representation of the whole call graph is ever materialized.
+ * Hence, the memory required for the serialization does not depend on the size of the call graph.
+ *
+ * @note The writer must be closed in order to produce a valid file.
+ */
+trait CallGraphWriter extends CallGraphSink {
+
+    /**
+     * Closes the file without completing the call graph, i.e., the file is invalid afterwards.
+     */
+    override def abort(): Unit
+}
+
+object CallGraphWriter {
+
+    private[this] val BufferSize = 1 << 16
+
+    /**
+     * Creates a writer for the given file. The format is chosen based on the file extension, i.e.,
+     * files ending with [[BinaryCallGraphFormat.FileExtension]] are written in the binary format,
+     * files ending with [[IndexedCallGraphFile.FileExtension]] as [[IndexedCallGraphFile]], files
+     * ending with [[JsonLinesCallGraphFormat.FileExtension]] in the JSON Lines format, files ending
+     * with [[CallGraphStore.ManifestExtension]] are added to a [[CallGraphStore]] and all others
+     * are written in the json format.
+     * If the name additionally ends with [[BlockCompression.FileExtension]] (e.g., `cg.json.gz`),
+     * the output is block-compressed (see [[BlockCompression]]).
+     *
+     * If `append` is set, the reachable methods are appended to an existing file; this is only
+     * supported by the JSON Lines format.
+     */
+    def apply(outputFile: File, append: Boolean = false): CallGraphWriter = {
+        val compressed = BlockCompression.isCompressed(outputFile.getName)
+        val name = BlockCompression.uncompressedName(outputFile.getName)
+        if (append && !name.endsWith(JsonLinesCallGraphFormat.FileExtension))
+            throw new IllegalArgumentException(
+                s"only JSON Lines call graphs can be appended to: ${outputFile.getPath}"
+            )
+
+        if (name.endsWith(IndexedCallGraphFile.FileExtension)) {
+            if (compressed)
+                throw new IllegalArgumentException(
+                    s"indexed call graphs cannot be compressed: ${outputFile.getPath}"
+                )
+            new IndexedCallGraphWriter(outputFile)
+        } else if (name.endsWith(CallGraphStore.ManifestExtension)) {
+            if (compressed)
+                throw new IllegalArgumentException(
+                    s"call graph manifests cannot be compressed: ${outputFile.getPath}"
+                )
+            new CallGraphStoreWriter(outputFile)
+        } else {
+            val out = newOutputStream(outputFile, append, compressed)
+            if (name.endsWith(BinaryCallGraphFormat.FileExtension))
+                new BinaryCallGraphWriter(out)
+            else if (name.endsWith(JsonLinesCallGraphFormat.FileExtension))
+                new JsonLinesCallGraphWriter(
+                    new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))
+                )
+            else
+                new JsonCallGraphWriter(
+                    new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))
+                )
+        }
+    }
+
+    /**
+     * Whether the writer for the given file (see [[apply]]) uses type hierarchies, i.e., whether
+     * it is written in the [[BinaryCallGraphFormat]].
+     */
+    def usesTypeHierarchy(outputFile: File): Boolean = {
+        BlockCompression.uncompressedName(outputFile.getName).endsWith(BinaryCallGraphFormat.FileExtension)
+    }
+
+    private[this] def newOutputStream(
+        outputFile: File, append: Boolean, compressed: Boolean
+    ): OutputStream = {
+        val out = Channels.newOutputStream(
+            FileChannel.open(
+                outputFile.toPath,
+                StandardOpenOption.CREATE,
+                if (append) StandardOpenOption.APPEND else StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+            )
+        )
+        // the compressed stream buffers whole blocks on its own
+        if (compressed) new BlockCompression.BlockCompressedOutputStream(out)
+        else new BufferedOutputStream(out, BufferSize)
+    }
+}
+
+/**
+ * Writes the json representation of [[ReachableMethods]].
+ */
+class JsonCallGraphWriter(out: Writer) extends CallGraphWriter {
+
+    private[this] var firstReachableMethod = true
+    private[this] var firstCallSite = true
+    private[this] var inReachableMethod = false
+
+    beginCallGraph()
+
+    /**
+     * Writes everything that precedes the first reachable method.
+     */
+    protected def beginCallGraph(): Unit = out.write("{\"reachableMethods\":[")
+
+    /**
+     * Writes the separator between two reachable methods.
+     */
+    protected def separateReachableMethods(): Unit = out.write(',')
+
+    /**
+     * Writes everything that follows the last reachable method.
+     */
+    protected def endCallGraph(): Unit = out.write("]}")
+
+    override def startReachableMethod(method: Method): Unit = {
+        assert(!inReachableMethod, "the previous reachable method has not been finished")
+        inReachableMethod = true
+
+        if (firstReachableMethod) firstReachableMethod = false
+        else separateReachableMethods()
+
+        out.write("{\"method\":")
+        writeMethod(method)
+        out.write(",\"callSites\":[")
+        firstCallSite = true
+    }
+
+    override def writeCallSite(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targets:        Iterator[Method]
+    ): Unit = {
+        assert(inReachableMethod, "call sites must belong to a reachable method")
+
+        if (firstCallSite) firstCallSite = false
+        else out.write(',')
+
+        out.write("{\"declaredTarget\":")
+        writeMethod(declaredTarget)
+        out.write(",\"line\":")
+        out.write(line.toString)
+        if (pc.isDefined) {
+            out.write(",\"pc\":")
+            out.write(pc.get.toString)
+        }
+        out.write(",\"targets\":[")
+        var first = true
+        for (tgt ← targets) {
+            if (first) first = false
+            else out.write(',')
+            writeMethod(tgt)
+        }
+        out.write("]}")
+    }
+
+    override def endReachableMethod(): Unit = {
+        assert(inReachableMethod, "there is no reachable method to be finished")
+        inReachableMethod = false
+        out.write("]}")
+    }
+
+    override def close(): Unit = {
+        assert(!inReachableMethod, "the last reachable method has not been finished")
+        endCallGraph()
+        out.close()
+    }
+
+    override def abort(): Unit = out.close()
+
+    private[this] def writeMethod(method: Method): Unit = {
+        out.write("{\"name\":")
+        writeString(method.name)
+        out.write(",\"declaringClass\":")
+        writeString(method.declaringClass)
+        out.write(",\"returnType\":")
+        writeString(method.returnType)
+        out.write(",\"parameterTypes\":[")
+        var first = true
+        for (paramType ← method.parameterTypes) {
+            if (first) first = false
+            else out.write(',')
+            writeString(paramType)
+        }
+        out.write("]}")
+    }
+
+    private[this] def writeString(s: String): Unit = {
+        out.write('"')
+        var i = 0
+        val length = s.length
+        while (i < length) {
+            val c = s.charAt(i)
+            c match {
+                case '"'  ⇒ out.write("\\\"")
+                case '\\' ⇒ out.write("\\\\")
+                case '\n' ⇒ out.write("\\n")
+                case '\r' ⇒ out.write("\\r")
+                case '\t' ⇒ out.write("\\t")
+                case _ if c < ' ' ⇒
+                    out.write("\\u")
+                    out.write(f"${c.toInt}%04x")
+                case _ ⇒ out.write(c)
+            }
+            i += 1
+        }
+        out.write('"')
+    }
+}
@@ -37,8 +37,27 @@ object ReachableMethod {
 /**
  * A call site has a `declaredTarget` method, is associated with a line number (-1 if unknown) and
  * contains the set of computed target methods (`targets`).
+ *
+ * As the hash code depends on all targets, it is computed only once and only if required, e.g.,
+ * such that symbolic targets (see [[ConeTargetSet]]) of call sites that are merely streamed
+ * into a sink are not expanded.
  */
-case class CallSite(declaredTarget: Method, line: Int, pc: Option[Int], targets: Set[Method])
+case class CallSite(declaredTarget: Method, line: Int, pc: Option[Int], targets: Set[Method]) {
+
+    override lazy val hashCode: Int = scala.util.hashing.MurmurHash3.productHash(this)
+
+    override def equals(other: Any): Boolean = other match {
+        case that: CallSite ⇒
+            (this eq that) || (
+                this.hashCode == that.hashCode &&
+                this.line == that.line &&
+                this.pc == that.pc &&
+                this.declaredTarget == that.declaredTarget &&
+                this.targets == that.targets
+            )
+        case _ ⇒ false
+    }
+}
 
 object CallSite {
     implicit val callSiteReads: Reads[CallSite] = Json.reads[CallSite]
@@ -49,9 +68,27 @@ object CallSite {
 /**
  * A method is represented using the `name`, the `declaringClass`, its `returnType` and its
  * `parameterTypes`.
+ *
+ * Methods are heavily used as keys of hash maps and elements of hash sets. Hence, the hash code is
+ * computed only once and equality checks first compare references and hash codes.
+ * See [[MethodInterner]] to canonicalize decoded methods.
  */
 case class Method(name: String, declaringClass: String, returnType: String, parameterTypes: List[String]) {
 
+    override val hashCode: Int = scala.util.hashing.MurmurHash3.productHash(this)
+
+    override def equals(other: Any): Boolean = other match {
+        case that: Method ⇒
+            (this eq that) || (
+                this.hashCode == that.hashCode &&
+                this.name == that.name &&
+                this.declaringClass == that.declaringClass &&
+                this.returnType == that.returnType &&
+                this.parameterTypes == that.parameterTypes
+            )
+        case _ ⇒ false
+    }
+
     override def toString: String = {
         s"$declaringClass { $returnType $name(${parameterTypes.mkString(", ")})}"
     }
@@ -0,0 +1,94 @@
+/**
+ * A symbolic set of call targets: all methods with the signature of the `declaredTarget` that are
+ * declared in a subtype of the declared target's declaring class (the cone, see
+ * [[TypeHierarchy.cone]]), except for the `excluded` methods, plus the `additional` methods,
+ * e.g., implementations that are inherited from a supertype.
+ *
+ * For CHA-like call graphs, most target sets are (almost) cones. Storing them symbolically avoids
+ * listing, e.g., every `toString` method of the JDK for each call of `Object.toString`.
+ * Membership tests (`contains`) only traverse the hierarchy from the tested method upwards, i.e.,
+ * take time linear in the depth of the hierarchy; the explicit targets are only computed if the
+ * set is iterated.
+ *
+ * Like for all sets, equality and hash codes are structural, i.e., a cone equals every set
+ * (symbolic or explicit) with the same targets, independent of the hierarchy it was read with.
+ * Hence, the hash code requires the explicit targets; it is computed only once and only if the
+ * cone is used as (part of) a key. Cones with the same hierarchy (by reference), declared
+ * target, excluded and additional methods are known to be equal without being expanded.
+ */
+class ConeTargetSet(
+        val hierarchy:      TypeHierarchy,
+        val declaredTarget: Method,
+        val excluded:       Set[Method],
+        val additional:     Set[Method]
+) extends scala.collection.AbstractSet[Method] with Set[Method] {
+
+    private[this] lazy val expanded: Set[Method] = {
+        hierarchy.cone(declaredTarget) -- excluded ++ additional
+    }
+
+    override def contains(method: Method): Boolean = {
+        additional.contains(method) || (
+            !excluded.contains(method) &&
+            method.name == declaredTarget.name &&
+            method.returnType == declaredTarget.returnType &&
+            method.parameterTypes == declaredTarget.parameterTypes &&
+            hierarchy.declares(method) &&
+            hierarchy.isSubtypeOf(method.declaringClass, declaredTarget.declaringClass)
+        )
+    }
+
+    override def iterator: Iterator[Method] = expanded.iterator
+
+    override def size: Int = expanded.size
+
+    override def +(method: Method): Set[Method] = expanded + method
+
+    override def -(method: Method): Set[Method] = expanded - method
+
+    /**
+     * Cones are never empty (see [[ConeTargetSet.compress]]).
+     */
+    override def isEmpty: Boolean = false
+
+    override lazy val hashCode: Int = super.hashCode()
+
+    override def equals(other: Any): Boolean = other match {
+        case that: ConeTargetSet if (this.hierarchy eq that.hierarchy) &&
+            this.declaredTarget == that.declaredTarget &&
+            this.excluded == that.excluded &&
+            this.additional == that.additional ⇒ true
+        case that: Set[_] ⇒ this.hashCode == that.hashCode && super.equals(that)
+        case _            ⇒ false
+    }
+}
+
+object ConeTargetSet {
+
+    /**
+     * Target sets with fewer targets are always represented explicitly.
+     */
+    final val MinSize = 8
+
+    /**
+     * Returns a [[ConeTargetSet]] that is equal to the given `targets` if it needs (considerably)
+     * less explicit methods, otherwise the `targets`.
+     */
+    def compress(declaredTarget: Method, targets: Set[Method], hierarchy: TypeHierarchy): Set[Method] = {
+        if (targets.size < MinSize || targets.isInstanceOf[ConeTargetSet])
+            targets
+        else {
+            val cone = hierarchy.cone(declaredTarget)
+            if (cone.isEmpty)
+                targets
+            else {
+                val excluded = cone -- targets
+                val additional = targets -- cone
+                if (2 * (excluded.size + additional.size) < targets.size)
+                    new ConeTargetSet(hierarchy, declaredTarget, excluded, additional)
+                else
+                    targets
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.File
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+
+/**
+ * Computes (SHA-256) hashes of file contents, e.g., to detect whether a cached artifact that has
+ * been derived from a file is still up to date.
+ *
+ * Files are memory-mapped in chunks, i.e., their content is hashed straight from the operating
+ * system's page cache without being copied onto the heap.
+ */
+object ContentHash {
+
+    private final val ChunkSize = 1L << 28
+
+    /**
+     * The hash of the given file's content as a hex string. The hash of a directory is computed
+     * from the names and hashes of its entries.
+     */
+    def of(file: File): String = {
+        if (file.isDirectory) {
+            val entries = file.listFiles().sortBy(_.getName).map(f ⇒ s"${f.getName}/${of(f)}")
+            of(entries.mkString("\n"))
+        } else {
+            ofRegularFile(file)
+        }
+    }
+
+    private def ofRegularFile(file: File): String = {
+        val digest = MessageDigest.getInstance("SHA-256")
+        val channel = FileChannel.open(file.toPath, StandardOpenOption.READ)
+        try {
+            val size = channel.size()
+            var position = 0L
+            while (position < size) {
+                val length = math.min(ChunkSize, size - position)
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length))
+                position += length
+            }
+        } finally {
+            channel.close()
+        }
+        toHex(digest.digest())
+    }
+
+    /**
+     * The hash of the given string (in UTF-8) as a hex string.
+     */
+    def of(s: String): String = {
+        toHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)))
+    }
+
+    private def toHex(bytes: Array[Byte]): String = {
+        val hex = new StringBuilder(2 * bytes.length)
+        bytes.foreach(b ⇒ hex.append(f"${b & 0xFF}%02x"))
+        hex.result()
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Sorts string records that do not fit into memory: the records are buffered until
+ * `maxBufferedChars` characters have been added, then the buffer is sorted and spilled into a
+ * temporary file (a run). [[sorted]] merges all runs in a single sequential pass.
+ *
+ * Hence, the heap usage is bounded by the buffer size (plus one record per run during the merge),
+ * independent of the number of records.
+ *
+ * @note Records must be shorter than 64 KiB (in modified UTF-8); the sorter must be closed to
+ *       delete its temporary files.
+ */
+class ExternalSorter(
+        maxBufferedChars: Long = ExternalSorter.DefaultBufferSize,
+        directory:        File = null
+) extends Closeable {
+    import ExternalSorter._
+
+    private[this] var buffer = ArrayBuffer.empty[String]
+    private[this] var bufferedChars = 0L
+    private[this] val runs = ArrayBuffer.empty[File]
+
+    def +=(record: String): this.type = {
+        buffer += record
+        // the characters plus the overhead of the string object
+        bufferedChars += record.length + 32
+        if (bufferedChars >= maxBufferedChars)
+            spill()
+        this
+    }
+
+    /**
+     * Returns all records added so far in ascending order (see `String.compareTo`), omitting
+     * duplicates if `distinct` is set. Can be called multiple times; each returned iterator must
+     * be closed.
+     */
+    def sorted(distinct: Boolean = false): Iterator[String] with Closeable = {
+        if (runs.isEmpty) {
+            buffer = buffer.sorted
+            val records = if (distinct) dropDuplicates(buffer.iterator) else buffer.iterator
+            new Iterator[String] with Closeable {
+                override def hasNext: Boolean = records.hasNext
+                override def next(): String = records.next()
+                override def close(): Unit = {}
+            }
+        } else {
+            if (buffer.nonEmpty)
+                spill()
+            // limit the number of simultaneously open files
+            while (runs.size > MaxOpenRuns) {
+                val merged = runs.take(MaxOpenRuns)
+                runs.remove(0, MaxOpenRuns)
+                val mergedRun = writeRun(new MergeIterator(merged))
+                merged.foreach(_.delete())
+                runs += mergedRun
+            }
+            val merge = new MergeIterator(runs)
+            if (!distinct)
+                merge
+            else {
+                val records = dropDuplicates(merge)
+                new Iterator[String] with Closeable {
+                    override def hasNext: Boolean = records.hasNext
+                    override def next(): String = records.next()
+                    override def close(): Unit = merge.close()
+                }
+            }
+        }
+    }
+
+    override def close(): Unit = {
+        runs.foreach(_.delete())
+        runs.clear()
+        buffer.clear()
+    }
+
+    private[this] def spill(): Unit = {
+        runs += writeRun(buffer.sorted.iterator)
+        buffer = ArrayBuffer.empty
+        bufferedChars = 0
+    }
+
+    private[this] def writeRun(records: Iterator[String]): File = {
+        val run = File.createTempFile("jcg-sort-", ".run", directory)
+        run.deleteOnExit()
+        val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))
+        try {
+            records.foreach(out.writeUTF)
+        } finally {
+            out.close()
+            records match {
+                case closeable: Closeable ⇒ closeable.close()
+                case _                    ⇒
+            }
+        }
+        run
+    }
+}
+
+object ExternalSorter {
+
+    /**
+     * By default, a sorter buffers at most 1/16 of the maximal heap size (two bytes per character),
+     * such that multiple sorters can be used at the same time.
+     */
+    val DefaultBufferSize: Long = Runtime.getRuntime.maxMemory() / 32
+
+    private final val MaxOpenRuns = 128
+
+    private def dropDuplicates(records: Iterator[String]): Iterator[String] = {
+        val input = records.buffered
+        new Iterator[String] {
+            override def hasNext: Boolean = input.hasNext
+            override def next(): String = {
+                val record = input.next()
+                while (input.hasNext && input.head == record) input.next()
+                record
+            }
+        }
+    }
+
+    /**
+     * Merges sorted runs using a priority queue of their current records.
+     */
+    private class MergeIterator(runs: Seq[File]) extends Iterator[String] with Closeable {
+
+        private[this] val inputs = runs.map { run ⇒
+            new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16))
+        }.toArray
+
+        private[this] val heads = new java.util.PriorityQueue[(String, Int)](
+            math.max(1, inputs.length),
+            (a: (String, Int), b: (String, Int)) ⇒ a._1.compareTo(b._1)
+        )
+
+        inputs.indices.foreach(advance)
+
+        override def hasNext: Boolean = !heads.isEmpty
+
+        override def next(): String = {
+            val (record, input) = heads.poll()
+            advance(input)
+            record
+        }
+
+        override def close(): Unit = inputs.foreach(_.close())
+
+        private[this] def advance(input: Int): Unit = {
+            try {
+                heads.add((inputs(input).readUTF(), input))
+            } catch {
+                case _: EOFException ⇒ inputs(input).close()
+            }
+        }
+    }
+}
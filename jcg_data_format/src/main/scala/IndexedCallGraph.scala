@@ -0,0 +1,482 @@
+import java.io.File
+import java.util.{BitSet ⇒ JBitSet}
+
+/**
+ * A compact, array-based representation of a call graph for traversals.
+ *
+ * All methods (reachable methods as well as declared and computed targets) are numbered densely
+ * from `0` to `methodCount - 1`. The call sites and the call edges are stored in compressed sparse
+ * row (CSR) format, i.e., in flat int arrays where the entries of method `m` are located between
+ * `offsets(m)` (inclusive) and `offsets(m + 1)` (exclusive):
+ *
+ *  - call sites: the call sites of each method; each call site refers to a target set
+ *  - target sets: the distinct sets of call targets, i.e., call sites with equal targets share
+ *    the same target set; [[ConeTargetSet]]s are retained symbolically (their explicit range is
+ *    empty), such that [[callSites]] returns them and membership tests remain cheap, and are only
+ *    expanded once to compute the successors
+ *  - successors: the distinct callees of each method (union of the targets of its call sites)
+ *  - predecessors: the distinct callers of each method (reverse edges)
+ *
+ * Visited sets of traversals are [[java.util.BitSet]]s over the method ids, such that traversals do
+ * not allocate per visited method or edge.
+ *
+ * Use [[IndexedCallGraph.apply]] or [[IndexedCallGraph.read]] to create an instance.
+ */
+class IndexedCallGraph private (
+        private[this] val methods:            Array[Method],
+        private[this] val ids:                java.util.HashMap[Method, Integer],
+        private[this] val reachable:          JBitSet,
+        private[this] val callSiteOffsets:    Array[Int],
+        private[this] val declaredTargets:    Array[Int],
+        private[this] val callSiteLines:      Array[Int],
+        private[this] val callSitePCs:        Array[Int],
+        private[this] val callSiteTargets:    Array[Int],
+        private[this] val targetSetOffsets:   Array[Int],
+        private[this] val targetSets:         Array[Int],
+        private[this] val coneTargetSets:     java.util.HashMap[Integer, Set[Method]],
+        private[this] val successorOffsets:   Array[Int],
+        private[this] val successors:         Array[Int],
+        private[this] val predecessorOffsets: Array[Int],
+        private[this] val predecessors:       Array[Int]
+) {
+
+    /**
+     * The number of methods, including methods that only occur as (declared) targets.
+     */
+    def methodCount: Int = methods.length
+
+    def callSiteCount: Int = callSiteLines.length
+
+    /**
+     * The number of distinct target sets.
+     */
+    def targetSetCount: Int = targetSetOffsets.length - 1
+
+    def edgeCount: Int = successors.length
+
+    /**
+     * The id of the given method or -1 if the method does not occur in the call graph.
+     */
+    def id(method: Method): Int = {
+        val id = ids.get(method)
+        if (id eq null) -1 else id
+    }
+
+    def method(id: Int): Method = methods(id)
+
+    /**
+     * Returns true, if the method with the given id is a reachable method (and not only a target).
+     */
+    def isReachable(id: Int): Boolean = reachable.get(id)
+
+    /**
+     * The ids of all reachable methods.
+     */
+    def reachableMethodIds: JBitSet = reachable.clone().asInstanceOf[JBitSet]
+
+    def reachableMethods: Iterator[Method] = {
+        Iterator.iterate(reachable.nextSetBit(0))(id ⇒ reachable.nextSetBit(id + 1))
+            .takeWhile(_ >= 0)
+            .map(methods)
+    }
+
+    def successorCount(id: Int): Int = successorOffsets(id + 1) - successorOffsets(id)
+
+    def predecessorCount(id: Int): Int = predecessorOffsets(id + 1) - predecessorOffsets(id)
+
+    /**
+     * The `i`-th distinct callee of the given method (`0 <= i < successorCount(id)`).
+     */
+    def successor(id: Int, i: Int): Int = successors(successorOffsets(id) + i)
+
+    /**
+     * Applies `f` to the ids of all distinct callees of the given method.
+     */
+    @inline final def foreachSuccessor(id: Int)(f: Int ⇒ Unit): Unit = {
+        var i = successorOffsets(id)
+        val end = successorOffsets(id + 1)
+        while (i < end) {
+            f(successors(i))
+            i += 1
+        }
+    }
+
+    /**
+     * Applies `f` to the ids of all distinct callers of the given method.
+     */
+    @inline final def foreachPredecessor(id: Int)(f: Int ⇒ Unit): Unit = {
+        var i = predecessorOffsets(id)
+        val end = predecessorOffsets(id + 1)
+        while (i < end) {
+            f(predecessors(i))
+            i += 1
+        }
+    }
+
+    /**
+     * Reconstructs the call sites of the given method; empty if the method is not reachable.
+     */
+    def callSites(id: Int): Set[CallSite] = {
+        var result = Set.empty[CallSite]
+        var cs = callSiteOffsets(id)
+        val end = callSiteOffsets(id + 1)
+        while (cs < end) {
+            val targetSet = callSiteTargets(cs)
+            var tgts = coneTargetSets.get(targetSet)
+            if (tgts eq null) {
+                tgts = Set.empty[Method]
+                var t = targetSetOffsets(targetSet)
+                while (t < targetSetOffsets(targetSet + 1)) {
+                    tgts += methods(targetSets(t))
+                    t += 1
+                }
+            }
+            val pc = callSitePCs(cs)
+            result += CallSite(
+                methods(declaredTargets(cs)),
+                callSiteLines(cs),
+                if (pc == -1) None else Some(pc),
+                tgts
+            )
+            cs += 1
+        }
+        result
+    }
+
+    def callSites(method: Method): Set[CallSite] = {
+        val id = this.id(method)
+        if (id == -1) Set.empty else callSites(id)
+    }
+
+    /**
+     * Computes the ids of all methods that are transitively reachable from the given methods
+     * (including the methods themselves) using a breadth-first search.
+     */
+    def reachableFrom(sources: Int*): JBitSet = {
+        val visited = new JBitSet(methodCount)
+        traverse(sources, visited, forward = true, stopAt = -1)
+        visited
+    }
+
+    /**
+     * Computes the ids of all methods from which any of the given methods is transitively
+     * reachable (including the methods themselves).
+     */
+    def reachingTo(sinks: Int*): JBitSet = {
+        val visited = new JBitSet(methodCount)
+        traverse(sinks, visited, forward = false, stopAt = -1)
+        visited
+    }
+
+    /**
+     * Is there a (non-empty) path from `source` to `target`?
+     */
+    def isReachableFrom(source: Int, target: Int): Boolean = {
+        if (source == -1 || target == -1)
+            false
+        else
+            traverse(Seq(source), new JBitSet(methodCount), forward = true, stopAt = target)
+    }
+
+    def isReachableFrom(source: Method, target: Method): Boolean = {
+        isReachableFrom(id(source), id(target))
+    }
+
+    /**
+     * Converts this call graph back into the map representation (see [[ReachableMethods.toMap]]).
+     */
+    def toMap: Map[Method, Set[CallSite]] = {
+        reachableMethods.map(m ⇒ m → callSites(id(m))).toMap
+    }
+
+    /**
+     * Breadth-first search that marks all visited methods in `visited`. Returns true as soon as
+     * `stopAt` is found as successor (or predecessor) of a visited method.
+     */
+    private[this] def traverse(
+        start: Seq[Int], visited: JBitSet, forward: Boolean, stopAt: Int
+    ): Boolean = {
+        val offsets = if (forward) successorOffsets else predecessorOffsets
+        val edges = if (forward) successors else predecessors
+        // every method is enqueued at most once
+        val queue = new Array[Int](methodCount)
+        var head = 0
+        var tail = 0
+        for (s ← start if !visited.get(s)) {
+            visited.set(s)
+            queue(tail) = s
+            tail += 1
+        }
+        while (head < tail) {
+            val current = queue(head)
+            head += 1
+            var i = offsets(current)
+            val end = offsets(current + 1)
+            while (i < end) {
+                val next = edges(i)
+                if (next == stopAt)
+                    return true;
+                if (!visited.get(next)) {
+                    visited.set(next)
+                    queue(tail) = next
+                    tail += 1
+                }
+                i += 1
+            }
+        }
+        false
+    }
+}
+
+object IndexedCallGraph {
+
+    /**
+     * Builds the indexed representation of the given reachable methods. Call sites of methods that
+     * occur multiple times are merged.
+     */
+    def apply(reachableMethods: TraversableOnce[ReachableMethod]): IndexedCallGraph = {
+        val builder = new Builder
+        reachableMethods.foreach(builder += _)
+        builder.result()
+    }
+
+    def apply(reachableMethods: Map[Method, Set[CallSite]]): IndexedCallGraph = {
+        apply(reachableMethods.iterator.map(e ⇒ ReachableMethod(e._1, e._2)))
+    }
+
+    /**
+     * Reads the given serialized call graph (in any supported format) directly into the indexed
+     * representation without materializing [[ReachableMethods]].
+     */
+    def read(
+        serializedCallGraph: File,
+        interner:            MethodInterner = new MethodInterner
+    ): IndexedCallGraph = {
+        val builder = new Builder
+        CallGraphReader.foreach(serializedCallGraph, interner)(builder += _)
+        builder.result()
+    }
+
+    /**
+     * Incrementally builds an [[IndexedCallGraph]]; call sites are collected in the order they are
+     * added and grouped per method by [[result]].
+     */
+    class Builder {
+
+        private[this] val methods = new java.util.ArrayList[Method]()
+        private[this] val ids = new java.util.HashMap[Method, Integer]()
+        private[this] val reachable = new JBitSet()
+
+        // per call site
+        private[this] val owners = new IntArrayBuilder
+        private[this] val declaredTargets = new IntArrayBuilder
+        private[this] val lines = new IntArrayBuilder
+        private[this] val pcs = new IntArrayBuilder
+        private[this] val callSiteTargets = new IntArrayBuilder
+
+        // the distinct target sets (looked up by reference first, see MethodInterner.targets)
+        private[this] val targetSetIds = new java.util.HashMap[Set[Method], Integer]()
+        private[this] val targetSetOffsets = new IntArrayBuilder
+        private[this] val targetSets = new IntArrayBuilder
+        private[this] val coneTargetSets = new java.util.HashMap[Integer, Set[Method]]()
+
+        def +=(rm: ReachableMethod): this.type = {
+            val owner = id(rm.method)
+            reachable.set(owner)
+            for (cs ← rm.callSites) {
+                owners += owner
+                declaredTargets += id(cs.declaredTarget)
+                lines += cs.line
+                pcs += (if (cs.pc.isDefined) cs.pc.get else -1)
+                callSiteTargets += targetSetId(cs.targets)
+            }
+            this
+        }
+
+        def result(): IndexedCallGraph = {
+            // the members of the cones are only needed to compute the successors; they may add
+            // methods that do not occur otherwise
+            val coneMembers = new java.util.HashMap[Integer, Array[Int]]()
+            coneTargetSets.forEach { (targetSet, cone) ⇒
+                coneMembers.put(targetSet, cone.iterator.map(id).toArray)
+            }
+
+            val methodCount = methods.size
+            val callSiteCount = owners.size
+
+            // group the call sites by their owner (counting sort, stable)
+            val callSiteOffsets = offsetsOf(owners, callSiteCount, methodCount)
+            val order = new Array[Int](callSiteCount)
+            val next = java.util.Arrays.copyOf(callSiteOffsets, methodCount)
+            var cs = 0
+            while (cs < callSiteCount) {
+                val owner = owners(cs)
+                order(next(owner)) = cs
+                next(owner) += 1
+                cs += 1
+            }
+
+            val csDeclaredTargets = new Array[Int](callSiteCount)
+            val csLines = new Array[Int](callSiteCount)
+            val csPCs = new Array[Int](callSiteCount)
+            val csTargets = new Array[Int](callSiteCount)
+            cs = 0
+            while (cs < callSiteCount) {
+                val old = order(cs)
+                csDeclaredTargets(cs) = declaredTargets(old)
+                csLines(cs) = lines(old)
+                csPCs(cs) = pcs(old)
+                csTargets(cs) = callSiteTargets(old)
+                cs += 1
+            }
+
+            val tsOffsets = {
+                val result = java.util.Arrays.copyOf(targetSetOffsets.result(), targetSetOffsets.size + 1)
+                result(targetSetOffsets.size) = targetSets.size
+                result
+            }
+            val tsTargets = targetSets.result()
+
+            // the distinct successors of each method
+            val successorOffsets = new Array[Int](methodCount + 1)
+            val successors = new IntArrayBuilder
+            val seen = new JBitSet(methodCount)
+            def addSuccessor(tgt: Int): Unit = {
+                if (!seen.get(tgt)) {
+                    seen.set(tgt)
+                    successors += tgt
+                }
+            }
+            var m = 0
+            while (m < methodCount) {
+                successorOffsets(m) = successors.size
+                cs = callSiteOffsets(m)
+                while (cs < callSiteOffsets(m + 1)) {
+                    val members = coneMembers.get(csTargets(cs))
+                    if (members ne null)
+                        members.foreach(addSuccessor)
+                    else {
+                        var i = tsOffsets(csTargets(cs))
+                        val end = tsOffsets(csTargets(cs) + 1)
+                        while (i < end) {
+                            addSuccessor(tsTargets(i))
+                            i += 1
+                        }
+                    }
+                    cs += 1
+                }
+                // reset only the bits that have been set
+                var j = successorOffsets(m)
+                while (j < successors.size) {
+                    seen.clear(successors(j))
+                    j += 1
+                }
+                m += 1
+            }
+            successorOffsets(methodCount) = successors.size
+
+            // reverse edges (counting sort by target)
+            val edgeCount = successors.size
+            val predecessorOffsets = offsetsOf(successors, edgeCount, methodCount)
+            val predecessors = new Array[Int](edgeCount)
+            val insertAt = java.util.Arrays.copyOf(predecessorOffsets, methodCount)
+            m = 0
+            while (m < methodCount) {
+                var i = successorOffsets(m)
+                while (i < successorOffsets(m + 1)) {
+                    val tgt = successors(i)
+                    predecessors(insertAt(tgt)) = m
+                    insertAt(tgt) += 1
+                    i += 1
+                }
+                m += 1
+            }
+
+            new IndexedCallGraph(
+                methods.toArray(new Array[Method](methodCount)),
+                ids,
+                reachable,
+                callSiteOffsets,
+                csDeclaredTargets,
+                csLines,
+                csPCs,
+                csTargets,
+                tsOffsets,
+                tsTargets,
+                coneTargetSets,
+                successorOffsets,
+                successors.result(),
+                predecessorOffsets,
+                predecessors
+            )
+        }
+
+        private[this] def id(method: Method): Int = {
+            val id = ids.get(method)
+            if (id ne null)
+                id
+            else {
+                val newId = methods.size
+                methods.add(method)
+                ids.put(method, newId)
+                newId
+            }
+        }
+
+        private[this] def targetSetId(targets: Set[Method]): Int = {
+            val id = targetSetIds.get(targets)
+            if (id ne null)
+                id
+            else {
+                val newId = targetSetOffsets.size
+                targetSetOffsets += targetSets.size
+                // cones are not expanded before the successors are computed (see result)
+                if (targets.isInstanceOf[ConeTargetSet])
+                    coneTargetSets.put(newId, targets)
+                else
+                    targets.foreach(tgt ⇒ targetSets += this.id(tgt))
+                targetSetIds.put(targets, newId)
+                newId
+            }
+        }
+
+        /**
+         * Computes CSR offsets (of length `count + 1`) from the given keys.
+         */
+        private[this] def offsetsOf(keys: IntArrayBuilder, size: Int, count: Int): Array[Int] = {
+            val offsets = new Array[Int](count + 1)
+            var i = 0
+            while (i < size) {
+                offsets(keys(i) + 1) += 1
+                i += 1
+            }
+            i = 0
+            while (i < count) {
+                offsets(i + 1) += offsets(i)
+                i += 1
+            }
+            offsets
+        }
+    }
+
+    /**
+     * A growable array of unboxed ints.
+     */
+    private class IntArrayBuilder {
+        private[this] var data = new Array[Int](16)
+        private[this] var length = 0
+
+        def size: Int = length
+
+        def +=(value: Int): Unit = {
+            if (length == data.length)
+                data = java.util.Arrays.copyOf(data, length * 2)
+            data(length) = value
+            length += 1
+        }
+
+        def apply(index: Int): Int = data(index)
+
+        def result(): Array[Int] = java.util.Arrays.copyOf(data, length)
+    }
+}
@@ -0,0 +1,536 @@
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.File
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.StandardOpenOption
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * An on-disk call graph that supports random access to the call sites of single methods.
+ *
+ * The file consists of the (self-contained) records of all reachable methods followed by an index
+ * that is sorted by the method key (declaring class, name and descriptor) and holds the offset of
+ * the corresponding record.
+ * The file is accessed through memory mapping (`FileChannel.map`), i.e., looking up a method only
+ * touches the pages of the index that are required for the binary search and the method's record.
+ * Hence, even multi-GB call graphs can be queried within milliseconds and the mapped pages are
+ * shared between processes through the operating system's page cache.
+ *
+ * Target sets with at least [[IndexedCallGraphFile.SharedTargetSetSize]] targets are stored only
+ * once (before the first record that uses them) and are referenced by their offset.
+ *
+ * {{{
+ * file    := MAGIC VERSION index offset (long) #methods (int) (record | target set)* index keys
+ * record  := strings, method,
+ *            #call sites, (declared target, line (zig-zag), pc (0 or pc + 1), targets)*
+ * targets := 0, #targets, target*                   -- stored inline
+ *          | offset of the target set (varint long) -- shared
+ * target set := strings, #targets, target*
+ * strings := #strings (varint), strings (varint length, utf8 bytes)
+ * method  := name, declaring class, return type, #parameters, parameter types (local string ids)
+ * index   := (key offset (long), record offset (long))*  -- sorted by the key's utf8 bytes
+ * keys    := (length (varint), utf8 bytes)*
+ * }}}
+ *
+ * Use [[IndexedCallGraphFile.write]] (or [[CallGraphWriter.apply]] with a file ending with
+ * [[IndexedCallGraphFile.FileExtension]]) to create such a file.
+ */
+class IndexedCallGraphFile(
+        file:     File,
+        interner: MethodInterner = new MethodInterner
+) extends Closeable {
+    import IndexedCallGraphFile._
+
+    private[this] val channel = FileChannel.open(file.toPath, StandardOpenOption.READ)
+    private[this] val size = channel.size()
+
+    private[this] val chunks: Array[MappedByteBuffer] = {
+        val count = ((size + ChunkSize - 1) / ChunkSize).toInt
+        Array.tabulate(count) { i ⇒
+            val start = i.toLong * ChunkSize
+            channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(ChunkSize, size - start))
+        }
+    }
+
+    if (size < HeaderSize || !(0 until Magic.length).forall(i ⇒ byteAt(i) == Magic(i)))
+        throw new IllegalArgumentException(s"${file.getPath} is not an indexed call graph")
+    if (byteAt(Magic.length) != Version)
+        throw new IllegalArgumentException(s"unsupported indexed call graph version ${byteAt(Magic.length)}")
+
+    private[this] val indexOffset: Long = longAt(Magic.length + 1)
+
+    // the decoded shared target sets by their offset
+    private[this] val sharedTargetSets = new java.util.concurrent.ConcurrentHashMap[Long, Set[Method]]()
+
+    /**
+     * The number of reachable method records in this file.
+     */
+    val methodCount: Int = intAt(Magic.length + 9)
+
+    /**
+     * Retrieves all call sites of the given method or `None` if the method is not reachable.
+     */
+    def callSites(method: Method): Option[Set[CallSite]] = {
+        val key = methodKey(method).getBytes(StandardCharsets.UTF_8)
+        val records = range(key, exact = true).map(i ⇒ readRecord(recordOffset(i)))
+        if (records.isEmpty) None
+        else Some(records.foldLeft(Set.empty[CallSite])(_ ++ _.callSites))
+    }
+
+    /**
+     * Retrieves all reachable methods declared by `declaringClass` (in JVM notation) that have the
+     * given `name` (if specified).
+     */
+    def find(declaringClass: String, name: Option[String]): Iterator[ReachableMethod] = {
+        val prefix = name match {
+            case Some(n) ⇒ s"$declaringClass $n "
+            case None    ⇒ s"$declaringClass "
+        }
+        range(prefix.getBytes(StandardCharsets.UTF_8), exact = false).iterator.map { i ⇒
+            readRecord(recordOffset(i))
+        }
+    }
+
+    /**
+     * Retrieves all reachable methods with the given `name`. As the index is sorted by the
+     * declaring class, this requires a scan over the keys, but only matching records are decoded.
+     */
+    def findByName(name: String): Iterator[ReachableMethod] = {
+        (0 until methodCount).iterator.filter { i ⇒
+            val key = keyAt(i)
+            val nameStart = key.indexOf(' ') + 1
+            key.startsWith(name, nameStart) && key.charAt(nameStart + name.length) == ' '
+        }.map(i ⇒ readRecord(recordOffset(i)))
+    }
+
+    /**
+     * Iterates over all reachable methods in the order of the index.
+     */
+    def iterator: ReachableMethodsIterator = new ReachableMethodsIterator {
+        private[this] var i = 0
+        override def hasNext: Boolean = i < methodCount
+        override def next(): ReachableMethod = {
+            val rm = readRecord(recordOffset(i))
+            i += 1
+            rm
+        }
+        override def close(): Unit = IndexedCallGraphFile.this.close()
+    }
+
+    override def close(): Unit = channel.close()
+
+    // the index positions [from, until) of all keys matching the given key or prefix
+    private[this] def range(key: Array[Byte], exact: Boolean): Range = {
+        val from = lowerBound(key)
+        var until = from
+        while (until < methodCount && matches(keyBytesAt(until), key, exact))
+            until += 1
+        from until until
+    }
+
+    private[this] def lowerBound(key: Array[Byte]): Int = {
+        var low = 0
+        var high = methodCount
+        while (low < high) {
+            val mid = (low + high) >>> 1
+            if (compareKeys(keyBytesAt(mid), key) < 0) low = mid + 1
+            else high = mid
+        }
+        low
+    }
+
+    private[this] def matches(candidate: Array[Byte], key: Array[Byte], exact: Boolean): Boolean = {
+        if (exact) java.util.Arrays.equals(candidate, key)
+        else candidate.length >= key.length && key.indices.forall(i ⇒ candidate(i) == key(i))
+    }
+
+    private[this] def keyAt(i: Int): String = new String(keyBytesAt(i), StandardCharsets.UTF_8)
+
+    private[this] def keyBytesAt(i: Int): Array[Byte] = {
+        val cursor = new Cursor(longAt(indexOffset + i.toLong * IndexEntrySize))
+        cursor.bytes(cursor.varInt())
+    }
+
+    private[this] def recordOffset(i: Int): Long = longAt(indexOffset + i.toLong * IndexEntrySize + 8)
+
+    private[this] def readRecord(offset: Long): ReachableMethod = {
+        val cursor = new Cursor(offset)
+        val strings = cursor.strings()
+        val m = cursor.method(strings)
+        val callSites = Set.newBuilder[CallSite]
+        var i = cursor.varInt()
+        while (i > 0) {
+            val declaredTarget = cursor.method(strings)
+            val line = cursor.signedVarInt()
+            val pc = cursor.varInt()
+            val sharedTargetSet = cursor.varLong()
+            val targets =
+                if (sharedTargetSet == 0L) interner.targets(cursor.targets(strings))
+                else readSharedTargetSet(sharedTargetSet)
+            callSites += CallSite(declaredTarget, line, if (pc == 0) None else Some(pc - 1), targets)
+            i -= 1
+        }
+        ReachableMethod(m, callSites.result())
+    }
+
+    private[this] def readSharedTargetSet(offset: Long): Set[Method] = {
+        val cached = sharedTargetSets.get(offset)
+        if (cached ne null)
+            cached
+        else {
+            val cursor = new Cursor(offset)
+            val targets = interner.targets(cursor.targets(cursor.strings()))
+            sharedTargetSets.put(offset, targets)
+            targets
+        }
+    }
+
+    private[this] def byteAt(pos: Long): Byte = {
+        chunks((pos / ChunkSize).toInt).get((pos % ChunkSize).toInt)
+    }
+
+    private[this] def longAt(pos: Long): Long = {
+        var result = 0L
+        var i = 0
+        while (i < 8) {
+            result = (result << 8) | (byteAt(pos + i) & 0xFF)
+            i += 1
+        }
+        result
+    }
+
+    private[this] def intAt(pos: Long): Int = {
+        var result = 0
+        var i = 0
+        while (i < 4) {
+            result = (result << 8) | (byteAt(pos + i) & 0xFF)
+            i += 1
+        }
+        result
+    }
+
+    private[this] class Cursor(private[this] var pos: Long) {
+
+        def varInt(): Int = {
+            var result = 0
+            var shift = 0
+            var b = 0
+            do {
+                b = byteAt(pos)
+                pos += 1
+                result |= (b & 0x7F) << shift
+                shift += 7
+            } while ((b & 0x80) != 0)
+            result
+        }
+
+        def signedVarInt(): Int = {
+            val v = varInt()
+            (v >>> 1) ^ -(v & 1)
+        }
+
+        def varLong(): Long = {
+            var result = 0L
+            var shift = 0
+            var b = 0
+            do {
+                b = byteAt(pos)
+                pos += 1
+                result |= (b & 0x7FL) << shift
+                shift += 7
+            } while ((b & 0x80) != 0)
+            result
+        }
+
+        def strings(): Array[String] = {
+            Array.fill(varInt())(new String(bytes(varInt()), StandardCharsets.UTF_8))
+        }
+
+        def method(strings: Array[String]): Method = {
+            val name = strings(varInt())
+            val declaringClass = strings(varInt())
+            val returnType = strings(varInt())
+            val parameterTypes = List.fill(varInt())(strings(varInt()))
+            interner.method(name, declaringClass, returnType, parameterTypes)
+        }
+
+        def targets(strings: Array[String]): Set[Method] = {
+            var targets = Set.empty[Method]
+            var j = varInt()
+            while (j > 0) {
+                targets += method(strings)
+                j -= 1
+            }
+            targets
+        }
+
+        def bytes(length: Int): Array[Byte] = {
+            val result = new Array[Byte](length)
+            var i = 0
+            while (i < length) {
+                result(i) = byteAt(pos + i)
+                i += 1
+            }
+            pos += length
+            result
+        }
+    }
+}
+
+object IndexedCallGraphFile {
+
+    final val FileExtension = ".cgi"
+
+    final val Magic: Array[Byte] = Array('J'.toByte, 'C'.toByte, 'G'.toByte, 'I'.toByte)
+
+    final val Version = 1
+
+    /**
+     * The minimal size of target sets that are shared between call sites instead of being stored
+     * inline.
+     */
+    final val SharedTargetSetSize = 4
+
+    private final val HeaderSize = Magic.length + 1 + 8 + 4
+
+    private final val IndexEntrySize = 16
+
+    private final val ChunkSize = 1L << 30
+
+    /**
+     * The key under which a method is stored in the index.
+     */
+    def methodKey(method: Method): String = {
+        s"${method.declaringClass} ${method.name} (${method.parameterTypes.mkString})${method.returnType}"
+    }
+
+    /**
+     * Returns true, if the given bytes start with the magic number of this format.
+     */
+    def hasMagic(header: Array[Byte]): Boolean = {
+        header.length >= Magic.length && Magic.indices.forall(i ⇒ header(i) == Magic(i))
+    }
+
+    /**
+     * Returns true, if the given file is an indexed call graph.
+     */
+    def isIndexedCallGraph(file: File): Boolean = {
+        val in = new java.io.FileInputStream(file)
+        try {
+            val header = new Array[Byte](Magic.length)
+            in.read(header) == header.length && hasMagic(header)
+        } finally {
+            in.close()
+        }
+    }
+
+    /**
+     * Writes the given serialized call graph (in any supported format) as indexed call graph.
+     */
+    def write(serializedCallGraph: File, indexedCallGraph: File): Unit = {
+        CallGraphConverter.convert(serializedCallGraph, indexedCallGraph)
+    }
+
+    /**
+     * Compares two keys by their unsigned utf8 bytes, i.e., the order of the index.
+     */
+    def compareKeys(a: Array[Byte], b: Array[Byte]): Int = {
+        val length = Math.min(a.length, b.length)
+        var i = 0
+        while (i < length) {
+            val diff = (a(i) & 0xFF) - (b(i) & 0xFF)
+            if (diff != 0)
+                return diff;
+            i += 1
+        }
+        a.length - b.length
+    }
+}
+
+/**
+ * Writes an [[IndexedCallGraphFile]]. The records are streamed to the file, only the keys and
+ * offsets are kept in memory until the index is written when the writer is closed.
+ */
+class IndexedCallGraphWriter(file: File) extends CallGraphWriter {
+    import BinaryCallGraphFormat.writeSignedVarInt
+    import BinaryCallGraphFormat.writeVarInt
+    import BinaryCallGraphFormat.writeVarLong
+    import IndexedCallGraphFile._
+
+    private[this] val channel = FileChannel.open(
+        file.toPath,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE
+    )
+
+    private[this] var position = 0L
+    private[this] val out: OutputStream = new BufferedOutputStream(
+        Channels.newOutputStream(channel), 1 << 16
+    ) {
+        override def write(b: Int): Unit = { super.write(b); position += 1 }
+        override def write(b: Array[Byte], off: Int, len: Int): Unit = {
+            super.write(b, off, len)
+            position += len
+        }
+    }
+
+    private[this] val keys = ArrayBuffer.empty[Array[Byte]]
+    private[this] val offsets = ArrayBuffer.empty[Long]
+
+    // the offsets of the shared target sets that have already been written
+    private[this] val sharedTargetSets = new java.util.HashMap[Set[Method], java.lang.Long]()
+
+    // the record of the current reachable method
+    private[this] val strings = new java.util.LinkedHashMap[String, Integer]()
+    private[this] val body = new ByteArrayOutputStream()
+    private[this] var callSiteCount = 0
+    private[this] var currentMethod: Method = _
+
+    out.write(Magic)
+    out.write(Version)
+    out.write(new Array[Byte](8 + 4)) // index offset and method count are patched on close
+
+    override def startReachableMethod(method: Method): Unit = {
+        assert(currentMethod eq null, "the previous reachable method has not been finished")
+        currentMethod = method
+        strings.clear()
+        body.reset()
+        callSiteCount = 0
+    }
+
+    override def writeCallSite(
+        declaredTarget: Method,
+        line:           Int,
+        pc:             Option[Int],
+        targets:        Iterator[Method]
+    ): Unit = {
+        assert(currentMethod ne null, "call sites must belong to a reachable method")
+        writeMethod(body, declaredTarget, strings)
+        writeSignedVarInt(body, line)
+        writeVarInt(body, if (pc.isDefined) pc.get + 1 else 0)
+        val tgts = targets.toArray
+        if (tgts.length >= SharedTargetSetSize) {
+            writeVarLong(body, sharedTargetSet(tgts.toSet))
+        } else {
+            writeVarLong(body, 0L)
+            writeVarInt(body, tgts.length)
+            tgts.foreach(writeMethod(body, _, strings))
+        }
+        callSiteCount += 1
+    }
+
+    /**
+     * Returns the offset of the given target set, which is written right away if necessary, i.e.,
+     * before the record of the current method.
+     */
+    private[this] def sharedTargetSet(targets: Set[Method]): Long = {
+        val offset = sharedTargetSets.get(targets)
+        if (offset ne null)
+            offset
+        else {
+            val targetSetStrings = new java.util.LinkedHashMap[String, Integer]()
+            val targetSet = new ByteArrayOutputStream()
+            writeVarInt(targetSet, targets.size)
+            targets.foreach(writeMethod(targetSet, _, targetSetStrings))
+
+            val newOffset = position
+            writeStrings(targetSetStrings)
+            targetSet.writeTo(out)
+            sharedTargetSets.put(targets, newOffset)
+            newOffset
+        }
+    }
+
+    override def endReachableMethod(): Unit = {
+        assert(currentMethod ne null, "there is no reachable method to be finished")
+        val head = new ByteArrayOutputStream()
+        writeMethod(head, currentMethod, strings)
+        writeVarInt(head, callSiteCount)
+
+        keys += methodKey(currentMethod).getBytes(StandardCharsets.UTF_8)
+        offsets += position
+
+        writeStrings(strings)
+        head.writeTo(out)
+        body.writeTo(out)
+        currentMethod = null
+    }
+
+    override def close(): Unit = {
+        assert(currentMethod eq null, "the last reachable method has not been finished")
+        val order = keys.indices.sortWith((i, j) ⇒ compareKeys(keys(i), keys(j)) < 0)
+
+        val indexOffset = position
+        val keysOffset = indexOffset + order.size.toLong * 16
+        val entry = ByteBuffer.allocate(16)
+        var keyOffset = keysOffset
+        for (i ← order) {
+            entry.clear()
+            entry.putLong(keyOffset).putLong(offsets(i))
+            out.write(entry.array())
+            keyOffset += varIntSize(keys(i).length) + keys(i).length
+        }
+        for (i ← order) {
+            writeVarInt(out, keys(i).length)
+            out.write(keys(i))
+        }
+        out.flush()
+
+        val header = ByteBuffer.allocate(12)
+        header.putLong(indexOffset).putInt(order.size)
+        header.flip()
+        channel.write(header, Magic.length + 1L)
+        out.close()
+    }
+
+    override def abort(): Unit = out.close()
+
+    private[this] def writeStrings(strings: java.util.LinkedHashMap[String, Integer]): Unit = {
+        writeVarInt(out, strings.size)
+        val it = strings.keySet().iterator()
+        while (it.hasNext) {
+            val bytes = it.next().getBytes(StandardCharsets.UTF_8)
+            writeVarInt(out, bytes.length)
+            out.write(bytes)
+        }
+    }
+
+    private[this] def writeMethod(
+        out: OutputStream, method: Method, strings: java.util.LinkedHashMap[String, Integer]
+    ): Unit = {
+        writeVarInt(out, stringId(method.name, strings))
+        writeVarInt(out, stringId(method.declaringClass, strings))
+        writeVarInt(out, stringId(method.returnType, strings))
+        writeVarInt(out, method.parameterTypes.size)
+        method.parameterTypes.foreach(t ⇒ writeVarInt(out, stringId(t, strings)))
+    }
+
+    private[this] def stringId(s: String, strings: java.util.LinkedHashMap[String, Integer]): Int = {
+        val id = strings.get(s)
+        if (id ne null)
+            id
+        else {
+            val newId = strings.size
+            strings.put(s, newId)
+            newId
+        }
+    }
+
+    private[this] def varIntSize(value: Int): Int = {
+        var v = value >>> 7
+        var size = 1
+        while (v != 0) {
+            v >>>= 7
+            size += 1
+        }
+        size
+    }
+}
@@ -0,0 +1,429 @@
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.net.URI
+import java.net.URLClassLoader
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.FileSystem
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.ProviderNotFoundException
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.Collections
+import java.util.stream.IntStream
+import java.util.zip.Inflater
+
+import scala.collection.JavaConverters._
+import scala.collection.concurrent.TrieMap
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * The location of a class file in a jar or jmod archive of a [[JREIndex]]: the offset of its
+ * local file header, its compression method and its (compressed) size.
+ */
+case class ArchivedClassFile(archive: Int, offset: Long, method: Int, compressedSize: Int, size: Int)
+
+/**
+ * An index of a JRE (or JDK) directory:
+ *
+ *  - `archives` are all jar and jmod files in the directory and its subdirectories, sorted by
+ *    their paths
+ *  - `modulesImage` is the run-time image of a modular JDK (`lib/modules`), if any
+ *  - the location of each class file (by its JVM name, e.g., `java/lang/Object`) in these
+ *    archives; the first archive that contains a class takes precedence over later ones
+ *  - the module of each class in the run-time image; the image is only indexed if no archive
+ *    defines `java.lang.Object`, i.e., for JDKs that ship neither `rt.jar` nor jmod files
+ *
+ * The index is built from the archives' central directories, i.e., without reading any class
+ * file, and class files are read straight from their archives (or from the run-time image using
+ * the JDK's `jrt` file system) without extracting them (see [[classFile]]).
+ *
+ * Indexes are persisted (see [[JREIndex.apply]]) and reused as long as the JRE directory contains
+ * the same archives and all of them are unchanged (size and modification time).
+ */
+class JREIndex private (
+        val jreDirectory:            File,
+        val archives:                Array[File],
+        val modulesImage:            Option[File],
+        private val classFiles:      java.util.Map[String, ArchivedClassFile],
+        private val imageClassFiles: java.util.Map[String, String]
+) {
+
+    // the jrt file system of the indexed JDK, which is only created if necessary
+    private[this] lazy val imageFileSystem: FileSystem = {
+        JREIndex.openImage(jreDirectory).getOrElse(throw new IllegalArgumentException(
+            s"the run-time image of ${jreDirectory.getPath} cannot be read on this JVM"
+        ))
+    }
+
+    def contains(className: String): Boolean = {
+        classFiles.containsKey(className) || imageClassFiles.containsKey(className)
+    }
+
+    /**
+     * The archive (or the run-time image) that defines the given class.
+     */
+    def archiveOf(className: String): Option[File] = {
+        val classFile = classFiles.get(className)
+        if (classFile ne null) Some(archives(classFile.archive))
+        else if (imageClassFiles.containsKey(className)) modulesImage
+        else None
+    }
+
+    /**
+     * The archives that define at least one class, in the order of [[archives]].
+     */
+    def classArchives: Array[File] = {
+        val used = new java.util.BitSet(archives.length)
+        classFiles.values.forEach(classFile ⇒ used.set(classFile.archive))
+        archives.indices.filter(used.get).map(archives).toArray
+    }
+
+    /**
+     * Whether the JRE's classes (i.e., `java.lang.Object`) are defined by one of its archives;
+     * otherwise, they can only be read from the run-time image (see [[imageClasses]]).
+     */
+    def hasClassArchives: Boolean = classFiles.containsKey(JREIndex.ObjectClass)
+
+    /**
+     * The classes that are only defined by the run-time image.
+     */
+    def imageClasses: Iterable[String] = imageClassFiles.keySet.asScala
+
+    /**
+     * The content of the given class' class file.
+     */
+    def classFile(className: String): Option[Array[Byte]] = {
+        val classFile = classFiles.get(className)
+        if (classFile ne null)
+            Some(JREIndex.readArchivedClassFile(archives(classFile.archive), classFile))
+        else {
+            val module = imageClassFiles.get(className)
+            if (module eq null) None
+            else Some(Files.readAllBytes(imageFileSystem.getPath("/modules", module, s"$className.class")))
+        }
+    }
+}
+
+object JREIndex {
+
+    /**
+     * The directory next to a jre locations specification file (see [[JRELocation]]) in which the
+     * indexes of the specified JREs are persisted.
+     */
+    final val DirectoryName = ".jre-index"
+
+    final val ObjectClass = "java/lang/Object"
+
+    private final val Magic = 0x4A524549 // JREI
+
+    private final val Version = 1
+
+    private final val LocalFileHeaderSignature = 0x04034b50
+    private final val CentralDirectorySignature = 0x02014b50
+    private final val EndOfCentralDirectorySignature = 0x06054b50
+
+    private final val ClassFileExtension = ".class"
+
+    // the JMOD file format stores the classes in this directory
+    private final val JModClassesDirectory = "classes/"
+
+    private[this] val indexes = TrieMap.empty[File, JREIndex]
+
+    private[this] val indexFiles = TrieMap.empty[File, File]
+
+    /**
+     * Specifies where the index of the given JRE is persisted; by default, indexes are persisted
+     * in `~/.cache/jcg/jre`.
+     */
+    def register(jreDirectory: String, indexFile: File): Unit = {
+        indexFiles.put(new File(jreDirectory).getCanonicalFile, indexFile)
+    }
+
+    /**
+     * The index of the given JRE directory, which is loaded (or built) only once per JVM.
+     */
+    def apply(jreDirectory: String): JREIndex = {
+        val jreDir = new File(jreDirectory).getCanonicalFile
+        indexes.getOrElseUpdate(jreDir, {
+            val indexFile = indexFiles.getOrElse(jreDir, new File(
+                System.getProperty("user.home"),
+                s".cache/jcg/jre/${jreDir.getName}-${ContentHash.of(jreDir.getPath).take(16)}.idx"
+            ))
+            read(jreDir, indexFile).getOrElse {
+                val index = build(jreDir)
+                write(index, indexFile)
+                index
+            }
+        })
+    }
+
+    /**
+     * Builds the index of the given JRE directory; the archives are indexed in parallel.
+     */
+    def build(jreDirectory: File): JREIndex = {
+        assert(jreDirectory.isDirectory, s"${jreDirectory.getPath} is not a directory")
+        val archives = listArchives(jreDirectory)
+
+        val archivedClassFiles = new Array[Seq[(String, ArchivedClassFile)]](archives.length)
+        IntStream.range(0, archives.length).parallel().forEach { i ⇒
+            archivedClassFiles(i) = readCentralDirectory(archives(i), i)
+        }
+        val classFiles = new java.util.HashMap[String, ArchivedClassFile]()
+        for (entries ← archivedClassFiles; (className, classFile) ← entries)
+            classFiles.putIfAbsent(className, classFile)
+
+        val image = new File(jreDirectory, "lib/modules")
+        val modulesImage = if (image.isFile) Some(image) else None
+        val imageClassFiles = new java.util.HashMap[String, String]()
+        // the image is not needed if the archives (e.g., jmod files) define the JRE's classes
+        if (modulesImage.isDefined && !classFiles.containsKey(ObjectClass)) {
+            for (fs ← openImage(jreDirectory)) {
+                try {
+                    for (module ← Files.list(fs.getPath("/modules")).iterator().asScala) {
+                        val moduleName = module.getFileName.toString
+                        for (file ← Files.walk(module).iterator().asScala) {
+                            val path = module.relativize(file).toString
+                            if (isClassFile(path) && !classFiles.containsKey(path.stripSuffix(ClassFileExtension)))
+                                imageClassFiles.putIfAbsent(path.stripSuffix(ClassFileExtension), moduleName)
+                        }
+                    }
+                } finally {
+                    fs.close()
+                }
+            }
+        }
+
+        new JREIndex(jreDirectory, archives, modulesImage, classFiles, imageClassFiles)
+    }
+
+    /**
+     * Opens the `jrt` file system of the given modular JDK. On JVMs without a `jrt` provider
+     * (i.e., Java 8), the provider is loaded from the JDK's `lib/jrt-fs.jar`; if that fails, too,
+     * the image cannot be read.
+     */
+    private def openImage(jreDirectory: File): Option[FileSystem] = {
+        val uri = URI.create("jrt:/")
+        val env = Collections.singletonMap("java.home", jreDirectory.getPath)
+        try {
+            Some(FileSystems.newFileSystem(uri, env))
+        } catch {
+            case _: ProviderNotFoundException ⇒
+                val jrtFs = new File(jreDirectory, "lib/jrt-fs.jar")
+                if (!jrtFs.isFile)
+                    None
+                else try {
+                    val loader = new URLClassLoader(Array(jrtFs.toURI.toURL), null)
+                    Some(FileSystems.newFileSystem(uri, env, loader))
+                } catch {
+                    case _: ProviderNotFoundException | _: IOException ⇒ None
+                }
+        }
+    }
+
+    /**
+     * Returns all jar and jmod files in the given directory and all transitive subdirectories,
+     * sorted by their paths.
+     */
+    private def listArchives(directory: File): Array[File] = {
+        def list(directory: File): Array[File] = {
+            val archives = directory.listFiles { file ⇒
+                file.getName.endsWith(".jar") | file.getName.endsWith(".jmod")
+            }
+            archives ++ directory.listFiles(_.isDirectory).flatMap(list)
+        }
+        list(directory).sortBy(_.getPath)
+    }
+
+    private[this] def isClassFile(path: String): Boolean = {
+        path.endsWith(ClassFileExtension) && !path.startsWith("META-INF/") &&
+            !path.endsWith(s"module-info$ClassFileExtension")
+    }
+
+    /**
+     * Reads the class file entries of the given zip archive from its central directory. Data
+     * preceding the zip archive, e.g., the header of jmod files, is skipped.
+     */
+    private[this] def readCentralDirectory(archive: File, archiveId: Int): Seq[(String, ArchivedClassFile)] = {
+        val channel = FileChannel.open(archive.toPath, StandardOpenOption.READ)
+        try {
+            // the end of central directory record is followed by a comment of at most 64 KiB
+            val tailSize = math.min(channel.size(), 22L + 0xFFFF).toInt
+            val tail = read(channel, channel.size() - tailSize, tailSize)
+            var eocd = tailSize - 22
+            while (eocd >= 0 && tail.getInt(eocd) != EndOfCentralDirectorySignature) eocd -= 1
+            if (eocd < 0)
+                throw new IOException(s"${archive.getPath} is not a zip archive")
+
+            val entryCount = tail.getShort(eocd + 10) & 0xFFFF
+            val cdSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL
+            val cdOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL
+            if (entryCount == 0xFFFF || cdOffset == 0xFFFFFFFFL)
+                throw new IOException(s"${archive.getPath} is a zip64 archive, which is not supported")
+            val cdPosition = channel.size() - tailSize + eocd - cdSize
+            val zipStart = cdPosition - cdOffset
+
+            val cd = read(channel, cdPosition, cdSize.toInt)
+            val classFiles = ArrayBuffer.empty[(String, ArchivedClassFile)]
+            var position = 0
+            for (_ ← 0 until entryCount) {
+                if (cd.getInt(position) != CentralDirectorySignature)
+                    throw new IOException(s"${archive.getPath} has a corrupt central directory")
+                val method = cd.getShort(position + 10) & 0xFFFF
+                val compressedSize = cd.getInt(position + 20)
+                val size = cd.getInt(position + 24)
+                val nameLength = cd.getShort(position + 28) & 0xFFFF
+                val extraLength = cd.getShort(position + 30) & 0xFFFF
+                val commentLength = cd.getShort(position + 32) & 0xFFFF
+                val offset = cd.getInt(position + 42) & 0xFFFFFFFFL
+                val nameBytes = new Array[Byte](nameLength)
+                cd.position(position + 46)
+                cd.get(nameBytes)
+                val name = new String(nameBytes, "UTF-8").stripPrefix(JModClassesDirectory)
+                if (isClassFile(name)) {
+                    classFiles += name.stripSuffix(ClassFileExtension) →
+                        ArchivedClassFile(archiveId, zipStart + offset, method, compressedSize, size)
+                }
+                position += 46 + nameLength + extraLength + commentLength
+            }
+            classFiles
+        } finally {
+            channel.close()
+        }
+    }
+
+    private def readArchivedClassFile(archive: File, classFile: ArchivedClassFile): Array[Byte] = {
+        val channel = FileChannel.open(archive.toPath, StandardOpenOption.READ)
+        try {
+            val header = read(channel, classFile.offset, 30)
+            if (header.getInt(0) != LocalFileHeaderSignature)
+                throw new IOException(s"${archive.getPath} has changed since it has been indexed")
+            val dataOffset = 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF)
+            val data = new Array[Byte](classFile.compressedSize)
+            read(channel, classFile.offset + dataOffset, classFile.compressedSize).get(data)
+            classFile.method match {
+                case 0 ⇒ data
+                case 8 ⇒
+                    val inflater = new Inflater(true)
+                    try {
+                        inflater.setInput(data)
+                        val content = new Array[Byte](classFile.size)
+                        var length = 0
+                        while (length < content.length && !inflater.finished())
+                            length += inflater.inflate(content, length, content.length - length)
+                        content
+                    } finally {
+                        inflater.end()
+                    }
+                case method ⇒
+                    throw new IOException(s"unsupported compression method $method in ${archive.getPath}")
+            }
+        } finally {
+            channel.close()
+        }
+    }
+
+    private[this] def read(channel: FileChannel, position: Long, length: Int): ByteBuffer = {
+        val buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN)
+        while (buffer.hasRemaining) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("unexpected end of archive")
+        }
+        buffer.flip()
+        buffer
+    }
+
+    /**
+     * Reads the persisted index of the given JRE, if it exists, the JRE directory still contains
+     * exactly the recorded archives and all of them are unchanged.
+     */
+    def read(jreDirectory: File, indexFile: File): Option[JREIndex] = {
+        if (!indexFile.exists())
+            return None;
+
+        val in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))
+        try {
+            if (in.readInt() != Magic || in.readInt() != Version || in.readUTF() != jreDirectory.getPath)
+                return None;
+
+            def readArchive(): Option[File] = {
+                val archive = new File(in.readUTF())
+                val length = in.readLong()
+                val lastModified = in.readLong()
+                if (archive.length() == length && archive.lastModified() == lastModified) Some(archive)
+                else None
+            }
+
+            val archives = Array.fill(in.readInt())(readArchive())
+            val modulesImage = if (in.readBoolean()) Some(readArchive()) else None
+            if (archives.exists(_.isEmpty) || modulesImage.exists(_.isEmpty))
+                return None;
+            // archives that have been added since the index was built are not recorded
+            if (!(listArchives(jreDirectory) sameElements archives.map(_.get)))
+                return None;
+            if (modulesImage.isEmpty && new File(jreDirectory, "lib/modules").isFile)
+                return None;
+
+            val classFiles = new java.util.HashMap[String, ArchivedClassFile]()
+            for (_ ← 0 until in.readInt()) {
+                classFiles.put(in.readUTF(), ArchivedClassFile(
+                    in.readInt(), in.readLong(), in.readInt(), in.readInt(), in.readInt()
+                ))
+            }
+            val imageClassFiles = new java.util.HashMap[String, String]()
+            for (_ ← 0 until in.readInt()) imageClassFiles.put(in.readUTF(), in.readUTF())
+
+            Some(new JREIndex(jreDirectory, archives.map(_.get), modulesImage.map(_.get), classFiles, imageClassFiles))
+        } finally {
+            in.close()
+        }
+    }
+
+    def write(index: JREIndex, indexFile: File): Unit = {
+        indexFile.getParentFile.mkdirs()
+        // concurrent runs may index the same JRE
+        val tmp = File.createTempFile(s".${indexFile.getName}-", ".tmp", indexFile.getParentFile)
+        val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))
+        try {
+            def writeArchive(archive: File): Unit = {
+                out.writeUTF(archive.getPath)
+                out.writeLong(archive.length())
+                out.writeLong(archive.lastModified())
+            }
+
+            out.writeInt(Magic)
+            out.writeInt(Version)
+            out.writeUTF(index.jreDirectory.getPath)
+            out.writeInt(index.archives.length)
+            index.archives.foreach(writeArchive)
+            out.writeBoolean(index.modulesImage.isDefined)
+            index.modulesImage.foreach(writeArchive)
+
+            out.writeInt(index.classFiles.size)
+            index.classFiles.forEach { (className, classFile) ⇒
+                out.writeUTF(className)
+                out.writeInt(classFile.archive)
+                out.writeLong(classFile.offset)
+                out.writeInt(classFile.method)
+                out.writeInt(classFile.compressedSize)
+                out.writeInt(classFile.size)
+            }
+            out.writeInt(index.imageClassFiles.size)
+            index.imageClassFiles.forEach { (className, module) ⇒
+                out.writeUTF(className)
+                out.writeUTF(module)
+            }
+        } finally {
+            out.close()
+        }
+        Files.move(tmp.toPath, indexFile.toPath, StandardCopyOption.REPLACE_EXISTING)
+    }
+}
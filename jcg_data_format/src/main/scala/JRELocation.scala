@@ -31,11 +31,13 @@ object JRELocation {
     def jreDirectory(jreLocationsFile: File, version: Int): String = {
         Json.parse(new FileInputStream(jreLocationsFile)).validate[Array[JRELocation]] match {
             case JsSuccess(location, _) ⇒
-                location.find(_.version == version).getOrElse(
+                val jreLocation = location.find(_.version == version).getOrElse(
                     throw new IllegalArgumentException(
                         s"java version $version not specified in jre locations"
                     )
-                ).path
+                )
+                registerIndex(jreLocationsFile, jreLocation)
+                jreLocation.path
             case _ ⇒
                 throw new IllegalArgumentException("invalid jre location specification")
         }
@@ -48,6 +50,7 @@ object JRELocation {
     def mapping(jreLocationsFile: File): Map[Int, String] = {
         Json.parse(new FileInputStream(jreLocationsFile)).validate[Array[JRELocation]] match {
             case JsSuccess(location, _) ⇒
+                location.foreach(registerIndex(jreLocationsFile, _))
                 location.map(jreLocation ⇒ jreLocation.version → jreLocation.path).toMap
             case _ ⇒
                 throw new IllegalArgumentException("invalid jre location specification")
@@ -55,14 +58,29 @@ object JRELocation {
     }
 
     /**
-     * Returns all .jar and .jmod files in the given directory and all transitive subdirectories.
+     * The index of each specified JRE is persisted next to the specification file.
+     */
+    private def registerIndex(jreLocationsFile: File, jreLocation: JRELocation): Unit = {
+        val indexDir = new File(jreLocationsFile.getAbsoluteFile.getParentFile, JREIndex.DirectoryName)
+        JREIndex.register(jreLocation.path, new File(indexDir, s"jre${jreLocation.version}.idx"))
+    }
+
+    /**
+     * Returns all .jar and .jmod files in the given directory and all transitive subdirectories
+     * that define classes.
+     *
+     * @throws IllegalArgumentException if the JRE's classes are not defined by any archive, e.g.,
+     *         for a JDK 9+ without jmod files, as frameworks that read the archives would silently
+     *         analyze the targets without the JRE then; use [[JREIndex.classFile]] to read the
+     *         classes of such JREs from their run-time image
      */
     def getAllJREJars(JREPath: String): Array[File] = {
-        val jreDir = new File(JREPath)
-        val jars = jreDir.listFiles { file ⇒
-            file.getName.endsWith(".jar") | file.getName.endsWith(".jmod")
-        }
-        val jarsInSubDirs = jreDir.listFiles(_.isDirectory).flatMap(f ⇒ getAllJREJars(f.getPath))
-        jars ++ jarsInSubDirs
+        val jre = JREIndex(JREPath)
+        if (!jre.hasClassArchives)
+            throw new IllegalArgumentException(
+                s"$JREPath does not contain an archive that defines ${JREIndex.ObjectClass}"+
+                    jre.modulesImage.map(image ⇒ s" (only its run-time image ${image.getPath} does)").getOrElse("")
+            )
+        jre.classArchives
     }
 }
\ No newline at end of file
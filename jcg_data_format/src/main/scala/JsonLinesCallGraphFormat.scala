@@ -0,0 +1,105 @@
+import java.io.InputStream
+import java.io.Writer
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+
+/**
+ * A newline-delimited variant of the json representation of [[ReachableMethods]], where each line
+ * holds exactly one [[ReachableMethod]] object:
+ *
+ * {{{
+ * {"method":{...},"callSites":[...]}
+ * {"method":{...},"callSites":[...]}
+ * }}}
+ *
+ * As every line is self-contained, a file can be split into byte ranges at line breaks, which are
+ * then parsed independently (see [[CallGraphReader.aggregate]]), and a file is valid after each
+ * line, such that reachable methods can be appended as they are discovered (see
+ * [[CallGraphWriter.apply]]).
+ */
+object JsonLinesCallGraphFormat {
+
+    final val FileExtension = ".jsonl"
+
+    /**
+     * Returns true, if the given bytes (the beginning of a json file) start with a reachable method
+     * object instead of the `{"reachableMethods":[...]}` wrapper.
+     */
+    def isJsonLines(header: Array[Byte], length: Int): Boolean = {
+        val s = new String(header, 0, length, StandardCharsets.UTF_8).dropWhile(Character.isWhitespace)
+        s.startsWith("{") && s.substring(1).dropWhile(Character.isWhitespace).startsWith("\"method\"")
+    }
+
+    /**
+     * Returns the position right after the first line break at or after `from`, or `end` if there
+     * is no line break before `end`.
+     */
+    def nextLineStart(channel: FileChannel, from: Long, end: Long): Long = {
+        val buffer = ByteBuffer.allocate(1 << 13)
+        var position = from
+        while (position < end) {
+            buffer.clear()
+            buffer.limit(math.min(buffer.capacity().toLong, end - position).toInt)
+            val read = channel.read(buffer, position)
+            if (read <= 0)
+                return end;
+            var i = 0
+            while (i < read) {
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+                i += 1
+            }
+            position += read
+        }
+        end
+    }
+
+    /**
+     * An input stream over the byte range [`start`, `end`) of the given channel. As only
+     * positional reads are used, multiple streams can read from the same channel concurrently.
+     */
+    class RangeInputStream(channel: FileChannel, start: Long, end: Long) extends InputStream {
+
+        private[this] var position = start
+
+        override def read(): Int = {
+            val b = new Array[Byte](1)
+            if (read(b, 0, 1) == -1) -1 else b(0) & 0xFF
+        }
+
+        override def read(b: Array[Byte], off: Int, len: Int): Int = {
+            if (position >= end)
+                -1
+            else {
+                val n = math.min(len.toLong, end - position).toInt
+                val read = channel.read(ByteBuffer.wrap(b, off, n), position)
+                if (read <= 0)
+                    -1
+                else {
+                    position += read
+                    read
+                }
+            }
+        }
+
+        override def available(): Int = math.min(end - position, Int.MaxValue.toLong).toInt
+    }
+}
+
+/**
+ * Writes call graphs in the [[JsonLinesCallGraphFormat]].
+ */
+class JsonLinesCallGraphWriter(out: Writer) extends JsonCallGraphWriter(out) {
+
+    override protected def beginCallGraph(): Unit = {}
+
+    override protected def separateReachableMethods(): Unit = {}
+
+    override protected def endCallGraph(): Unit = {}
+
+    override def endReachableMethod(): Unit = {
+        super.endReachableMethod()
+        out.write('\n')
+    }
+}
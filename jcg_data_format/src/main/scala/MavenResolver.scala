@@ -0,0 +1,132 @@
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+import scala.collection.JavaConverters._
+import scala.collection.concurrent.TrieMap
+
+import coursier.Cache
+import coursier.Dependency
+import coursier.Fetch
+import coursier.Module
+import coursier.Resolution
+import coursier.maven.MavenRepository
+import scalaz.Nondeterminism
+import scalaz.concurrent.Task
+
+/**
+ * Resolves [[MavenClassPathEntry]]s, i.e., computes the artifact files of a maven artifact and its
+ * dependencies.
+ *
+ * Resolving is expensive, even if all artifacts are already in coursier's cache, hence, the
+ * result of each resolution is recorded in a lockfile (the artifacts' paths, one per line) and
+ * reused as long as all these files exist; within a JVM each entry is resolved at most once.
+ * The artifacts of a resolution are fetched in parallel.
+ *
+ * Lockfiles are stored in `~/.cache/jcg/maven` unless the system property
+ * [[MavenResolver.LockfileDirectoryProperty]] is set. If the system property
+ * [[MavenResolver.OfflineRepositoryProperty]] is set to a local directory in the maven repository
+ * layout, artifacts are exclusively resolved against this directory (offline mode).
+ */
+object MavenResolver {
+
+    final val LockfileDirectoryProperty = "jcg.maven.lockfiles"
+
+    final val OfflineRepositoryProperty = "jcg.maven.offline"
+
+    final val LockfileExtension = ".lock"
+
+    private[this] val resolved = TrieMap.empty[(MavenClassPathEntry, Seq[String]), Array[File]]
+
+    def lockfileDirectory: File = {
+        val dir = System.getProperty(LockfileDirectoryProperty)
+        if (dir ne null) new File(dir)
+        else new File(System.getProperty("user.home"), ".cache/jcg/maven")
+    }
+
+    /**
+     * The local repository used in offline mode, if any.
+     */
+    def offlineRepository: Option[File] = Option(System.getProperty(OfflineRepositoryProperty)).map(new File(_))
+
+    /**
+     * The (root urls of the) repositories against which entries are resolved.
+     */
+    def repositories: Seq[String] = offlineRepository match {
+        case Some(dir) ⇒
+            assert(dir.isDirectory, s"offline repository ${dir.getPath} does not exist")
+            Seq(dir.getCanonicalFile.toURI.toString)
+        case None ⇒
+            Seq("https://repo1.maven.org/maven2")
+    }
+
+    def resolve(entry: MavenClassPathEntry): Array[File] = {
+        val repos = repositories
+        resolved.getOrElseUpdate((entry, repos), {
+            val lockfile = this.lockfile(entry, repos)
+            readLockfile(lockfile).getOrElse {
+                val artifacts = fetch(entry, repos)
+                writeLockfile(lockfile, artifacts)
+                artifacts
+            }
+        })
+    }
+
+    /**
+     * The lockfile of the given entry; entries resolved against different repositories have
+     * different lockfiles.
+     */
+    def lockfile(entry: MavenClassPathEntry, repositories: Seq[String]): File = {
+        val reposHash = ContentHash.of(repositories.mkString("\n")).take(16)
+        new File(
+            lockfileDirectory,
+            s"${entry.org}_${entry.id}_${entry.version}-$reposHash$LockfileExtension"
+        )
+    }
+
+    private[this] def fetch(entry: MavenClassPathEntry, repos: Seq[String]): Array[File] = {
+        val start = Resolution(Set(Dependency(Module(entry.org, entry.id), entry.version)))
+        val repositories =
+            if (offlineRepository.isDefined) repos.map(MavenRepository(_))
+            else Cache.ivy2Local +: repos.map(MavenRepository(_))
+        val fetch = Fetch.from(repositories, Cache.fetch())
+
+        val resolution = start.process.run(fetch).unsafePerformSync
+        if (resolution.metadataErrors.nonEmpty) {
+            val errors = resolution.metadataErrors.map {
+                case ((module, version), messages) ⇒ s"$module:$version (${messages.mkString("; ")})"
+            }
+            throw new IllegalArgumentException(
+                s"cannot resolve ${entry.org}:${entry.id}:${entry.version}: ${errors.mkString(", ")}"
+            )
+        }
+
+        val files = Nondeterminism[Task].gather(
+            resolution.artifacts.map(Cache.file(_).run)
+        ).unsafePerformSync
+        val errors = files.flatMap(_.swap.toOption)
+        if (errors.nonEmpty)
+            throw new IllegalArgumentException(s"cannot fetch artifacts: ${errors.map(_.describe).mkString(", ")}")
+
+        files.map(_.toOption.get).toArray
+    }
+
+    private[this] def readLockfile(lockfile: File): Option[Array[File]] = {
+        if (!lockfile.exists())
+            None
+        else {
+            val artifacts = Files.readAllLines(lockfile.toPath, StandardCharsets.UTF_8).asScala.map(new File(_))
+            if (artifacts.forall(_.exists())) Some(artifacts.toArray)
+            else None
+        }
+    }
+
+    private[this] def writeLockfile(lockfile: File, artifacts: Array[File]): Unit = {
+        lockfile.getParentFile.mkdirs()
+        // concurrent runs may resolve the same entry
+        val tmp = File.createTempFile(s".${lockfile.getName}-", ".tmp", lockfile.getParentFile)
+        Files.write(tmp.toPath, artifacts.map(_.getAbsolutePath).toSeq.asJava, StandardCharsets.UTF_8)
+        Files.move(tmp.toPath, lockfile.toPath, StandardCopyOption.REPLACE_EXISTING)
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+
+import MerkleCallGraph._
+
+/**
+ * A Merkle tree over the content of a call graph: each call site, each reachable method, each
+ * class and each package has a (stable, 64-bit) hash that is derived from the hashes of its
+ * children. Equal hashes imply (with overwhelming probability) equal content, such that two call
+ * graphs can be compared by only descending into the subtrees whose hashes differ, i.e., in time
+ * proportional to the difference instead of the size of the call graphs.
+ *
+ * The hashes do not depend on the order of the reachable methods, call sites or targets, nor on
+ * the format of the call graph. Use [[MerkleCallGraph.load]] to retrieve the tree of a serialized
+ * call graph, which uses the precomputed hashes (see [[MerkleCallGraph.write]]) if available.
+ */
+class MerkleCallGraph(val packages: Map[String, PackageNode]) {
+
+    val hash: Long = unorderedHash(packages.valuesIterator.map(_.hash))
+
+    def methodCount: Int = packages.valuesIterator.map(_.methodCount).sum
+
+    /**
+     * All reachable methods.
+     */
+    def methods: Iterator[Method] = {
+        packages.valuesIterator.flatMap(_.classes.valuesIterator.flatMap(_.methods.keysIterator))
+    }
+
+    def method(method: Method): Option[MethodNode] = {
+        packages.get(packageName(method.declaringClass)).flatMap { p ⇒
+            p.classes.get(method.declaringClass).flatMap(_.methods.get(method))
+        }
+    }
+
+    /**
+     * Computes the differences between this (first) and the given (second) call graph.
+     */
+    def diff(that: MerkleCallGraph): MerkleDiff = {
+        val onlyInFirst = Set.newBuilder[Method]
+        val onlyInSecond = Set.newBuilder[Method]
+        val changed = Set.newBuilder[Method]
+
+        def diffClasses(first: ClassNode, second: ClassNode): Unit = {
+            if (first.hash != second.hash) {
+                for (m ← first.methods.keysIterator ++ second.methods.keysIterator.filterNot(first.methods.contains)) {
+                    (first.methods.get(m), second.methods.get(m)) match {
+                        case (Some(m1), Some(m2)) ⇒ if (m1.hash != m2.hash) changed += m
+                        case (Some(_), None)      ⇒ onlyInFirst += m
+                        case _                    ⇒ onlyInSecond += m
+                    }
+                }
+            }
+        }
+
+        def diffPackages(first: PackageNode, second: PackageNode): Unit = {
+            if (first.hash != second.hash) {
+                for (c ← first.classes.keysIterator ++ second.classes.keysIterator.filterNot(first.classes.contains)) {
+                    (first.classes.get(c), second.classes.get(c)) match {
+                        case (Some(c1), Some(c2)) ⇒ diffClasses(c1, c2)
+                        case (Some(c1), None)     ⇒ onlyInFirst ++= c1.methods.keysIterator
+                        case (_, Some(c2))        ⇒ onlyInSecond ++= c2.methods.keysIterator
+                        case _                    ⇒
+                    }
+                }
+            }
+        }
+
+        if (this.hash != that.hash) {
+            for (p ← this.packages.keysIterator ++ that.packages.keysIterator.filterNot(this.packages.contains)) {
+                (this.packages.get(p), that.packages.get(p)) match {
+                    case (Some(p1), Some(p2)) ⇒ diffPackages(p1, p2)
+                    case (Some(p1), None)     ⇒ onlyInFirst ++= p1.classes.valuesIterator.flatMap(_.methods.keysIterator)
+                    case (_, Some(p2))        ⇒ onlyInSecond ++= p2.classes.valuesIterator.flatMap(_.methods.keysIterator)
+                    case _                    ⇒
+                }
+            }
+        }
+
+        MerkleDiff(onlyInFirst.result(), onlyInSecond.result(), changed.result())
+    }
+
+    /**
+     * Stores the hashes of all reachable methods and their call sites in the given file.
+     */
+    def write(file: File): Unit = {
+        val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))
+        try {
+            out.write(Magic)
+            out.writeByte(Version)
+            out.writeInt(methodCount)
+            for {
+                p ← packages.valuesIterator
+                c ← p.classes.valuesIterator
+                (m, node) ← c.methods
+            } {
+                out.writeUTF(m.name)
+                out.writeUTF(m.declaringClass)
+                out.writeUTF(m.returnType)
+                out.writeShort(m.parameterTypes.size)
+                m.parameterTypes.foreach(out.writeUTF)
+                out.writeInt(node.callSiteHashes.length)
+                node.callSiteHashes.foreach(out.writeLong)
+            }
+        } finally {
+            out.close()
+        }
+    }
+}
+
+object MerkleCallGraph {
+
+    final val FileExtension = ".merkle"
+
+    final val Magic: Array[Byte] = Array('J'.toByte, 'C'.toByte, 'G'.toByte, 'H'.toByte)
+
+    final val Version = 1
+
+    /**
+     * A reachable method; `callSiteHashes` are the sorted, distinct hashes of its call sites.
+     */
+    final class MethodNode(val callSiteHashes: Array[Long], methodHash: Long) {
+        val hash: Long = combine(methodHash, unorderedHash(callSiteHashes.iterator))
+    }
+
+    final class ClassNode(val name: String, val methods: Map[Method, MethodNode]) {
+        val hash: Long = combine(hashString(name), unorderedHash(methods.valuesIterator.map(_.hash)))
+    }
+
+    final class PackageNode(val name: String, val classes: Map[String, ClassNode]) {
+        val hash: Long = combine(hashString(name), unorderedHash(classes.valuesIterator.map(_.hash)))
+
+        def methodCount: Int = classes.valuesIterator.map(_.methods.size).sum
+    }
+
+    /**
+     * The differences between two call graphs: the reachable methods that are only reachable in one
+     * of them and the common reachable methods that have different call sites.
+     */
+    case class MerkleDiff(onlyInFirst: Set[Method], onlyInSecond: Set[Method], changed: Set[Method]) {
+        def isEmpty: Boolean = onlyInFirst.isEmpty && onlyInSecond.isEmpty && changed.isEmpty
+    }
+
+    /**
+     * The file in which the hashes of the given serialized call graph are stored.
+     */
+    def hashFile(serializedCallGraph: File): File = {
+        new File(serializedCallGraph.getPath + FileExtension)
+    }
+
+    /**
+     * Retrieves the Merkle tree of the given serialized call graph. The stored hashes (see
+     * [[hashFile]]) are used if they are up to date, otherwise the tree is computed from the call
+     * graph or its snapshot (see [[CallGraphSnapshotCache.resolve]]). Hence, pass the original
+     * call graph, not its snapshot.
+     */
+    def load(serializedCallGraph: File, interner: MethodInterner = new MethodInterner): MerkleCallGraph = {
+        val hashes = hashFile(serializedCallGraph)
+        if (hashes.exists() && hashes.lastModified() >= serializedCallGraph.lastModified())
+            read(hashes, interner)
+        else
+            build(CallGraphSnapshotCache.resolve(serializedCallGraph), interner)
+    }
+
+    /**
+     * Computes the Merkle tree of the given serialized call graph.
+     */
+    def build(serializedCallGraph: File, interner: MethodInterner = new MethodInterner): MerkleCallGraph = {
+        val builder = new Builder
+        CallGraphReader.foreach(serializedCallGraph, interner)(builder += _)
+        builder.result()
+    }
+
+    def apply(reachableMethods: TraversableOnce[ReachableMethod]): MerkleCallGraph = {
+        val builder = new Builder
+        reachableMethods.foreach(builder += _)
+        builder.result()
+    }
+
+    /**
+     * Reads hashes that have been stored using [[MerkleCallGraph.write]].
+     */
+    def read(file: File, interner: MethodInterner = new MethodInterner): MerkleCallGraph = {
+        val in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))
+        try {
+            val magic = new Array[Byte](Magic.length)
+            in.readFully(magic)
+            if (!java.util.Arrays.equals(magic, Magic))
+                throw new IllegalArgumentException(s"${file.getPath} does not contain call graph hashes")
+            val version = in.readUnsignedByte()
+            if (version != Version)
+                throw new IllegalArgumentException(s"unsupported call graph hashes version $version")
+            val builder = new Builder
+            var i = in.readInt()
+            while (i > 0) {
+                val name = in.readUTF()
+                val declaringClass = in.readUTF()
+                val returnType = in.readUTF()
+                val parameterTypes = List.fill(in.readUnsignedShort())(in.readUTF())
+                val method = interner.method(name, declaringClass, returnType, parameterTypes)
+                builder.add(method, Array.fill(in.readInt())(in.readLong()))
+                i -= 1
+            }
+            builder.result()
+        } finally {
+            in.close()
+        }
+    }
+
+    /**
+     * Collects the hashes of reachable methods; call sites of methods that occur multiple times are
+     * merged.
+     */
+    class Builder {
+
+        private[this] val callSiteHashes = new java.util.HashMap[Method, Array[Long]]()
+
+        def +=(rm: ReachableMethod): this.type = {
+            add(rm.method, rm.callSites.iterator.map(cs ⇒ hash(cs)).toArray)
+            this
+        }
+
+        def add(method: Method, hashes: Array[Long]): Unit = {
+            val existing = callSiteHashes.get(method)
+            callSiteHashes.put(method, if (existing eq null) hashes else existing ++ hashes)
+        }
+
+        def result(): MerkleCallGraph = {
+            var classes = Map.empty[String, Map[Method, MethodNode]]
+            val it = callSiteHashes.entrySet().iterator()
+            while (it.hasNext) {
+                val entry = it.next()
+                val method = entry.getKey
+                val hashes = entry.getValue.distinct
+                java.util.Arrays.sort(hashes)
+                val node = new MethodNode(hashes, hash(method))
+                classes += method.declaringClass →
+                    classes.getOrElse(method.declaringClass, Map.empty[Method, MethodNode]).updated(method, node)
+            }
+            val packages = classes.groupBy(c ⇒ packageName(c._1)).map {
+                case (p, cs) ⇒ p → new PackageNode(p, cs.map { case (c, ms) ⇒ c → new ClassNode(c, ms) })
+            }
+            new MerkleCallGraph(packages)
+        }
+    }
+
+    /**
+     * The package of the given class in JVM notation, e.g., `java/lang` for `Ljava/lang/Object;`.
+     */
+    def packageName(declaringClass: String): String = {
+        val end = declaringClass.lastIndexOf('/')
+        if (end == -1) ""
+        else declaringClass.substring(if (declaringClass.startsWith("L")) 1 else 0, end)
+    }
+
+    def hash(method: Method): Long = {
+        var h = combine(hashString(method.declaringClass), hashString(method.name))
+        h = combine(h, hashString(method.returnType))
+        method.parameterTypes.foreach(t ⇒ h = combine(h, hashString(t)))
+        combine(h, method.parameterTypes.size)
+    }
+
+    def hash(callSite: CallSite): Long = {
+        var h = combine(hash(callSite.declaredTarget), callSite.line)
+        h = combine(h, if (callSite.pc.isDefined) callSite.pc.get.toLong else -1L)
+        combine(h, unorderedHash(callSite.targets.iterator.map(tgt ⇒ hash(tgt))))
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the string's characters; in contrast to `String.hashCode` it is
+     * wide enough to compare large call graphs.
+     */
+    def hashString(s: String): Long = {
+        var h = 0xcbf29ce484222325L
+        var i = 0
+        while (i < s.length) {
+            h ^= s.charAt(i)
+            h *= 0x100000001b3L
+            i += 1
+        }
+        mix(h)
+    }
+
+    private def combine(h: Long, value: Long): Long = mix(h * 0x9e3779b97f4a7c15L + value)
+
+    private def unorderedHash(hashes: Iterator[Long]): Long = {
+        var sum = 0L
+        var count = 0L
+        hashes.foreach { h ⇒
+            sum += mix(h)
+            count += 1
+        }
+        combine(sum, count)
+    }
+
+    // the finalizer of MurmurHash3's 64-bit variant
+    private def mix(value: Long): Long = {
+        var h = value
+        h ^= h >>> 33
+        h *= 0xff51afd7ed558ccdL
+        h ^= h >>> 33
+        h *= 0xc4ceb9fe1a85ec53L
+        h ^= h >>> 33
+        h
+    }
+}
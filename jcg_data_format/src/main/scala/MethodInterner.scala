@@ -0,0 +1,110 @@
+/**
+ * Canonicalizes the strings (names and types), [[Method]] objects and target sets of decoded call
+ * graphs.
+ *
+ * Serialized call graphs mention the same declaring classes, types and methods millions of times
+ * and, in particular for CHA-like call graphs, many call sites share the same (large) set of
+ * targets. Without interning, each occurrence results in separate copies after decoding. Using an
+ * interner, equal strings, methods and target sets are represented by a single instance, which
+ * drastically reduces the heap usage and lets equality checks succeed on the reference comparison.
+ *
+ * @note Readers of the same call graph should share one interner; sharing an interner between
+ *       the call graphs that are compared with each other further reduces the memory footprint.
+ *       The interner is thread-safe, such that it can be used by parallel readers (see
+ *       [[CallGraphReader.aggregate]]).
+ */
+class MethodInterner {
+
+    private[this] val strings = new java.util.concurrent.ConcurrentHashMap[String, String]()
+    private[this] val parameterLists = new java.util.concurrent.ConcurrentHashMap[List[String], List[String]]()
+    private[this] val methods = new java.util.concurrent.ConcurrentHashMap[Method, Method]()
+    private[this] val targetSets = new java.util.concurrent.ConcurrentHashMap[Set[Method], Set[Method]]()
+
+    /**
+     * Returns the canonical instance of the given string.
+     */
+    def intern(s: String): String = {
+        val canonical = strings.putIfAbsent(s, s)
+        if (canonical eq null) s else canonical
+    }
+
+    /**
+     * Returns the canonical instance of the given method. The strings of newly encountered methods
+     * are canonicalized as well.
+     */
+    def intern(method: Method): Method = {
+        val canonical = methods.get(method)
+        if (canonical ne null)
+            canonical
+        else {
+            val m = Method(
+                intern(method.name),
+                intern(method.declaringClass),
+                intern(method.returnType),
+                internParameterTypes(method.parameterTypes)
+            )
+            val existing = methods.putIfAbsent(m, m)
+            if (existing eq null) m else existing
+        }
+    }
+
+    /**
+     * Returns the canonical method with the given (not necessarily canonical) components.
+     */
+    def method(
+        name: String, declaringClass: String, returnType: String, parameterTypes: List[String]
+    ): Method = {
+        intern(Method(name, declaringClass, returnType, parameterTypes))
+    }
+
+    /**
+     * Returns the canonical instance of the given set of call targets, whose elements must already
+     * be canonical.
+     */
+    def targets(targets: Set[Method]): Set[Method] = {
+        if (targets.isEmpty)
+            Set.empty
+        else {
+            val canonical = targetSets.putIfAbsent(targets, targets)
+            if (canonical eq null) targets else canonical
+        }
+    }
+
+    /**
+     * The number of distinct methods seen so far.
+     */
+    def methodCount: Int = methods.size
+
+    /**
+     * The number of distinct (non-empty) target sets seen so far.
+     */
+    def targetSetCount: Int = targetSets.size
+
+    private[this] def internParameterTypes(parameterTypes: List[String]): List[String] = {
+        if (parameterTypes.isEmpty)
+            Nil
+        else {
+            val canonical = parameterLists.get(parameterTypes)
+            if (canonical ne null)
+                canonical
+            else {
+                val params = parameterTypes.map(intern)
+                val existing = parameterLists.putIfAbsent(params, params)
+                if (existing eq null) params else existing
+            }
+        }
+    }
+}
+
+object MethodInterner {
+
+    /**
+     * An interner that returns all strings, methods and target sets as they are, i.e., that does
+     * not retain anything. Used to stream over call graphs that do not fit into memory.
+     */
+    val Disabled: MethodInterner = new MethodInterner {
+        override def intern(s: String): String = s
+        override def intern(method: Method): Method = method
+        override def targets(targets: Set[Method]): Set[Method] = targets
+    }
+}
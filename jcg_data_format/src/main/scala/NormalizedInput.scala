@@ -0,0 +1,239 @@
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.InputStream
+import java.io.PrintWriter
+import java.nio.file.DirectoryNotEmptyException
+import java.nio.file.FileAlreadyExistsException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipInputStream
+import java.util.zip.ZipOutputStream
+
+import scala.collection.mutable
+
+/**
+ * The normalized analysis input of a project (see [[NormalizedInput.normalize]]): a single
+ * uncompressed archive of the project's classes (`target`), at most one uncompressed archive of
+ * the library classes (`classPath`) and the manifest of the shadowed duplicate classes
+ * (`duplicates`).
+ */
+case class NormalizedInput(target: File, classPath: Array[File], duplicates: File)
+
+/**
+ * Normalizes the analysis input of projects, such that all frameworks analyze exactly the same
+ * classes and none of them has to decompress (nested) archives:
+ *
+ *  - the target and the class path entries (archives or directories) are flattened, i.e., the
+ *    content of nested archives (e.g., `bin.zip` or the libraries of fat jars) is inlined
+ *  - the classes of the target itself form the normalized target, all other classes, including
+ *    those of archives nested in the target, form the normalized class path
+ *  - classes are identified by the name in their class file, i.e., independent of the directory
+ *    in which they are stored (e.g., `BOOT-INF/classes/`), and only the first occurrence of each
+ *    class (in class path order, starting with the target) is retained; all others are recorded
+ *    as shadowed duplicates (tab separated: class, retained source, shadowed source, whether both
+ *    are identical)
+ *  - resources are retained the same way, except for signature files that are invalidated by the
+ *    flattening
+ *
+ * Normalized inputs are cached by the content hash of the project's input (see
+ * [[ProjectCatalog.contentHash]]) in `~/.cache/jcg/normalized` unless the system property
+ * [[NormalizedInput.DirectoryProperty]] is set.
+ */
+object NormalizedInput {
+
+    final val DirectoryProperty = "jcg.normalized.dir"
+
+    final val TargetFileName = "target.jar"
+
+    final val ClassPathFileName = "classpath.jar"
+
+    final val DuplicatesFileName = "duplicates.tsv"
+
+    private final val ClassFileMagic = 0xCAFEBABE
+
+    def directory: File = {
+        val dir = System.getProperty(DirectoryProperty)
+        if (dir ne null) new File(dir)
+        else new File(System.getProperty("user.home"), ".cache/jcg/normalized")
+    }
+
+    /**
+     * Returns the normalized input of the given project, which is created if necessary.
+     */
+    def apply(catalog: ProjectCatalog, project: CatalogedProject): NormalizedInput = {
+        val dir = new File(directory, s"${project.name}-${catalog.contentHash(project).take(16)}")
+        if (!dir.exists()) {
+            directory.mkdirs()
+            // concurrent runs may normalize the same project
+            val tmp = Files.createTempDirectory(directory.toPath, s".${dir.getName}-").toFile
+            try {
+                normalize(project.target, project.classPath, tmp)
+                Files.move(tmp.toPath, dir.toPath, StandardCopyOption.ATOMIC_MOVE)
+            } catch {
+                case _: FileAlreadyExistsException | _: DirectoryNotEmptyException ⇒
+                // the project has been normalized concurrently
+            } finally {
+                if (tmp.exists()) {
+                    tmp.listFiles().foreach(_.delete())
+                    tmp.delete()
+                }
+            }
+        }
+        val classPath = new File(dir, ClassPathFileName)
+        NormalizedInput(
+            new File(dir, TargetFileName),
+            if (classPath.exists()) Array(classPath) else Array.empty,
+            new File(dir, DuplicatesFileName)
+        )
+    }
+
+    /**
+     * Writes the normalized input of the given target and class path into the output directory.
+     */
+    def normalize(target: File, classPath: Seq[File], outputDir: File): Unit = {
+        // the name and the source of each retained entry (and the CRC of retained classes)
+        val retained = mutable.HashMap.empty[String, (String, Long)]
+        val duplicates = new PrintWriter(new File(outputDir, DuplicatesFileName), "UTF-8")
+        var targetArchive: ZipOutputStream = null
+        var classPathArchive: ZipOutputStream = null
+
+        def add(name: String, content: Array[Byte], source: String, isTarget: Boolean): Unit = {
+            val isClass = name.endsWith(".class") && isClassFile(content)
+            val entryName = if (isClass) s"${className(content)}.class" else name
+            val crc = new CRC32()
+            crc.update(content)
+            retained.get(entryName) match {
+                case Some((retainedSource, retainedCRC)) ⇒
+                    if (isClass)
+                        duplicates.println(s"$entryName\t$retainedSource\t$source\t${retainedCRC == crc.getValue}")
+                case None ⇒
+                    retained.put(entryName, (source, crc.getValue))
+                    if (isTarget && (targetArchive eq null))
+                        targetArchive = new ZipOutputStream(new FileOutputStream(new File(outputDir, TargetFileName)))
+                    if (!isTarget && (classPathArchive eq null))
+                        classPathArchive = new ZipOutputStream(new FileOutputStream(new File(outputDir, ClassPathFileName)))
+                    val entry = new ZipEntry(entryName)
+                    entry.setMethod(ZipEntry.STORED)
+                    entry.setSize(content.length)
+                    entry.setCompressedSize(content.length)
+                    entry.setCrc(crc.getValue)
+                    val archive = if (isTarget) targetArchive else classPathArchive
+                    archive.putNextEntry(entry)
+                    archive.write(content)
+                    archive.closeEntry()
+            }
+        }
+
+        try {
+            flatten(target, target.getPath, isTarget = true, add)
+            for (entry ← classPath) flatten(entry, entry.getPath, isTarget = false, add)
+        } finally {
+            duplicates.close()
+            if (targetArchive ne null) targetArchive.close()
+            if (classPathArchive ne null) classPathArchive.close()
+        }
+        assert(new File(outputDir, TargetFileName).exists(), s"${target.getPath} does not contain any files")
+    }
+
+    private[this] def flatten(
+        file:     File,
+        source:   String,
+        isTarget: Boolean,
+        add:      (String, Array[Byte], String, Boolean) ⇒ Unit
+    ): Unit = {
+        if (file.isDirectory) {
+            val root = file.toPath
+            Files.walk(root).filter(Files.isRegularFile(_)).sorted().forEach { path ⇒
+                val name = root.relativize(path).toString.replace(File.separatorChar, '/')
+                val content = Files.readAllBytes(path)
+                if (isArchive(name))
+                    flattenArchive(new ByteArrayInputStream(content), s"$source/$name", isTarget = false, add)
+                else if (isRetainedResource(name))
+                    add(name, content, source, isTarget)
+            }
+        } else {
+            val in = new FileInputStream(file)
+            try {
+                flattenArchive(in, source, isTarget, add)
+            } finally {
+                in.close()
+            }
+        }
+    }
+
+    private[this] def flattenArchive(
+        in:       InputStream,
+        source:   String,
+        isTarget: Boolean,
+        add:      (String, Array[Byte], String, Boolean) ⇒ Unit
+    ): Unit = {
+        val zip = new ZipInputStream(in)
+        var entry = zip.getNextEntry
+        while (entry ne null) {
+            if (!entry.isDirectory) {
+                val content = readAll(zip)
+                if (isArchive(entry.getName))
+                    // the libraries of fat jars belong to the class path
+                    flattenArchive(new ByteArrayInputStream(content), s"$source!/${entry.getName}", isTarget = false, add)
+                else if (isRetainedResource(entry.getName))
+                    add(entry.getName, content, source, isTarget)
+            }
+            entry = zip.getNextEntry
+        }
+    }
+
+    private[this] def isArchive(name: String): Boolean = name.endsWith(".jar") || name.endsWith(".zip")
+
+    private[this] def isRetainedResource(name: String): Boolean = {
+        !(name.startsWith("META-INF/") &&
+            (name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC")))
+    }
+
+    private[this] def readAll(in: InputStream): Array[Byte] = {
+        val out = new java.io.ByteArrayOutputStream()
+        val buffer = new Array[Byte](1 << 16)
+        var read = in.read(buffer)
+        while (read >= 0) {
+            out.write(buffer, 0, read)
+            read = in.read(buffer)
+        }
+        out.toByteArray
+    }
+
+    private[this] def isClassFile(content: Array[Byte]): Boolean = {
+        content.length >= 10 && new DataInputStream(new ByteArrayInputStream(content)).readInt() == ClassFileMagic
+    }
+
+    /**
+     * The (JVM) name of the class defined by the given class file.
+     */
+    private[this] def className(classFile: Array[Byte]): String = {
+        val in = new DataInputStream(new ByteArrayInputStream(classFile))
+        in.skipBytes(8) // magic, minor and major version
+        val constantPoolCount = in.readUnsignedShort()
+        val utf8 = new Array[String](constantPoolCount)
+        val classNameIndex = new Array[Int](constantPoolCount)
+        var i = 1
+        while (i < constantPoolCount) {
+            in.readUnsignedByte() match {
+                case 1                                  ⇒ utf8(i) = in.readUTF()
+                case 7                                  ⇒ classNameIndex(i) = in.readUnsignedShort()
+                case 8 | 16 | 19 | 20                   ⇒ in.skipBytes(2)
+                case 15                                 ⇒ in.skipBytes(3)
+                case 3 | 4 | 9 | 10 | 11 | 12 | 17 | 18 ⇒ in.skipBytes(4)
+                case 5 | 6 ⇒
+                    in.skipBytes(8)
+                    i += 1 // longs and doubles take two entries
+                case tag ⇒ throw new IllegalArgumentException(s"invalid constant pool tag $tag")
+            }
+            i += 1
+        }
+        in.skipBytes(2) // access flags
+        utf8(classNameIndex(in.readUnsignedShort()))
+    }
+}
@@ -0,0 +1,281 @@
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+import play.api.libs.json.Json
+import play.api.libs.json.Reads
+import play.api.libs.json.Writes
+
+/**
+ * The boundary of a partial call graph (a component), i.e., of a call graph that only covers a
+ * part of the program, e.g., the JDK or the application:
+ *
+ *  - `entryPoints` are the methods from which the linked call graph is traversed, e.g., the main
+ *    method, the JVM's startup code and the library methods that are called by the application;
+ *    as they are specific to a single program, shared components (e.g., the JDK) have none
+ *  - `unresolvedCallSites` are the call sites of the component whose targets may lie in other
+ *    components, e.g., calls of `Object.toString` within the JDK; their targets in other
+ *    components are contributed by these components (as call sites of the caller)
+ */
+case class CallGraphBoundary(entryPoints: Set[Method], unresolvedCallSites: Set[UnresolvedCallSite])
+
+object CallGraphBoundary {
+    implicit val callGraphBoundaryReads: Reads[CallGraphBoundary] = Json.reads[CallGraphBoundary]
+
+    implicit val callGraphBoundaryWrites: Writes[CallGraphBoundary] = Json.writes[CallGraphBoundary]
+}
+
+/**
+ * A call site of `caller` whose targets are (partially) unknown to its component.
+ */
+case class UnresolvedCallSite(caller: Method, declaredTarget: Method, line: Int, pc: Option[Int])
+
+object UnresolvedCallSite {
+    implicit val unresolvedCallSiteReads: Reads[UnresolvedCallSite] = Json.reads[UnresolvedCallSite]
+
+    implicit val unresolvedCallSiteWrites: Writes[UnresolvedCallSite] = Json.writes[UnresolvedCallSite]
+}
+
+/**
+ * Partial call graphs: a component is a serialized call graph (in any format) along with its
+ * [[CallGraphBoundary]], which is stored in a json file next to it (see [[boundaryFile]]).
+ * Components are combined into a single call graph using the [[CallGraphLinker]].
+ */
+object PartialCallGraph {
+
+    final val BoundaryExtension = ".boundary.json"
+
+    /**
+     * The packages of the JDK (in JVM notation).
+     */
+    final val JDKPackages = List(
+        "java/", "javax/", "jdk/", "sun/", "com/sun/",
+        "org/ietf/jgss/", "org/jcp/xml/", "org/omg/", "org/w3c/dom/", "org/xml/sax/"
+    )
+
+    def isJDKMethod(method: Method): Boolean = {
+        JDKPackages.exists(p ⇒ method.declaringClass.startsWith(s"L$p"))
+    }
+
+    /**
+     * The file that holds the boundary of the given component.
+     */
+    def boundaryFile(component: File): File = new File(component.getPath + BoundaryExtension)
+
+    def readBoundary(component: File): Option[CallGraphBoundary] = {
+        val file = boundaryFile(component)
+        if (!file.exists())
+            None
+        else
+            Some(Json.parse(Files.readAllBytes(file.toPath)).validate[CallGraphBoundary].get)
+    }
+
+    def writeBoundary(component: File, boundary: CallGraphBoundary): Unit = {
+        Files.write(boundaryFile(component).toPath, Json.toBytes(Json.toJson(boundary)))
+    }
+
+    /**
+     * Splits the given (complete) call graph into a library component, i.e., the methods for which
+     * `isLibrary` holds, and an application component.
+     *
+     * The library component only keeps the call edges within the library; call sites with
+     * targets in the application are unresolved. These targets are kept by the application
+     * component as call sites of the respective library methods. All entry points, including
+     * those in the library, are part of the application's boundary. If the library component
+     * already exists (e.g., from another project that has been analyzed using the same JDK), the
+     * library part is added to it; it is only rewritten if it changes.
+     *
+     * Returns false, and neither changes the library component nor writes the application
+     * component, if any library method has other call sites in the existing library component,
+     * i.e., if the library part depends on the application (e.g., for RTA or points-to based call
+     * graphs). Otherwise, linking the components of any project that has been added to the
+     * library component yields the library methods and edges of that project only.
+     */
+    def split(
+        callGraph:   File,
+        isLibrary:   Method ⇒ Boolean,
+        library:     File,
+        application: File,
+        interner:    MethodInterner = new MethodInterner
+    ): Boolean = {
+        val cg = IndexedCallGraph.read(callGraph, interner)
+
+        var libraryCallSites = Map.empty[Method, Set[CallSite]]
+        var libraryEntryPoints = Set.empty[Method]
+        var unresolved = Set.empty[UnresolvedCallSite]
+        val applicationWriter = CallGraphWriter(application)
+        var applicationEntryPoints = Set.empty[Method]
+        try {
+            for (method ← cg.reachableMethods) {
+                val id = cg.id(method)
+                val callSites = cg.callSites(id)
+                if (isLibrary(method)) {
+                    if (cg.predecessorCount(id) == 0) libraryEntryPoints += method
+                    libraryCallSites += method → callSites.map { cs ⇒
+                        val (libraryTargets, applicationTargets) = cs.targets.partition(isLibrary)
+                        if (applicationTargets.isEmpty)
+                            cs
+                        else {
+                            unresolved += UnresolvedCallSite(method, cs.declaredTarget, cs.line, cs.pc)
+                            cs.copy(targets = libraryTargets)
+                        }
+                    }
+                    val callbacks = callSites.iterator.collect {
+                        case cs if !cs.targets.forall(isLibrary) ⇒ cs.copy(targets = cs.targets.filterNot(isLibrary))
+                    }.toList
+                    if (callbacks.nonEmpty)
+                        applicationWriter.writeReachableMethod(method, callbacks)
+                } else {
+                    if (cg.predecessorCount(id) == 0) applicationEntryPoints += method
+                    libraryEntryPoints ++= callSites.iterator.flatMap(_.targets).filter(isLibrary)
+                    applicationWriter.writeReachableMethod(method, callSites)
+                }
+            }
+        } finally {
+            applicationWriter.close()
+        }
+
+        val (existingCallSites, existingBoundary) =
+            if (library.exists())
+                (CallGraphReader.toMap(library, interner), readBoundary(library).getOrElse(
+                    CallGraphBoundary(Set.empty, Set.empty)
+                ))
+            else
+                (Map.empty[Method, Set[CallSite]], CallGraphBoundary(Set.empty, Set.empty))
+
+        val compatible = libraryCallSites.forall {
+            case (method, callSites) ⇒ existingCallSites.get(method).forall(_ == callSites)
+        }
+        if (!compatible) {
+            application.delete()
+            return false;
+        }
+        writeBoundary(application, CallGraphBoundary(applicationEntryPoints ++ libraryEntryPoints, Set.empty))
+
+        val addedCallSites = libraryCallSites.filterKeys(!existingCallSites.contains(_))
+        val mergedCallSites = existingCallSites ++ addedCallSites
+        val mergedBoundary = CallGraphBoundary(
+            existingBoundary.entryPoints,
+            existingBoundary.unresolvedCallSites ++ unresolved
+        )
+        if (!library.exists() || addedCallSites.nonEmpty || mergedBoundary != existingBoundary) {
+            // replace the component atomically, as it is shared between analysis runs
+            val tmp = new File(library.getParentFile, s".tmp-${library.getName}")
+            val writer = CallGraphWriter(tmp)
+            try {
+                for ((method, callSites) ← mergedCallSites) writer.writeReachableMethod(method, callSites)
+            } finally {
+                writer.close()
+            }
+            Files.move(tmp.toPath, library.toPath, StandardCopyOption.REPLACE_EXISTING)
+            writeBoundary(library, mergedBoundary)
+        }
+        true
+    }
+
+    /**
+     * Merges two sets of call sites of the same method: call sites with the same declared target,
+     * line and pc are merged into one call site with the union of their targets.
+     */
+    def mergeCallSites(callSites1: Set[CallSite], callSites2: Set[CallSite]): Set[CallSite] = {
+        if (callSites1.isEmpty) callSites2
+        else if (callSites2.isEmpty) callSites1
+        else {
+            (callSites1 ++ callSites2).groupBy(cs ⇒ (cs.declaredTarget, cs.line, cs.pc)).map {
+                case (_, css) if css.size == 1 ⇒ css.head
+                case (_, css)                  ⇒ css.head.copy(targets = css.flatMap(_.targets))
+            }.toSet
+        }
+    }
+}
+
+/**
+ * Links partial call graphs (see [[PartialCallGraph]]), e.g., a (cached) JDK component and an
+ * application component, into a single call graph: the call sites of methods that occur in
+ * multiple components are merged and only the methods that are reachable from the entry points of
+ * the components are retained. Components without a boundary are retained completely.
+ *
+ * As [[PartialCallGraph.split]] rejects library parts that contradict the shared library
+ * component, the linked call graph usually equals the original call graph; use [[reproduces]] to
+ * verify this before the original call graph is discarded.
+ */
+object CallGraphLinker {
+
+    /**
+     * Writes the linked call graph and returns the unresolved call sites of the reachable methods
+     * to which no other component contributed targets.
+     */
+    def link(components: Seq[File], output: File): Set[UnresolvedCallSite] = {
+        val interner = new MethodInterner
+        var callSites = Map.empty[Method, Set[CallSite]]
+        var entryPoints = Set.empty[Method]
+        var unresolved = Set.empty[UnresolvedCallSite]
+        // the number of components that provide each call site
+        val providers = new java.util.HashMap[UnresolvedCallSite, Integer]()
+
+        for (component ← components) {
+            val cg = CallGraphReader.toMap(component, interner)
+            for ((method, css) ← cg) {
+                callSites += method → PartialCallGraph.mergeCallSites(callSites.getOrElse(method, Set.empty), css)
+                for (cs ← css) providers.merge(UnresolvedCallSite(method, cs.declaredTarget, cs.line, cs.pc), 1, _ + _)
+            }
+            PartialCallGraph.readBoundary(component) match {
+                case Some(boundary) ⇒
+                    entryPoints ++= boundary.entryPoints
+                    unresolved ++= boundary.unresolvedCallSites
+                case None ⇒
+                    entryPoints ++= cg.keySet
+            }
+        }
+
+        var reachable = entryPoints
+        var worklist = entryPoints.toList
+        val writer = CallGraphWriter(output)
+        try {
+            while (worklist.nonEmpty) {
+                val method = worklist.head
+                worklist = worklist.tail
+                for (css ← callSites.get(method)) {
+                    writer.writeReachableMethod(method, css)
+                    for (cs ← css; tgt ← cs.targets if !reachable.contains(tgt)) {
+                        reachable += tgt
+                        worklist ::= tgt
+                    }
+                }
+            }
+        } finally {
+            writer.close()
+        }
+
+        unresolved.filter { cs ⇒
+            reachable.contains(cs.caller) && providers.getOrDefault(cs, 0) < 2
+        }
+    }
+
+    /**
+     * Returns true if linking the given components results in exactly the given call graph.
+     */
+    def reproduces(components: Seq[File], callGraph: File): Boolean = {
+        val linked = File.createTempFile("linked-", BinaryCallGraphFormat.FileExtension)
+        try {
+            link(components, linked)
+            val interner = new MethodInterner
+            val expected = CallGraphReader.toMap(callGraph, interner)
+            val actual = CallGraphReader.toMap(linked, interner)
+            expected == actual
+        } finally {
+            linked.delete()
+        }
+    }
+
+    /**
+     * Usage: `CallGraphLinker --output <cg> <component> [<component> ...]`
+     */
+    def main(args: Array[String]): Unit = {
+        assert(args.length >= 3 && args(0) == "--output", "usage: CallGraphLinker --output <cg> <component>+")
+        val components = args.drop(2).map(new File(_))
+        for (c ← components) assert(c.exists(), s"${c.getPath} does not exist")
+        val unresolved = CallGraphLinker.link(components, new File(args(1)))
+        println(s"${unresolved.size} call sites remain unresolved")
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.File
+import java.nio.file.Files
+import java.util.stream.IntStream
+
+import play.api.libs.json.Json
+
+/**
+ * A project of a [[ProjectCatalog]], i.e., its specification along with the canonical files of
+ * its target and its class path.
+ */
+case class CatalogedProject(
+        specFile:    File,
+        spec:        ProjectSpecification,
+        target:      File,
+        projectsDir: File
+) {
+    def name: String = spec.name
+
+    /**
+     * The class path entries; resolving them may download Maven dependencies, hence, this is only
+     * done (once) for the projects that are actually analyzed.
+     */
+    lazy val classPath: Array[File] = spec.allClassPathEntryFiles(projectsDir).map(_.getCanonicalFile)
+
+    def classPathPaths: Array[String] = classPath.map(_.getPath)
+}
+
+/**
+ * All project specifications (`*.conf` files) of a projects directory, which are parsed only
+ * once; the class path of a project is resolved (see
+ * [[ProjectSpecification.allClassPathEntryFiles]]) on first use, i.e., after filtering.
+ *
+ * The catalog also provides the content hashes of the targets and class path entries (see
+ * [[ContentHash]]), which are computed in parallel on first use. They identify the exact input of
+ * an analysis, e.g., to key cached results.
+ */
+class ProjectCatalog private (val projectsDir: File, val projects: Array[CatalogedProject]) {
+
+    /**
+     * The content hashes of all targets and class path entries of the projects.
+     */
+    lazy val contentHashes: Map[File, String] = {
+        val files = projects.flatMap(p ⇒ p.target +: p.classPath).distinct
+        val hashes = new Array[String](files.length)
+        IntStream.range(0, files.length).parallel().forEach { i ⇒
+            assert(files(i).exists(), s"${files(i).getPath} does not exist")
+            hashes(i) = ContentHash.of(files(i))
+        }
+        files.zip(hashes).toMap
+    }
+
+    /**
+     * A hash of the analysis input of the given project, i.e., of its java version, target and
+     * class path (in order).
+     */
+    def contentHash(project: CatalogedProject): String = {
+        val hashes = (project.target +: project.classPath).map(contentHashes)
+        ContentHash.of((project.spec.java.toString +: hashes).mkString("\n"))
+    }
+
+    def filter(p: CatalogedProject ⇒ Boolean): ProjectCatalog = {
+        new ProjectCatalog(projectsDir, projects.filter(p))
+    }
+}
+
+object ProjectCatalog {
+
+    final val SpecificationExtension = ".conf"
+
+    /**
+     * Loads the specifications in the given directory whose file names start with the given
+     * prefix, sorted by their file names.
+     */
+    def load(projectsDir: File, fileNamePrefix: String = ""): ProjectCatalog = {
+        val specFiles = projectsDir.listFiles { (_, name) ⇒
+            name.endsWith(SpecificationExtension) && name.startsWith(fileNamePrefix)
+        }.sorted
+
+        val projects = specFiles.map { specFile ⇒
+            val spec = Json.parse(Files.readAllBytes(specFile.toPath)).validate[ProjectSpecification].getOrElse {
+                throw new IllegalArgumentException(s"invalid project specification ${specFile.getPath}")
+            }
+            CatalogedProject(specFile, spec, spec.target(projectsDir).getCanonicalFile, projectsDir)
+        }
+        new ProjectCatalog(projectsDir, projects)
+    }
+}
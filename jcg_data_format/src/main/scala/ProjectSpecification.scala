@@ -1,18 +1,10 @@
 import java.io.File
 
-import coursier.Module
-import coursier.Dependency
-import coursier.Resolution
-import coursier.Cache
-import coursier.Fetch
-import coursier.FileError
-import coursier.maven.MavenRepository
 import play.api.libs.json.JsPath
 import play.api.libs.json.Json
 import play.api.libs.json.Reads
 import play.api.libs.json.OWrites
 import play.api.libs.json.Writes
-import scalaz.\/
 
 /**
  * Specifies a target project.
@@ -100,19 +92,11 @@ object ClassPathEntry {
 
 /**
  * Specifies an artifact (including its dependencies) in the maven central repository.
+ *
+ * @see [[MavenResolver]]
  */
 case class MavenClassPathEntry(org: String, id: String, version: String) extends ClassPathEntry {
-    override def getLocations: Array[File] = {
-        val start = Resolution(Set(Dependency(Module(org, id), version)))
-        val repositories = Seq(Cache.ivy2Local, MavenRepository("https://repo1.maven.org/maven2"))
-        val fetch = Fetch.from(repositories, Cache.fetch())
-
-        val resolution = start.process.run(fetch).unsafePerformSync
-        val r: Seq[\/[FileError, File]] = resolution.artifacts.map(Cache.file(_).run).map(_.unsafePerformSync)
-        assert(r.forall(_.isRight))
-
-        r.map(_.toOption.get).toArray
-    }
+    override def getLocations: Array[File] = MavenResolver.resolve(this)
 }
 
 object MavenClassPathEntry {
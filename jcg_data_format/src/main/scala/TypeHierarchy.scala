@@ -0,0 +1,78 @@
+/**
+ * The type hierarchy of an analyzed program, i.e., the direct supertypes (superclass and
+ * interfaces) of each type and the (non-abstract) methods declared by each type. All types are
+ * given in JVM notation, e.g., `Ljava/lang/Object;`.
+ *
+ * The hierarchy is used to represent the targets of CHA-like call sites symbolically (see
+ * [[ConeTargetSet]]).
+ */
+class TypeHierarchy(
+        val supertypes:      Map[String, List[String]],
+        val declaredMethods: Map[String, Set[Method]]
+) {
+
+    /**
+     * The direct subtypes of each type.
+     */
+    lazy val subtypes: Map[String, List[String]] = {
+        supertypes.foldLeft(Map.empty[String, List[String]]) {
+            case (result, (subtype, supers)) ⇒
+                supers.foldLeft(result) { (r, supertype) ⇒
+                    r.updated(supertype, subtype :: r.getOrElse(supertype, Nil))
+                }
+        }
+    }
+
+    private[this] val cones = new java.util.concurrent.ConcurrentHashMap[Method, Set[Method]]()
+
+    def types: Set[String] = supertypes.keySet ++ declaredMethods.keySet
+
+    /**
+     * Returns true, if `subtype` is (reflexively and transitively) a subtype of `supertype`. The
+     * costs are linear in the depth of the hierarchy (and the number of implemented interfaces).
+     */
+    def isSubtypeOf(subtype: String, supertype: String): Boolean = {
+        subtype == supertype || supertypes.getOrElse(subtype, Nil).exists(isSubtypeOf(_, supertype))
+    }
+
+    /**
+     * Returns all (reflexive and transitive) subtypes of the given type.
+     */
+    def subtypesOf(tpe: String): Set[String] = {
+        var result = Set(tpe)
+        var worklist = List(tpe)
+        while (worklist.nonEmpty) {
+            val current = worklist.head
+            worklist = worklist.tail
+            for (subtype ← subtypes.getOrElse(current, Nil) if !result.contains(subtype)) {
+                result += subtype
+                worklist ::= subtype
+            }
+        }
+        result
+    }
+
+    /**
+     * Returns true, if the given method is declared by its declaring class.
+     */
+    def declares(method: Method): Boolean = {
+        declaredMethods.get(method.declaringClass).exists(_.contains(method))
+    }
+
+    /**
+     * All methods with the same signature as `declaredTarget` that are declared by a subtype of
+     * the declared target's declaring class (including the class itself).
+     */
+    def cone(declaredTarget: Method): Set[Method] = {
+        val cone = cones.get(declaredTarget)
+        if (cone ne null)
+            cone
+        else {
+            val newCone = subtypesOf(declaredTarget.declaringClass).iterator.map { tpe ⇒
+                declaredTarget.copy(declaringClass = tpe)
+            }.filter(declares).toSet
+            cones.put(declaredTarget, newCone)
+            newCone
+        }
+    }
+}
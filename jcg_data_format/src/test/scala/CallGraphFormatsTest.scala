@@ -0,0 +1,63 @@
+import java.io.File
+
+import org.scalatest.FunSuite
+
+import TestCallGraphs._
+
+class CallGraphFormatsTest extends FunSuite {
+
+    private[this] val Formats = Seq(
+        "cg.json",
+        "cg.json.gz",
+        JsonLinesCallGraphFormat.FileExtension,
+        BinaryCallGraphFormat.FileExtension,
+        BinaryCallGraphFormat.FileExtension + BlockCompression.FileExtension,
+        IndexedCallGraphFile.FileExtension
+    )
+
+    for (format ← Formats; (name, graph) ← Seq("sample" → sample, "generated" → generate(5000))) {
+        test(s"$format round trip of the $name call graph") {
+            withTempDirectory { directory ⇒
+                val file = new File(directory, if (format.startsWith(".")) "cg" + format else format)
+                write(file, graph)
+                assert(CallGraphReader.read(file) == ReachableMethods(graph.toSet))
+            }
+        }
+    }
+
+    test("json to binary to json") {
+        withTempDirectory { directory ⇒
+            val json = new File(directory, "cg.json")
+            val binary = new File(directory, "cg" + BinaryCallGraphFormat.FileExtension)
+            val result = new File(directory, "result.json")
+            val graph = generate(5000)
+            write(json, graph)
+            CallGraphConverter.convert(json, binary)
+            CallGraphConverter.convert(binary, result)
+            assert(CallGraphReader.read(result) == ReachableMethods(graph.toSet))
+        }
+    }
+
+    test("indexed call graph lookups") {
+        withTempDirectory { directory ⇒
+            val file = new File(directory, "cg" + IndexedCallGraphFile.FileExtension)
+            write(file, sample)
+            val indexed = new IndexedCallGraphFile(file)
+            assert(indexed.methodCount == sample.size)
+            sample.foreach { rm ⇒ assert(indexed.callSites(rm.method) == Some(rm.callSites)) }
+            assert(indexed.callSites(Method("missing", "Lapp/Main;", "V", Nil)).isEmpty)
+        }
+    }
+
+    test("json lines call graphs can be appended") {
+        withTempDirectory { directory ⇒
+            val file = new File(directory, "cg" + JsonLinesCallGraphFormat.FileExtension)
+            val (first, second) = sample.splitAt(2)
+            write(file, first)
+            val writer = CallGraphWriter(file, append = true)
+            second.foreach(rm ⇒ writer.writeReachableMethod(rm.method, rm.callSites))
+            writer.close()
+            assert(CallGraphReader.read(file) == ReachableMethods(sample.toSet))
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.File
+
+import org.scalatest.FunSuite
+
+import TestCallGraphs._
+
+class CallGraphStoreTest extends FunSuite {
+
+    test("manifest round trip") {
+        withTempDirectory { directory ⇒
+            val manifest = new File(directory, "cg" + CallGraphStore.ManifestExtension)
+            write(manifest, sample)
+            assert(CallGraphReader.read(manifest) == ReachableMethods(sample.toSet))
+        }
+    }
+
+    test("call graphs share the records of a store") {
+        withTempDirectory { directory ⇒
+            assert(new File(directory, CallGraphStore.DirectoryName).mkdir())
+            val pack = new File(new File(directory, CallGraphStore.DirectoryName), CallGraphStore.PackFile)
+            val first = generate(5000)
+            val second = first.take(4000) ++ generate(1000, seed = 7)
+
+            val firstManifest = new File(directory, "a/cg" + CallGraphStore.ManifestExtension)
+            val secondManifest = new File(directory, "b/cg" + CallGraphStore.ManifestExtension)
+            firstManifest.getParentFile.mkdirs()
+            secondManifest.getParentFile.mkdirs()
+            write(firstManifest, first)
+            val packSize = pack.length()
+            write(secondManifest, second)
+            assert(pack.length() < 2 * packSize)
+
+            // rewriting a call graph does not add records
+            val storedSize = pack.length()
+            write(firstManifest, first)
+            assert(pack.length() == storedSize)
+
+            assert(CallGraphReader.read(firstManifest) == ReachableMethods(first.toSet))
+            assert(CallGraphReader.read(secondManifest) == ReachableMethods(second.toSet))
+        }
+    }
+
+    test("merkle hashes round trip") {
+        withTempDirectory { directory ⇒
+            val file = new File(directory, "cg" + BinaryCallGraphFormat.FileExtension)
+            val graph = generate(5000)
+            write(file, graph)
+            val merkle = MerkleCallGraph.build(file)
+            val hashes = MerkleCallGraph.hashFile(file)
+            merkle.write(hashes)
+            val read = MerkleCallGraph.read(hashes)
+            assert(read.hash == merkle.hash)
+            assert(read.methodCount == merkle.methodCount)
+            assert(read.diff(merkle).isEmpty)
+            assert(merkle.hash == MerkleCallGraph(graph).hash)
+        }
+    }
+
+    test("merkle diff finds changed call sites") {
+        val changed = sample.head.copy(callSites = sample.head.callSites.tail)
+        val diff = MerkleCallGraph(sample).diff(MerkleCallGraph(changed +: sample.tail.tail))
+        assert(diff.changed == Set(changed.method))
+        assert(diff.onlyInFirst == Set(sample(1).method))
+        assert(diff.onlyInSecond.isEmpty)
+    }
+}
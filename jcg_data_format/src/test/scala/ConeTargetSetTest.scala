@@ -0,0 +1,67 @@
+import java.io.File
+
+import org.scalatest.FunSuite
+
+import TestCallGraphs._
+
+class ConeTargetSetTest extends FunSuite {
+
+    private[this] val Object = "Ljava/lang/Object;"
+
+    private[this] def toStringOf(declaringClass: String): Method = {
+        Method("toString", declaringClass, "Ljava/lang/String;", Nil)
+    }
+
+    // Object <- A <- B0, ..., B9 and Object <- D; all but B9 declare toString
+    private[this] val subclasses = (0 until 10).map(i ⇒ s"LB$i;")
+
+    private[this] val hierarchy = new TypeHierarchy(
+        Map(Object → Nil, "LA;" → List(Object), "LD;" → List(Object)) ++ subclasses.map(_ → List("LA;")),
+        Map(Object → Set(toStringOf(Object)), "LA;" → Set(toStringOf("LA;")), "LD;" → Set(toStringOf("LD;"))) ++
+            subclasses.map(b ⇒ b → (if (b == "LB9;") Set.empty[Method] else Set(toStringOf(b))))
+    )
+
+    // the call graph computed by CHA, i.e., each call site targets the full cone
+    private[this] val cha: Seq[ReachableMethod] = ("LA;" +: "LD;" +: subclasses).map { tpe ⇒
+        val caller = Method("m", tpe, "V", Nil)
+        ReachableMethod(caller, Set(
+            CallSite(toStringOf(Object), 1, Some(0), hierarchy.cone(toStringOf(Object))),
+            CallSite(toStringOf("LA;"), 2, Some(5), hierarchy.cone(toStringOf("LA;"))),
+            CallSite(toStringOf("LA;"), 3, None, hierarchy.cone(toStringOf("LA;")) - toStringOf("LB0;"))
+        ))
+    }
+
+    test("cones are expanded using the type hierarchy") {
+        assert(hierarchy.cone(toStringOf("LA;")) == ("LA;" +: subclasses.init).map(toStringOf).toSet)
+        assert(hierarchy.cone(toStringOf(Object)).size == 12)
+    }
+
+    test("compressed target sets equal their expansion") {
+        for (rm ← cha; cs ← rm.callSites) {
+            val compressed = ConeTargetSet.compress(cs.declaredTarget, cs.targets, hierarchy)
+            assert(compressed == cs.targets)
+            assert(cs.targets == compressed)
+            assert(compressed.hashCode == cs.targets.hashCode)
+        }
+        val cone = hierarchy.cone(toStringOf(Object))
+        assert(ConeTargetSet.compress(toStringOf(Object), cone, hierarchy).isInstanceOf[ConeTargetSet])
+    }
+
+    test("binary round trip of a CHA call graph") {
+        withTempDirectory { directory ⇒
+            val file = new File(directory, "cg" + BinaryCallGraphFormat.FileExtension)
+            val writer = CallGraphWriter(file)
+            writer.useTypeHierarchy(hierarchy)
+            cha.foreach(rm ⇒ writer.writeReachableMethod(rm.method, rm.callSites))
+            writer.close()
+
+            val read = CallGraphReader.read(file)
+            assert(read == ReachableMethods(cha.toSet))
+            assert(read.reachableMethods.exists(_.callSites.exists(_.targets.isInstanceOf[ConeTargetSet])))
+
+            val json = new File(directory, "cg.json")
+            CallGraphConverter.convert(file, json)
+            assert(CallGraphReader.read(json) == ReachableMethods(cha.toSet))
+        }
+    }
+}
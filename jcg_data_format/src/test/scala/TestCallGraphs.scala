@@ -0,0 +1,86 @@
+import java.io.File
+import java.nio.file.Files
+
+/**
+ * Call graphs and helpers shared by the tests of the call graph formats.
+ */
+object TestCallGraphs {
+
+    private[this] val Object = "Ljava/lang/Object;"
+
+    /**
+     * A small call graph that covers the corner cases of the formats: call sites without a pc,
+     * negative lines, call sites without targets, methods with parameters and methods without call
+     * sites.
+     */
+    val sample: Seq[ReachableMethod] = {
+        val main = Method("main", "Lapp/Main;", "V", List("[Ljava/lang/String;"))
+        val run = Method("run", "Lapp/Task;", "I", List("I", "Ljava/lang/String;"))
+        val init = Method("<init>", "Lapp/Task;", "V", Nil)
+        val objectToString = Method("toString", Object, "Ljava/lang/String;", Nil)
+        val native = Method("arraycopy", "Ljava/lang/System;", "V", List(Object, "I", Object, "I", "I"))
+        Seq(
+            ReachableMethod(main, Set(
+                CallSite(init, 3, Some(4), Set(init)),
+                CallSite(run, 4, Some(12), Set(run)),
+                CallSite(
+                    objectToString,
+                    -1,
+                    None,
+                    Set(objectToString, Method("toString", "Lapp/Task;", "Ljava/lang/String;", Nil))
+                )
+            )),
+            ReachableMethod(run, Set(CallSite(native, 10, Some(0), Set.empty))),
+            ReachableMethod(init, Set.empty),
+            ReachableMethod(objectToString, Set.empty)
+        )
+    }
+
+    /**
+     * A pseudo-random call graph with the given number of reachable methods.
+     */
+    def generate(size: Int, seed: Int = 1): Seq[ReachableMethod] = {
+        val random = new scala.util.Random(seed)
+        val methods = Array.tabulate(size) { i ⇒
+            Method(s"m${i % 50}", s"Lpkg${i % 7}/C${i % 300};", if (i % 3 == 0) "V" else Object, List.fill(i % 3)("I"))
+        }
+        methods.toSeq.map { method ⇒
+            val callSites = Seq.fill(random.nextInt(5)) {
+                CallSite(
+                    methods(random.nextInt(size)),
+                    random.nextInt(100) - 1,
+                    if (random.nextBoolean()) Some(random.nextInt(1000)) else None,
+                    Seq.fill(random.nextInt(4))(methods(random.nextInt(size))).toSet
+                )
+            }
+            ReachableMethod(method, callSites.toSet)
+        }
+    }
+
+    def write(file: File, reachableMethods: Seq[ReachableMethod]): Unit = {
+        val writer = CallGraphWriter(file)
+        try {
+            reachableMethods.foreach(rm ⇒ writer.writeReachableMethod(rm.method, rm.callSites))
+        } finally {
+            writer.close()
+        }
+    }
+
+    /**
+     * Runs `f` with a new temporary directory that is deleted afterwards.
+     */
+    def withTempDirectory[T](f: File ⇒ T): T = {
+        val directory = Files.createTempDirectory("jcg-test").toFile
+        try {
+            f(directory)
+        } finally {
+            delete(directory)
+        }
+    }
+
+    private[this] def delete(file: File): Unit = {
+        if (file.isDirectory)
+            file.listFiles().foreach(delete)
+        file.delete()
+    }
+}
@@ -1,16 +1,14 @@
 
 import java.io.File
-import java.io.PrintWriter
 import java.net.URL
 import java.nio.file.Files
+import java.util.concurrent.TimeUnit
 
 import scala.collection.mutable
 import scala.io.Source
 import scala.sys.process.Process
 
 import org.apache.commons.io.FileUtils
-import play.api.libs.json.Json
-import play.api.libs.json.JsValue
 
 import org.opalj.collection.immutable.RefArray
 import org.opalj.br.ClassFile
@@ -39,19 +37,21 @@ object DoopAdapter extends JCGTestAdapter {
     override def frameworkName(): String = "Doop"
 
     private def createJsonRepresentation(
-        doopEdges: Source, doopReachable: Source, tgtJar: File, jreDir: File, outFile: File
+        doopEdges:     Source,
+        doopReachable: Source,
+        tgtJar:        File,
+        jreDir:        File,
+        sink:          CallGraphSink,
+        report:        AnalysisReport
     ): Unit = {
+        val start = System.nanoTime()
         implicit val p: Project[URL] = Project(Array(tgtJar, jreDir), Array.empty[File])
 
         val callGraph = extractDoopCG(doopEdges, doopReachable)
 
-        val reachableMe: ReachableMethods = convertToReachableMethods(callGraph)
-
-        val callSitesJson: JsValue = Json.toJson(reachableMe)
-
-        val pw = new PrintWriter(outFile)
-        pw.write(Json.prettyPrint(callSitesJson))
-        pw.close()
+        writeReachableMethods(callGraph, sink, report)
+        sink.close()
+        report.recordPhase(AnalysisReport.Phase.EXPORT, System.nanoTime() - start, -1)
     }
 
     private def resolveBridgeMethod(
@@ -117,10 +117,11 @@ object DoopAdapter extends JCGTestAdapter {
         }
     }
 
-    private def convertToReachableMethods(
-        callGraph: Map[String, Map[(String, Int), Set[String]]]
-    )(implicit project: Project[URL]): ReachableMethods = {
-        var reachableMethods = Set.empty[ReachableMethod]
+    private def writeReachableMethods(
+        callGraph: Map[String, Map[(String, Int), Set[String]]],
+        sink:      CallGraphSink,
+        report:    AnalysisReport
+    )(implicit project: Project[URL]): Unit = {
         var reachableMethodsSet = Set.empty[Method]
 
         for {
@@ -156,7 +157,8 @@ object DoopAdapter extends JCGTestAdapter {
                     }
                 case None ⇒
             }
-            reachableMethods += ReachableMethod(callerMethod, resultingCallSites)
+            sink.writeReachableMethod(callerMethod, resultingCallSites)
+            report.addReachableMethod(resultingCallSites.iterator.map(_.targets.size.toLong).sum)
         }
 
         for {
@@ -167,10 +169,10 @@ object DoopAdapter extends JCGTestAdapter {
             val calleeMethod = toMethod(tgt)
             if (!reachableMethodsSet.contains(calleeMethod)) {
                 reachableMethodsSet += calleeMethod
-                reachableMethods += ReachableMethod(calleeMethod, Set.empty)
+                sink.writeReachableMethod(calleeMethod, Set.empty)
+                report.addReachableMethod(0)
             }
         }
-        ReachableMethods(reachableMethods)
     }
 
     private def extractDoopCG(
@@ -282,6 +284,43 @@ object DoopAdapter extends JCGTestAdapter {
         analyzeJDK: Boolean,
         outputFile: String
     ): Long = {
+        serializeCG(
+            algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, outputFile,
+            AdapterOptions.DEFAULTS, new AnalysisReport
+        ).getAnalysisTime
+    }
+
+    override def serializeCG(
+        algorithm:  String,
+        target:     String,
+        mainClass:  String,
+        classPath:  Array[String],
+        JDKPath:    String,
+        analyzeJDK: Boolean,
+        outputFile: String,
+        options:    AdapterOptions,
+        report:     AnalysisReport
+    ): AnalysisReport = {
+        CallGraphSink.writeFile(new File(outputFile)) { sink ⇒
+            serializeCG(
+                algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, sink, options,
+                AnalysisBudget.UNLIMITED, report
+            )
+        }
+    }
+
+    override def serializeCG(
+        algorithm:  String,
+        target:     String,
+        mainClass:  String,
+        classPath:  Array[String],
+        JDKPath:    String,
+        analyzeJDK: Boolean,
+        sink:       CallGraphSink,
+        options:    AdapterOptions,
+        budget:     AnalysisBudget,
+        report:     AnalysisReport
+    ): AnalysisReport = {
         val env = System.getenv
 
         assert(env.containsKey("DOOP_HOME"))
@@ -304,36 +343,65 @@ object DoopAdapter extends JCGTestAdapter {
         if (mainClass != null)
             args ++= Array("--main", mainClass)
 
-        val status = Process(Array("./gradlew", "tasks"), Some(doopHome)).!
-        if (status != 0)
-            throw new RuntimeException("failed to run doop")
-
-        val before = System.nanoTime()
-
-        Process(
-            args,
-            Some(doopHome),
-            "DOOP_HOME" → doopHome.getAbsolutePath,
-            "DOOP_OUT" → outDir.getAbsolutePath,
-            "DOOP_PLATFORMS_LIB" → doopPlatformDirs.getAbsolutePath
-        ).!
-
-        val after = System.nanoTime()
-
-        val cgCsv = new File(doopHome, "last-analysis/CallGraphEdge.csv")
-        val rmCsv = new File(doopHome, "last-analysis/Reachable.csv")
-        createJsonRepresentation(
-            Source.fromFile(cgCsv),
-            Source.fromFile(rmCsv),
-            new File(target),
-            new File(JDKPath),
-            new File(outputFile)
-        )
+        try {
+            val status = Process(Array("./gradlew", "tasks"), Some(doopHome)).!
+            if (status != 0)
+                throw new RuntimeException("failed to run doop")
+
+            budget.check()
+            val before = System.nanoTime()
+
+            val doopBuilder = new ProcessBuilder(args: _*).directory(doopHome).inheritIO()
+            doopBuilder.environment().put("DOOP_HOME", doopHome.getAbsolutePath)
+            doopBuilder.environment().put("DOOP_OUT", outDir.getAbsolutePath)
+            doopBuilder.environment().put("DOOP_PLATFORMS_LIB", doopPlatformDirs.getAbsolutePath)
+            // the heap of doop's JVM is bounded by the JVM itself (the heap of this JVM is
+            // unrelated); the memory of the datalog engine is not bounded
+            if (budget.getMaxHeapBytes > 0)
+                doopBuilder.environment().put("JAVA_OPTS", s"-Xmx${budget.getMaxHeapBytes}")
+            val doop = doopBuilder.start()
+
+            // doop runs in separate processes (the launcher script forks doop's JVM, which runs
+            // the datalog engine), which are all killed once the deadline has passed
+            try {
+                while (!doop.waitFor(100, TimeUnit.MILLISECONDS)) {
+                    if (budget.getRemainingNanos <= 0) {
+                        destroyProcessTree(doop)
+                        budget.check()
+                    }
+                }
+            } catch {
+                case e: InterruptedException ⇒
+                    destroyProcessTree(doop)
+                    throw e
+            }
+            if (doop.exitValue() != 0)
+                throw new RuntimeException(s"doop failed with exit code ${doop.exitValue()}")
+
+            val after = System.nanoTime()
+            report.recordPhase(AnalysisReport.Phase.CALL_GRAPH, after - before, -1)
+
+            val cgCsv = new File(doopHome, "last-analysis/CallGraphEdge.csv")
+            val rmCsv = new File(doopHome, "last-analysis/Reachable.csv")
+            createJsonRepresentation(
+                Source.fromFile(cgCsv),
+                Source.fromFile(rmCsv),
+                new File(target),
+                new File(JDKPath),
+                sink,
+                report
+            )
+        } finally {
+            FileUtils.deleteDirectory(doopPlatformDirs)
+            FileUtils.deleteDirectory(outDir)
+        }
 
-        FileUtils.deleteDirectory(doopPlatformDirs)
-        FileUtils.deleteDirectory(outDir)
+        report
+    }
 
-        after - before
+    private def destroyProcessTree(process: java.lang.Process): Unit = {
+        process.toHandle.descendants().forEach(p ⇒ p.destroyForcibly())
+        process.destroyForcibly()
     }
 
     /**
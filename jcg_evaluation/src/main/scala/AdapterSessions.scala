@@ -0,0 +1,41 @@
+import java.io.Closeable
+
+import scala.collection.mutable
+
+/**
+ * The open [[AdapterSession]]s of a single adapter, one for each JDK, such that all targets that
+ * are analyzed with the same adapter and JDK share the JDK related state of the framework.
+ *
+ * Requesting a session of another adapter closes the sessions of the current one, i.e., at most
+ * one framework retains its state; hence, the targets should be grouped by adapter.
+ *
+ * Currently, only the OPAL session amortizes loading the JDK, as it retains the parsed class files.
+ * The WALA and SootUp sessions only share how the JDK is located, because their frameworks load
+ * the JDK's classes into per-target class hierarchies and views; all other adapters construct
+ * each call graph from scratch.
+ */
+class AdapterSessions(
+        analyzeJDK: Boolean,
+        options:    JCGTestAdapter ⇒ AdapterOptions
+) extends Closeable {
+
+    private[this] var adapter: JCGTestAdapter = _
+    private[this] val sessions = mutable.Map.empty[String, AdapterSession]
+
+    def apply(adapter: JCGTestAdapter, JDKPath: String): AdapterSession = {
+        if (adapter ne this.adapter) {
+            close()
+            this.adapter = adapter
+        }
+        sessions.getOrElseUpdate(JDKPath, adapter.openSession(JDKPath, analyzeJDK, options(adapter)))
+    }
+
+    /**
+     * Closes all open sessions, e.g., to release the retained state after the JVM ran out of
+     * memory; subsequent requests open new sessions.
+     */
+    override def close(): Unit = {
+        sessions.values.foreach(_.close())
+        sessions.clear()
+    }
+}
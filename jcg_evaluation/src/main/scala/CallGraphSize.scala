@@ -1,7 +1,4 @@
 import java.io.File
-import java.io.FileInputStream
-
-import play.api.libs.json.Json
 
 /**
  * A small helper to get the size information of computed (serialized) call graphs.
@@ -18,6 +15,9 @@ object CallGraphSize {
      *      args[0] must be either a path to a serialized call graph or the path to the result
      *      directory. The stucture of the directory case must be the following:
      *      resultDir/target/framework/algorithm/\*.json or a directory with the .json files in it.
+     *      Call graphs in the [[JsonLinesCallGraphFormat]] (\*.jsonl) and the
+     *      [[BinaryCallGraphFormat]] (\*.cgb) are supported as well, also if they are compressed
+     *      (\*.gz, see [[BlockCompression]]).
      */
     def main(args: Array[String]): Unit = {
         val i = new File(args(0))
@@ -33,38 +33,43 @@ object CallGraphSize {
                 framework ← target.listFiles(_.isDirectory)
                 algo ← framework.listFiles(_.isDirectory)
                 callgraph = s"${framework.getName} ${algo.getName}"
-                file ← algo.listFiles(_.getName.endsWith(".json"))
+                file ← algo.listFiles(isCallGraphFile(_))
             } {
                 printStatistic(file, pgkPrefixes, callgraph)
             }
 
             // for all .json files in the given directory
-            for (file ← i.listFiles(_.getName.endsWith(".json"))) {
+            for (file ← i.listFiles(isCallGraphFile(_))) {
                 printStatistic(file, pgkPrefixes)
             }
         } else {
             // for a given .json file
-            assert(i.getName.endsWith(".json"))
+            assert(isCallGraphFile(i))
             printStatistic(i, pgkPrefixes)
         }
     }
 
-    def printStatistic(jsFile: File, appPackages: List[String], callGraphName : String = ""): Unit = {
-        val reachableMethods = Json.parse(new FileInputStream(jsFile)).validate[ReachableMethods].get.reachableMethods
-
-        val appMethods = reachableMethods.count { rm =>
-            val declClass = rm.method.declaringClass
-            appPackages.exists { pkg =>
-                declClass.startsWith(s"L$pkg")
-            }
-        }
+    private def isCallGraphFile(file: File): Boolean = {
+        val name = BlockCompression.uncompressedName(file.getName)
+        name.endsWith(".json") ||
+            name.endsWith(JsonLinesCallGraphFormat.FileExtension) ||
+            name.endsWith(BinaryCallGraphFormat.FileExtension) ||
+            name.endsWith(CallGraphStore.ManifestExtension)
+    }
 
-        val edgeCount = reachableMethods.foldLeft(0){ (acc, rm) =>
-            acc + rm.callSites.foldLeft(0)((acc,cs) => acc + cs.targets.size)
+    def printStatistic(jsFile: File, appPackages: List[String], callGraphName : String = ""): Unit = {
+        val (methodCount, appMethods, edgeCount) = CallGraphReader.foldLeft(CallGraphSnapshotCache.resolve(jsFile))((0, 0, 0L)) {
+            case ((methods, appMethods, edges), rm) =>
+                val declClass = rm.method.declaringClass
+                val isAppMethod = appPackages.exists { pkg =>
+                    declClass.startsWith(s"L$pkg")
+                }
+                val callSiteEdges = rm.callSites.foldLeft(0)((acc, cs) => acc + cs.targets.size)
+                (methods + 1, if (isAppMethod) appMethods + 1 else appMethods, edges + callSiteEdges)
         }
 
         val outputName = if(callGraphName.isEmpty) jsFile.getName else callGraphName
 
-        println(s"$outputName - ${reachableMethods.size} reachable methods - $edgeCount call graph edges [application methods: $appMethods]")
+        println(s"$outputName - $methodCount reachable methods - $edgeCount call graph edges [application methods: $appMethods]")
     }
 }
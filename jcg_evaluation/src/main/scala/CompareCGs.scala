@@ -1,10 +1,9 @@
-import java.io.FileInputStream
+import java.io.Closeable
+import java.io.File
 import java.util
 
-import play.api.libs.json.Json
-
-import scala.collection.mutable
 import scala.collection.JavaConverters._
+import scala.collection.mutable.ArrayBuffer
 import java.util.{HashSet => JHashSet}
 
 
@@ -29,6 +28,8 @@ object CompareCGs {
 
         var inPackage = ""
 
+        var external = false
+
 
 
         args.sliding(2, 2).toList.collect {
@@ -52,26 +53,45 @@ object CompareCGs {
                 maxFindings = max.toInt
             case Array("--inPackage", pkg) ⇒
                 inPackage = pkg
+            case Array("--external", ext) ⇒
+                external = ext == "t"
+        }
+
+        if (external) {
+            compareExternally(
+                new File(cg1Path), new File(cg2Path), appPackages, showBoundaries, showCommon,
+                showReachable, showAdditional, maxFindings, inPackage
+            )
+            return;
         }
 
-        val cg1 = Json.parse(new FileInputStream(cg1Path)).validate[ReachableMethods].get.toMap
-        val cg2 = Json.parse(new FileInputStream(cg2Path)).validate[ReachableMethods].get.toMap
+        // both call graphs share their methods, which are hence compared by reference
+        val interner = new MethodInterner
+        // json call graphs are read from their (cached) binary snapshots
+        val cg1File = CallGraphSnapshotCache.resolve(new File(cg1Path))
+        val cg2File = CallGraphSnapshotCache.resolve(new File(cg2Path))
+        // the stored hashes are located next to the original call graphs
+        val merkle1 = MerkleCallGraph.load(new File(cg1Path), interner)
+        val merkle2 = MerkleCallGraph.load(new File(cg2Path), interner)
+        // the call sites are only required to compute the boundaries
+        lazy val cg1 = CallGraphReader.toMap(cg1File, interner)
+        lazy val cg2 = CallGraphReader.toMap(cg2File, interner)
 
         if (showAdditional) {
-            val additionalReachableMethods1 = extractAdditionalMethods(cg1, cg2).toSeq.sortBy(_.declaringClass).take(maxFindings)
-            val additionalReachableMethods2 = extractAdditionalMethods(cg2, cg1).toSeq.sortBy(_.declaringClass).take(maxFindings)
+            val diff = merkle1.diff(merkle2)
+            val additionalReachableMethods1 = diff.onlyInFirst.toSeq.sortBy(_.declaringClass).take(maxFindings)
+            val additionalReachableMethods2 = diff.onlyInSecond.toSeq.sortBy(_.declaringClass).take(maxFindings)
 
             println(additionalReachableMethods1.mkString(" ##### Additional Methods - Input 1 #####\n\n\t", "\n\t", "\n\n"))
             println(additionalReachableMethods2.mkString(" ##### Additional Methods - Input 2 #####\n\n\t", "\n\t", "\n\n"))
         }
 
         val commonReachableMethods : java.util.HashSet[Method] = if (showCommon || showBoundaries) {
-            val cg1Keys = cg1.keySet.iterator
-            val cg2Keys = cg2.keySet
+            val cg1Keys = merkle1.methods
             val common = new java.util.HashSet[Method]()
             while(cg1Keys.hasNext) {
                 val m1 = cg1Keys.next()
-                if(cg2.contains(m1))
+                if(merkle2.method(m1).isDefined)
                     common add m1
             }
             common
@@ -83,8 +103,8 @@ object CompareCGs {
         }
 
         if (showReachable) {
-            val reachableInApp1 = extractReachableApplicationMethods(appPackages, cg1).toSeq.sortBy(_.declaringClass).take(maxFindings)
-            val reachableInApp2 = extractReachableApplicationMethods(appPackages, cg2).toSeq.sortBy(_.declaringClass).take(maxFindings)
+            val reachableInApp1 = extractReachableApplicationMethods(appPackages, merkle1).toSeq.sortBy(_.declaringClass).take(maxFindings)
+            val reachableInApp2 = extractReachableApplicationMethods(appPackages, merkle2).toSeq.sortBy(_.declaringClass).take(maxFindings)
 
             println(reachableInApp1.mkString(" ##### Reachable Application Methods - Input 1 #####\n\n\t", "\n\t", "\n\n"))
             println(reachableInApp2.mkString(" ##### Reachable Application Methods - Input 2 #####\n\n\t", "\n\t", "\n\n"))
@@ -92,31 +112,27 @@ object CompareCGs {
         }
 
         if (showBoundaries) {
-            val boundaries1 = extractBoundaries(cg1, commonReachableMethods, inPackage).asScala.toSeq.sortBy(_.m.declaringClass).take(maxFindings)
-            val boundaries2 = extractBoundaries(cg2, commonReachableMethods, inPackage).asScala.toSeq.sortBy(_.m.declaringClass).take(maxFindings)
+            val boundaries1 = extractBoundaries(cg1, IndexedCallGraph(cg1), commonReachableMethods, inPackage).asScala.toSeq.sortBy(_.m.declaringClass).take(maxFindings)
+            val boundaries2 = extractBoundaries(cg2, IndexedCallGraph(cg2), commonReachableMethods, inPackage).asScala.toSeq.sortBy(_.m.declaringClass).take(maxFindings)
 
             println(boundaries1.mkString(" ##### Boundary Methods - Input 1 #####\n\n\t", "\n\t", "\n\n"))
             println(boundaries2.mkString(" ##### Boundary Methods - Input 2 #####\n\n\t", "\n\t", "\n\n"))
         }
     }
 
-    private def extractAdditionalMethods(
-        baseCG: Map[Method, Set[CallSite]], comparedTo: Map[Method, Set[CallSite]]
-    ): Set[Method] = {
-        baseCG.keySet.filter(!comparedTo.contains(_))
-//        baseCG.filter(m ⇒ !comparedTo.contains(m.._1)).keySet
-    }
-
     private def extractReachableApplicationMethods(
-        appPackages: List[String], cg: Map[Method, Set[CallSite]]
+        appPackages: List[String], cg: MerkleCallGraph
     ): Set[Method] = {
-        cg.filter(rm ⇒ appPackages.iterator.exists(p ⇒ rm._1.declaringClass.startsWith(s"L$p/"))).keySet
+        cg.methods.filter(m ⇒ appPackages.iterator.exists(p ⇒ m.declaringClass.startsWith(s"L$p/"))).toSet
     }
 
     case class MethodBoundary(m: Method, target: String)
 
     private def extractBoundaries(
-        cg: Map[Method, Set[CallSite]], commonReachableMethods: JHashSet[Method], inPackage: String
+        cg:                     Map[Method, Set[CallSite]],
+        indexedCG:              IndexedCallGraph,
+        commonReachableMethods: JHashSet[Method],
+        inPackage:              String
     ): JHashSet[MethodBoundary] = {
         val boundaries = new JHashSet[MethodBoundary]()
 
@@ -129,7 +145,7 @@ object CompareCGs {
                     val differences = new StringBuilder("\n\t\t")
                     callees.iterator.foreach { callee =>
                         if(!commonReachableMethods.contains(callee)) {
-                            differences.append(s"${transitiveHull(callee, cg, commonReachableMethods)}: $callee\n\t\t")
+                            differences.append(s"${transitiveHull(callee, indexedCG, commonReachableMethods)}: $callee\n\t\t")
                         }
                     }
                     boundaries.add(MethodBoundary(caller, differences.result()))
@@ -151,29 +167,189 @@ object CompareCGs {
 //        }
     }
 
-    private def transitiveHull(method: Method, cg: Map[Method, Set[CallSite]], commonReachableMethods: JHashSet[Method]): (Int, Int) = {
-        val reachableMethods = new java.util.HashSet[Method]()
-        reachableMethods add method
-        val nonCommon = new java.util.HashSet[Method]()
-        nonCommon add method
-
-        var worklist: mutable.Queue[Method] = mutable.Queue(method)
-
-        while (worklist.nonEmpty) {
-            val currentMethod = worklist.head
-            worklist = worklist.tail
-            for {
-                cs ← cg(currentMethod)
-                t ← cs.targets
-            } {
-                if (!reachableMethods.contains(t)) {
-                    if (!commonReachableMethods.contains(t))
-                        nonCommon add t
-                    reachableMethods add t
-                    worklist enqueue t
+    /**
+     * Compares the call graphs with bounded heap usage: the (distinct) methods and call edges of
+     * both call graphs are sorted externally (see [[ExternalSorter]]) by their canonical
+     * [[encode encoding]] and then merge-joined in sequential passes. The output equals the
+     * in-memory comparison, except that boundaries do not report the transitive hull of the
+     * callees, which requires random access to the call graphs.
+     */
+    private def compareExternally(
+        cg1:            File,
+        cg2:            File,
+        appPackages:    List[String],
+        showBoundaries: Boolean,
+        showCommon:     Boolean,
+        showReachable:  Boolean,
+        showAdditional: Boolean,
+        maxFindings:    Int,
+        inPackage:      String
+    ): Unit = {
+        val sorters = ArrayBuffer.empty[ExternalSorter]
+        def newSorter(): ExternalSorter = { val sorter = new ExternalSorter(); sorters += sorter; sorter }
+
+        // edges are sorted by callee: callee \u0000 caller
+        def sortGraph(cg: File): (ExternalSorter, ExternalSorter) = {
+            val methods = newSorter()
+            val edges = newSorter()
+            CallGraphReader.foreach(cg, MethodInterner.Disabled) { rm ⇒
+                val caller = encode(rm.method)
+                methods += caller
+                if (showBoundaries)
+                    for (cs ← rm.callSites; tgt ← cs.targets) edges += s"${encode(tgt)}\u0000$caller"
+            }
+            (methods, edges)
+        }
+
+        try {
+            val (methods1, edges1) = sortGraph(cg1)
+            val (methods2, edges2) = sortGraph(cg2)
+
+            val additional1 = ArrayBuffer.empty[Method]
+            val additional2 = ArrayBuffer.empty[Method]
+            val common = newSorter()
+            mergeJoin(methods1.sorted(distinct = true), methods2.sorted(distinct = true)) {
+                case (Some(m), None) ⇒ if (additional1.size < maxFindings) additional1 += decode(m)
+                case (None, Some(m)) ⇒ if (additional2.size < maxFindings) additional2 += decode(m)
+                case (Some(m), _)    ⇒ common += m
+                case _               ⇒
+            }
+
+            if (showAdditional) {
+                println(additional1.mkString(" ##### Additional Methods - Input 1 #####\n\n\t", "\n\t", "\n\n"))
+                println(additional2.mkString(" ##### Additional Methods - Input 2 #####\n\n\t", "\n\t", "\n\n"))
+            }
+
+            if (showCommon) {
+                val commonMethods = firstFindings(common.sorted(), maxFindings)(Some(_))
+                println(commonMethods.mkString(" ##### Common Methods #####\n\n\t", "\n\t", "\n\n"))
+            }
+
+            if (showReachable) {
+                def isApplicationMethod(m: String) = appPackages.exists(p ⇒ m.startsWith(s"L$p/"))
+                val reachableInApp1 = firstFindings(methods1.sorted(distinct = true), maxFindings) { m ⇒
+                    if (isApplicationMethod(m)) Some(m) else None
+                }
+                val reachableInApp2 = firstFindings(methods2.sorted(distinct = true), maxFindings) { m ⇒
+                    if (isApplicationMethod(m)) Some(m) else None
                 }
+
+                println(reachableInApp1.mkString(" ##### Reachable Application Methods - Input 1 #####\n\n\t", "\n\t", "\n\n"))
+                println(reachableInApp2.mkString(" ##### Reachable Application Methods - Input 2 #####\n\n\t", "\n\t", "\n\n"))
             }
+
+            if (showBoundaries) {
+                def boundaries(edges: ExternalSorter): Seq[MethodBoundary] = {
+                    // the edges to callees that are not common, sorted by caller: caller \u0000 callee
+                    val nonCommonEdges = newSorter()
+                    val sortedCommon = common.sorted()
+                    val commonMethods = sortedCommon.buffered
+                    val it = edges.sorted(distinct = true)
+                    try {
+                        for (edge ← it) {
+                            val callee = edge.substring(0, edge.indexOf('\u0000'))
+                            while (commonMethods.hasNext && commonMethods.head < callee) commonMethods.next()
+                            if (!commonMethods.hasNext || commonMethods.head != callee)
+                                nonCommonEdges += s"${edge.substring(callee.length + 1)}\u0000$callee"
+                        }
+                    } finally {
+                        it.close()
+                        sortedCommon.close()
+                    }
+
+                    val result = ArrayBuffer.empty[MethodBoundary]
+                    val sortedCallers = common.sorted()
+                    val sortedEdges = nonCommonEdges.sorted()
+                    val commonCallers = sortedCallers.buffered
+                    val callerEdges = sortedEdges.buffered
+                    try {
+                        while (callerEdges.hasNext && result.size < maxFindings) {
+                            val caller = callerEdges.head.substring(0, callerEdges.head.indexOf('\u0000'))
+                            val differences = new StringBuilder("\n\t\t")
+                            while (callerEdges.hasNext && callerEdges.head.startsWith(s"${caller}\u0000")) {
+                                val callee = callerEdges.next().substring(caller.length + 1)
+                                differences.append(s"${decode(callee)}\n\t\t")
+                            }
+                            while (commonCallers.hasNext && commonCallers.head < caller) commonCallers.next()
+                            if (commonCallers.hasNext && commonCallers.head == caller && caller.startsWith(inPackage))
+                                result += MethodBoundary(decode(caller), differences.result())
+                        }
+                    } finally {
+                        sortedCallers.close()
+                        sortedEdges.close()
+                    }
+                    result
+                }
+
+                println(boundaries(edges1).mkString(" ##### Boundary Methods - Input 1 #####\n\n\t", "\n\t", "\n\n"))
+                println(boundaries(edges2).mkString(" ##### Boundary Methods - Input 2 #####\n\n\t", "\n\t", "\n\n"))
+            }
+        } finally {
+            sorters.foreach(_.close())
+        }
+    }
+
+    /**
+     * Joins two sorted, distinct sequences of records; `f` is called with both records if they
+     * are equal and with the record of either side otherwise.
+     */
+    private def mergeJoin(
+        records1: Iterator[String] with Closeable, records2: Iterator[String] with Closeable
+    )(f: (Option[String], Option[String]) ⇒ Unit): Unit = {
+        try {
+            val it1 = records1.buffered
+            val it2 = records2.buffered
+            while (it1.hasNext || it2.hasNext) {
+                val cmp =
+                    if (!it1.hasNext) 1
+                    else if (!it2.hasNext) -1
+                    else it1.head.compareTo(it2.head)
+                if (cmp < 0) f(Some(it1.next()), None)
+                else if (cmp > 0) f(None, Some(it2.next()))
+                else f(Some(it1.next()), Some(it2.next()))
+            }
+        } finally {
+            records1.close()
+            records2.close()
+        }
+    }
+
+    private def firstFindings(
+        records: Iterator[String] with Closeable, maxFindings: Int
+    )(filter: String ⇒ Option[String]): Seq[Method] = {
+        try {
+            records.flatMap(filter(_)).take(maxFindings).map(decode).toList
+        } finally {
+            records.close()
+        }
+    }
+
+    /**
+     * Encodes a method such that the encodings are ordered by the declaring class first and can be
+     * decoded again; the components are separated by `\u0001`.
+     */
+    private def encode(method: Method): String = {
+        (method.declaringClass :: method.name :: method.returnType :: method.parameterTypes).mkString("\u0001")
+    }
+
+    private def decode(method: String): Method = {
+        val components = method.split("\u0001", -1)
+        Method(components(1), components(0), components(2), components.drop(3).toList)
+    }
+
+    /**
+     * Computes the number of methods that are transitively reachable from `method` and how many of
+     * them are not reachable in both call graphs.
+     */
+    private def transitiveHull(method: Method, cg: IndexedCallGraph, commonReachableMethods: JHashSet[Method]): (Int, Int) = {
+        val reachableMethods = cg.reachableFrom(cg.id(method))
+        var nonCommon = 0
+        var id = reachableMethods.nextSetBit(0)
+        while (id >= 0) {
+            if (!commonReachableMethods.contains(cg.method(id)))
+                nonCommon += 1
+            id = reachableMethods.nextSetBit(id + 1)
         }
-        (reachableMethods.size, nonCommon.size)
+        (reachableMethods.cardinality(), nonCommon)
     }
 }
@@ -1,7 +1,5 @@
 
-import java.io.FileInputStream
-
-import play.api.libs.json.Json
+import java.io.File
 
 /**
  * @author Michael Reif
@@ -32,10 +30,11 @@ object CompareCallSites {
                 sizeGap = gap.toInt
         }
 
-        val cg1 = Json.parse(new FileInputStream(cg1Path)).validate[ReachableMethods].get.toMap
-        val cg2 = Json.parse(new FileInputStream(cg2Path)).validate[ReachableMethods].get.toMap
+        // json call graphs are read from their (cached) binary snapshots
+        val cg1File = CallGraphSnapshotCache.resolve(new File(cg1Path))
+        val cg2File = CallGraphSnapshotCache.resolve(new File(cg2Path))
 
-        val commonReachableMethods = cg1.filter(m ⇒ cg2.contains(m._1)).keySet
+        val hasFilter = methodName.nonEmpty || declaringClassName.nonEmpty
 
         val methodFilter = (methodName, declaringClassName) match {
             case ("", "") => (m: Method) => true
@@ -44,6 +43,28 @@ object CompareCallSites {
             case _ => (m: Method) => m.name == methodName && m.declaringClass == declaringClassName
         }
 
+        // both call graphs share their methods, which are hence compared by reference
+        val interner = new MethodInterner
+        val (cg1, cg2) =
+            if (hasFilter && IndexedCallGraphFile.isIndexedCallGraph(cg1File) &&
+                IndexedCallGraphFile.isIndexedCallGraph(cg2File)) {
+                // only load the methods of interest from the indexed call graphs
+                (findInIndex(cg1File, methodName, declaringClassName, interner),
+                    findInIndex(cg2File, methodName, declaringClassName, interner))
+            } else if (sizeGap > 0) {
+                // methods with equal call sites are never reported, hence, only the methods whose
+                // hashes differ are loaded; the stored hashes are located next to the original
+                // call graphs
+                val diff = MerkleCallGraph.load(new File(cg1Path), interner).diff(
+                    MerkleCallGraph.load(new File(cg2Path), interner)
+                )
+                val changed = diff.changed.filter(methodFilter)
+                (readMethods(cg1File, changed, interner), readMethods(cg2File, changed, interner))
+            } else {
+                (CallGraphReader.toMap(cg1File, interner), CallGraphReader.toMap(cg2File, interner))
+            }
+
+        val commonReachableMethods = cg1.filter(m ⇒ cg2.contains(m._1)).keySet
 
         for {
             m <- commonReachableMethods.filter(methodFilter)
@@ -64,6 +85,53 @@ object CompareCallSites {
         }
     }
 
+    private def findInIndex(
+        indexedCallGraph:   File,
+        methodName:         String,
+        declaringClassName: String,
+        interner:           MethodInterner
+    ): Map[Method, Set[CallSite]] = {
+        val index = new IndexedCallGraphFile(indexedCallGraph, interner)
+        try {
+            val name = if (methodName.isEmpty) None else Some(methodName)
+            val reachableMethods =
+                if (declaringClassName.isEmpty) index.findByName(methodName)
+                else index.find(declaringClassName, name)
+            reachableMethods.foldLeft(Map.empty[Method, Set[CallSite]]) { (map, rm) =>
+                map.updated(rm.method, map.getOrElse(rm.method, Set.empty[CallSite]) ++ rm.callSites)
+            }
+        } finally {
+            index.close()
+        }
+    }
+
+    /**
+     * Retrieves the call sites of the given methods only.
+     */
+    private def readMethods(
+        serializedCallGraph: File,
+        methods:             Set[Method],
+        interner:            MethodInterner
+    ): Map[Method, Set[CallSite]] = {
+        if (methods.isEmpty)
+            Map.empty
+        else if (IndexedCallGraphFile.isIndexedCallGraph(serializedCallGraph)) {
+            val index = new IndexedCallGraphFile(serializedCallGraph, interner)
+            try {
+                methods.iterator.flatMap(m ⇒ index.callSites(m).map(m → _)).toMap
+            } finally {
+                index.close()
+            }
+        } else {
+            CallGraphReader.foldLeft(serializedCallGraph, interner)(Map.empty[Method, Set[CallSite]]) { (map, rm) =>
+                if (methods.contains(rm.method))
+                    map.updated(rm.method, map.getOrElse(rm.method, Set.empty[CallSite]) ++ rm.callSites)
+                else
+                    map
+            }
+        }
+    }
+
     def printDiff(method: Method, cg1targets: Set[Method], cg2targets: Set[Method]) : Unit = {
 
         val resultInput1 = cg1targets.filter(!cg2targets.contains(_))
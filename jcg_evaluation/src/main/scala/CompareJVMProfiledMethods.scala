@@ -1,6 +1,5 @@
-import java.io.FileInputStream
+import java.io.File
 
-import play.api.libs.json.Json
 /**
  *
  * @author Michael Reif
@@ -20,7 +19,7 @@ object CompareJVMProfiledMethods {
                 profile = cg
         }
 
-        val reachableMethods = parseCallGraph(callGraphFile).keySet
+        val reachableMethods = CallGraphReader.reachableMethods(new File(callGraphFile))
         val profiledMethods = parseProfileMethods(profile)
         val numProfiledMethods = profiledMethods.size
 
@@ -39,10 +38,6 @@ object CompareJVMProfiledMethods {
         println(s"\n\n ${numProfiledMethods - unreachable.size} of $numProfiledMethods all methods are reachable")
     }
 
-    private def parseCallGraph(callGraphFile: String) = {
-        Json.parse(new FileInputStream(callGraphFile)).validate[ReachableMethods].get.toMap
-    }
-
     private def parseProfileMethods(profile: String): List[Method] = {
         var data : List[Method] = List.empty
         val bufferedSource = scala.io.Source.fromFile(profile)
@@ -1,6 +1,5 @@
-import java.io.FileInputStream
+import java.io.File
 
-import play.api.libs.json.Json
 /**
  *
  * @author Michael Reif
@@ -44,7 +43,7 @@ object CompareToTamiflex {
             println("1. processing call graph")
         }
 
-        val reachableMethods = parseCallGraph(callGraphFile).keySet.filter(tf)
+        val reachableMethods = CallGraphReader.reachableMethods(CallGraphSnapshotCache.resolve(new File(callGraphFile))).filter(tf)
 
         if(debug) {
             println("2. processing tamiflex results")
@@ -73,10 +72,6 @@ object CompareToTamiflex {
         println(s"\n\n$i of ${tamiflexResults.size} all methods are reachable")
     }
 
-    private def parseCallGraph(callGraphFile: String) = {
-        Json.parse(new FileInputStream(callGraphFile)).validate[ReachableMethods].get.toMap
-    }
-
     def extractMethod(targetInfo: String, reflectionType: String) : Method = {
         import MethodFactory.convertTypeToJVMNotation
 
@@ -1,10 +1,13 @@
 import java.io.File
-import java.io.FileInputStream
 import java.io.PrintWriter
+import java.nio.file.Files
 
+import scala.collection.JavaConverters._
 import scala.io.Source
 
 import org.opalj.br.MethodDescriptor
+import play.api.libs.json.JsObject
+import play.api.libs.json.JsString
 import play.api.libs.json.Json
 
 object Evaluation {
@@ -14,9 +17,17 @@ object Evaluation {
     private var excludeJDK = false
     private var runAnalyses = true
     private var allQueries = false
+    private var writeIndex = false
+    private var writeHashes = false
+    private var writeJDKComponent = false
+    private var normalizeInputs = false
+    private var discardCallGraph = false
 
     private var FINGERPRINT_DIR = ""
 
+    private final val Completed = "completed"
+    private final val Failed = "failed"
+
     def main(args: Array[String]): Unit = {
 
         //val c = parseConfig(args)
@@ -54,12 +65,20 @@ object Evaluation {
             case Array("--project-specific") ⇒ projectSpecificEvaluation = true
             case Array("--exclude-jdk")      ⇒ excludeJDK = true
             case Array("--all-queries")      ⇒ allQueries = true
+            case Array("--index")            ⇒ writeIndex = true
+            case Array("--hashes")           ⇒ writeHashes = true
+            case Array("--jdk-component")    ⇒ writeJDKComponent = true
+            case Array("--normalize")        ⇒ normalizeInputs = true
+            case Array("--discard-cg")       ⇒ discardCallGraph = true
         }
         args.sliding(2, 1).toList.collect {
             case Array("--fingerprint-dir", dir) ⇒
                 assert(FINGERPRINT_DIR.isEmpty, "multiple fingerprint directories specified")
                 FINGERPRINT_DIR = dir
             case Array("--analyze", value: String) ⇒ runAnalyses = value.toBoolean
+            case Array("--offline-repo", dir) ⇒
+                // resolve the maven class path entries exclusively against a local repository
+                System.setProperty(MavenResolver.OfflineRepositoryProperty, dir)
         }
 
         if (projectSpecificEvaluation) {
@@ -67,6 +86,17 @@ object Evaluation {
             assert(FINGERPRINT_DIR.nonEmpty, "no fingerprint directory specified")
         }
 
+        if (writeJDKComponent) {
+            assert(!excludeJDK, "`--jdk-component` requires the JDK to be analyzed")
+        }
+
+        if (discardCallGraph) {
+            assert(
+                !writeIndex && !writeHashes && !writeJDKComponent,
+                "`--discard-cg` cannot be combined with `--index`, `--hashes` or `--jdk-component`"
+            )
+        }
+
         if (runHermes) {
             assert(FINGERPRINT_DIR.nonEmpty || allQueries, "hermes requires the fingerprints or `--all-queries` must be set")
         }
@@ -108,17 +138,22 @@ object Evaluation {
         locationsMap: Map[String, Map[String, Set[Method]]],
         config:       CommonEvaluationConfig
     ): Unit = {
-        val projectSpecFiles = projectsDir.listFiles { (_, name) ⇒
-            name.endsWith(".conf") && name.startsWith(config.PROJECT_PREFIX_FILTER)
-        }.sorted
+        val catalog = ProjectCatalog.load(projectsDir, config.PROJECT_PREFIX_FILTER)
+
+        // all runs share a single store, such that their common records are stored only once
+        if (config.SERIALIZATION_FILE_NAME.endsWith(CallGraphStore.ManifestExtension))
+            new File(resultsDir, CallGraphStore.DirectoryName).mkdirs()
 
-        for {
+        // the projects of an adapter share the JDK related state of its framework
+        val sessions = new AdapterSessions(!excludeJDK, config.getAdapterOptions)
+
+        try for {
             adapter ← config.EVALUATION_ADAPTERS
             cgAlgo ← adapter.possibleAlgorithms().filter(_.startsWith(config.ALGORITHM_PREFIX_FILTER))
-            psf ← projectSpecFiles
+            project ← catalog.projects
         } {
 
-            val projectSpec = Json.parse(new FileInputStream(psf)).validate[ProjectSpecification].get
+            val projectSpec = project.spec
 
             println(s"running ${adapter.frameworkName()} $cgAlgo against ${projectSpec.name}")
 
@@ -131,38 +166,148 @@ object Evaluation {
             if(cgFile.exists())
                 cgFile.delete()
 
-            val elapsed = try {
-                adapter.serializeCG(
+            // without a call graph file, the call graph is only kept in memory if it is evaluated
+            val sink =
+                if (!discardCallGraph) CallGraphSink.toFile(cgFile)
+                else if (projectSpecificEvaluation) new IndexedCallGraphSink
+                else CallGraphSink.Discard
+
+            val report = new AnalysisReport
+            val outcome = try {
+                // all adapters analyze the same flattened and deduplicated classes; projects whose
+                // input cannot be normalized (e.g., corrupt archives) fail like failing analyses
+                val (target, classPath) =
+                    if (normalizeInputs) {
+                        val input = NormalizedInput(catalog, project)
+                        (input.target.getPath, input.classPath.map(_.getPath))
+                    } else
+                        (project.target.getPath, project.classPathPaths)
+
+                sessions(adapter, jreLocations(projectSpec.java)).serializeCG(
                     cgAlgo,
-                    projectSpec.target(projectsDir).getCanonicalPath,
+                    target,
                     projectSpec.main.orNull,
-                    projectSpec.allClassPathEntryPaths(projectsDir),
-                    jreLocations(projectSpec.java),
-                    !excludeJDK,
-                    cgFile.getPath
+                    classPath,
+                    sink,
+                    config.newBudget(),
+                    report
                 )
+                Completed
             } catch {
+                case e: BudgetExceededException ⇒
+                    println(s"aborted project ${projectSpec.name}: ${e.getMessage}")
+                    e.getReason.key
+                case _: OutOfMemoryError ⇒
+                    println(s"out of memory in project ${projectSpec.name}")
+                    sessions.close()
+                    BudgetExceededException.Reason.OUT_OF_MEMORY.key
                 case e: Throwable ⇒
                     println(s"exception in project ${projectSpec.name}")
                     if (config.DEBUG) {
                         e.printStackTrace()
                     }
-                    -1
+                    Failed
+            }
+            val succeeded = outcome == Completed
+
+            // the call graph of an aborted analysis is incomplete
+            if (!succeeded) {
+                sink.abort()
+                if (cgFile.exists())
+                    cgFile.delete()
             }
 
             System.gc()
 
-            reportTiming(outDir, elapsed)
+            val indexFile = new File(outDir, s"cg${IndexedCallGraphFile.FileExtension}")
+            if (writeIndex && cgFile.exists()) {
+                IndexedCallGraphFile.write(cgFile, indexFile)
+            }
+
+            if (writeHashes && cgFile.exists()) {
+                MerkleCallGraph.build(cgFile).write(MerkleCallGraph.hashFile(cgFile))
+            }
+
+            reportTiming(outDir, if (succeeded) report.getAnalysisTime else -1)
+            writeReport(outDir, adapter, cgAlgo, projectSpec, config.getAdapterOptions(adapter), report, outcome)
 
             if (projectSpecificEvaluation) {
-                assert(cgFile.exists(), "the adapter failed to write the call graph")
+                val reachableMethods = sink match {
+                    case indexed: IndexedCallGraphSink ⇒
+                        assert(indexed.isComplete, "the adapter failed to construct the call graph")
+                        indexed.callGraph.reachableMethods.toSet
+                    case _ ⇒
+                        assert(cgFile.exists(), "the adapter failed to write the call graph")
+                        CallGraphReader.reachableMethods(cgFile)
+                }
                 performProjectSpecificEvaluation(
-                    projectSpec, adapter, cgAlgo, locationsMap, outDir, cgFile
+                    projectSpec, adapter, cgAlgo, locationsMap, outDir, reachableMethods
                 )
             }
+
+            // only the per-project application component is kept, the JDK component is shared
+            // by all projects with the same framework, algorithm and JRE version
+            if (writeJDKComponent && cgFile.exists()) {
+                val extension = config.SERIALIZATION_FILE_NAME.stripPrefix("cg")
+                val componentDir = new File(
+                    resultsDir, s"components/${adapter.frameworkName()}/$cgAlgo/jre${projectSpec.java}"
+                )
+                componentDir.mkdirs()
+                val jdkComponent = new File(componentDir, s"jdk$extension")
+                val appComponent = new File(outDir, s"app$extension")
+                // the call graph (and its index and hashes) is only replaced by the components if
+                // linking them reproduces it exactly
+                if (PartialCallGraph.split(cgFile, PartialCallGraph.isJDKMethod, jdkComponent, appComponent) &&
+                    CallGraphLinker.reproduces(Seq(jdkComponent, appComponent), cgFile)) {
+                    indexFile.delete()
+                    MerkleCallGraph.hashFile(cgFile).delete()
+                    cgFile.delete()
+                } else {
+                    println(s"the JDK part of the call graph of ${projectSpec.name} depends on the project")
+                    appComponent.delete()
+                    PartialCallGraph.boundaryFile(appComponent).delete()
+                }
+            }
+        } finally {
+            sessions.close()
         }
     }
 
+    /**
+     * Writes the (phased) analysis report as timings.json; durations are given in nanoseconds and
+     * heap sizes in bytes. The outcome is either [[Completed]], [[Failed]] or the reason why the
+     * analysis has been aborted (see [[BudgetExceededException.Reason.key]]).
+     */
+    private def writeReport(
+        outDir:      File,
+        adapter:     JCGTestAdapter,
+        cgAlgo:      String,
+        projectSpec: ProjectSpecification,
+        options:     AdapterOptions,
+        report:      AnalysisReport,
+        outcome:     String
+    ): Unit = {
+        val phases = AnalysisReport.Phase.values().filter(report.isRecorded).map { phase ⇒
+            phase.key → Json.obj(
+                "duration" → report.getDuration(phase),
+                "usedHeap" → report.getUsedHeap(phase)
+            )
+        }
+        val json = Json.obj(
+            "framework" → adapter.frameworkName(),
+            "algorithm" → cgAlgo,
+            "project" → projectSpec.name,
+            "options" → JsObject(options.effectiveValues(adapter).asScala.mapValues(v ⇒ JsString(v.toString)).toSeq),
+            "succeeded" → (outcome == Completed),
+            "outcome" → outcome,
+            "analysisTime" → report.getAnalysisTime,
+            "phases" → JsObject(phases),
+            "reachableMethods" → report.getReachableMethods,
+            "edges" → report.getEdges
+        )
+        Files.write(new File(outDir, "timings.json").toPath, Json.toBytes(json))
+    }
+
     private def reportTiming(outDir: File, elapsed: Long): Unit = {
         val seconds = elapsed / 1000000000d
         val pw = new PrintWriter(new File(outDir, "timings.txt"))
@@ -172,19 +317,18 @@ object Evaluation {
     }
 
     private def performProjectSpecificEvaluation(
-        projectSpec:  ProjectSpecification,
-        adapter:      JCGTestAdapter,
-        algorithm:    String,
-        locationsMap: Map[String, Map[String, Set[Method]]],
-        outDir:       File,
-        jsFile:       File
+        projectSpec:      ProjectSpecification,
+        adapter:          JCGTestAdapter,
+        algorithm:        String,
+        locationsMap:     Map[String, Map[String, Set[Method]]],
+        outDir:           File,
+        reachableMethods: Set[Method]
     ): Unit = {
         val fingerprint = FingerprintExtractor.parseFingerprints(adapter, algorithm, new File(FINGERPRINT_DIR))
         val locations = locationsMap(projectSpec.name)
-        val reachableMethods = Json.parse(new FileInputStream(jsFile)).validate[ReachableMethods].get.toMap
 
         val projectSpecificLocations = ProjectSpecificEvaluator.projectSpecificEvaluation(
-            reachableMethods.keySet, locations, fingerprint
+            reachableMethods, locations, fingerprint
         )
 
         val pw = new PrintWriter(new File(outDir, "pse.tsv"))
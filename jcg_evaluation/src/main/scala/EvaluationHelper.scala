@@ -1,5 +1,7 @@
 import java.io.File
 
+import scala.collection.JavaConverters._
+
 // todo make a factory
 class CommonEvaluationConfig(
         val DEBUG:                   Boolean,
@@ -7,11 +9,23 @@ class CommonEvaluationConfig(
         val OUTPUT_DIR_PATH:         String,
         val EVALUATION_ADAPTERS:     List[JCGTestAdapter],
         val PROJECT_PREFIX_FILTER:   String,
-        val ALGORITHM_PREFIX_FILTER: String
+        val ALGORITHM_PREFIX_FILTER: String,
+        val SERIALIZATION_FILE_NAME: String,
+        val ADAPTER_OPTIONS:         Map[String, Map[String, String]] = Map.empty,
+        val TIMEOUT_SECONDS:         Long                             = 0,
+        val MAX_HEAP_BYTES:          Long                             = 0
 ) {
 
     val JRE_LOCATIONS_FILE = "jre.conf"
-    val SERIALIZATION_FILE_NAME = "cg.json"
+
+    def getAdapterOptions(adapter: JCGTestAdapter): AdapterOptions = {
+        CommonEvaluationConfig.adapterOptions(adapter, ADAPTER_OPTIONS)
+    }
+
+    /**
+     * The budget of a single call graph construction, starting now.
+     */
+    def newBudget(): AnalysisBudget = AnalysisBudget.of(TIMEOUT_SECONDS * 1000, MAX_HEAP_BYTES)
 
     def getOutputDirectory(
         adapter:     JCGTestAdapter,
@@ -37,10 +51,22 @@ case class JCGConfig(
                    allQueries: Boolean = false,
                    fingerprintDir: File = new File(""),
                    debug: Boolean = false,
+                   adapterOptions: Map[String, Map[String, String]] = Map.empty,
+                   timeout: Long = 0,
+                   maxHeap: Long = 0,
                  ) {
     val JRE_LOCATIONS_FILE = "jre.conf"
     val SERIALIZATION_FILE_NAME = "cg.json"
 
+    def getAdapterOptions(adapter: JCGTestAdapter): AdapterOptions = {
+        CommonEvaluationConfig.adapterOptions(adapter, adapterOptions)
+    }
+
+    /**
+     * The budget of a single call graph construction, starting now.
+     */
+    def newBudget(): AnalysisBudget = AnalysisBudget.of(timeout * 1000, maxHeap)
+
     def getOutputDirectory(
                             adapter:     JCGTestAdapter,
                             algorithm:   String,
@@ -116,7 +142,43 @@ object ConfigParser {
                   .text("provide a fingerprint for a project-specific evaluation")
                   .valueName("<path/to/dir>")
                   .optional(),
-                checkConfig(_ => success)
+                opt[String]("option")
+                  .action{(option, c) =>
+                      val (framework, name, value) = CommonEvaluationConfig.parseAdapterOption(option)
+                      val frameworkOptions = c.adapterOptions.getOrElse(framework, Map.empty[String, String])
+                      c.copy(adapterOptions = c.adapterOptions.updated(framework, frameworkOptions.updated(name, value)))
+                  }
+                  .text("Sets an option of an adapter, e.g., <WALA.reflection=NONE>; can be used multiple times.")
+                  .valueName("<framework>.<option>=<value>")
+                  .optional()
+                  .unbounded(),
+                opt[Long]("timeout")
+                  .action((seconds, c) => c.copy(timeout = seconds))
+                  .text("Aborts call graph constructions that take longer than <seconds>.")
+                  .valueName("seconds")
+                  .maxOccurs(1).optional(),
+                opt[String]("max-heap")
+                  .action((size, c) => c.copy(maxHeap = CommonEvaluationConfig.parseSize(size)))
+                  .text("Aborts call graph constructions that use more heap than <size> (e.g., 8g).")
+                  .valueName("size")
+                  .validate{size =>
+                      try {
+                          CommonEvaluationConfig.parseSize(size)
+                          success
+                      } catch {
+                          case e: IllegalArgumentException => failure(e.getMessage)
+                      }
+                  }
+                  .maxOccurs(1).optional(),
+                checkConfig{c =>
+                    val adapters = if (c.adapters.nonEmpty) c.adapters else ALL_ADAPTERS
+                    try {
+                        adapters.foreach(c.getAdapterOptions)
+                        success
+                    } catch {
+                        case e: IllegalArgumentException => failure(e.getMessage)
+                    }
+                }
             )
         }
 
@@ -140,6 +202,11 @@ object CommonEvaluationConfig {
 
         var PROJECT_PREFIX_FILTER = ""
         var ALGORITHM_PREFIX_FILTER = ""
+        var SERIALIZATION_FILE_NAME = "cg.json"
+        var COMPRESS = false
+        var ADAPTER_OPTIONS = Map.empty[String, Map[String, String]]
+        var TIMEOUT_SECONDS = 0L
+        var MAX_HEAP_BYTES = 0L
 
         args.sliding(2, 1).toList.collect {
             case Array("--input", i) ⇒
@@ -158,10 +225,33 @@ object CommonEvaluationConfig {
                 val adapter = ALL_ADAPTERS.find(_.frameworkName().toLowerCase == name.toLowerCase)
                 assert(adapter.nonEmpty, s"'$name' is not a valid framework adapter")
                 EVALUATION_ADAPTERS ++= adapter
+            case Array("--format", format) ⇒
+                SERIALIZATION_FILE_NAME = format match {
+                    case "json"   ⇒ "cg.json"
+                    case "jsonl"  ⇒ s"cg${JsonLinesCallGraphFormat.FileExtension}"
+                    case "binary" ⇒ s"cg${BinaryCallGraphFormat.FileExtension}"
+                    case "store"  ⇒ s"cg${CallGraphStore.ManifestExtension}"
+                    case _        ⇒ throw new IllegalArgumentException(s"unknown format $format")
+                }
+            case Array("--option", option) ⇒ // you can use this option multiple times
+                val (framework, name, value) = parseAdapterOption(option)
+                val frameworkOptions = ADAPTER_OPTIONS.getOrElse(framework, Map.empty[String, String])
+                ADAPTER_OPTIONS = ADAPTER_OPTIONS.updated(framework, frameworkOptions.updated(name, value))
+            case Array("--timeout", seconds) ⇒
+                TIMEOUT_SECONDS = seconds.toLong
+            case Array("--max-heap", size) ⇒
+                MAX_HEAP_BYTES = parseSize(size)
         }
 
         args.sliding(1, 1).toList.collect {
-            case Array("--debug") ⇒ DEBUG = true
+            case Array("--debug")    ⇒ DEBUG = true
+            case Array("--compress") ⇒ COMPRESS = true
+        }
+
+        if (COMPRESS) {
+            if (SERIALIZATION_FILE_NAME.endsWith(CallGraphStore.ManifestExtension))
+                throw new IllegalArgumentException("--compress is not supported by the store format")
+            SERIALIZATION_FILE_NAME += BlockCompression.FileExtension
         }
 
         assert(INPUT_DIR_PATH.nonEmpty, "no input directory specified")
@@ -171,14 +261,67 @@ object CommonEvaluationConfig {
             outputDir.mkdirs()
         }
 
-        new CommonEvaluationConfig(
+        val config = new CommonEvaluationConfig(
             DEBUG,
             INPUT_DIR_PATH,
             OUTPUT_DIR_PATH,
             if(EVALUATION_ADAPTERS.isEmpty) ALL_ADAPTERS else EVALUATION_ADAPTERS,
             PROJECT_PREFIX_FILTER,
-            ALGORITHM_PREFIX_FILTER
+            ALGORITHM_PREFIX_FILTER,
+            SERIALIZATION_FILE_NAME,
+            ADAPTER_OPTIONS,
+            TIMEOUT_SECONDS,
+            MAX_HEAP_BYTES
         )
+        // fail fast on unsupported options or values
+        config.EVALUATION_ADAPTERS.foreach(config.getAdapterOptions)
+        config
+    }
+
+    /**
+     * Parses an adapter option of the form `<framework>.<option>=<value>`; the framework name is
+     * case insensitive.
+     */
+    def parseAdapterOption(option: String): (String, String, String) = {
+        val separator = option.indexOf('=')
+        val dot = option.indexOf('.')
+        if (dot <= 0 || separator < dot + 2)
+            throw new IllegalArgumentException(s"invalid adapter option $option; expected <framework>.<option>=<value>")
+        val framework = option.substring(0, dot).toLowerCase
+        if (!ALL_ADAPTERS.exists(_.frameworkName().toLowerCase == framework))
+            throw new IllegalArgumentException(s"'${option.substring(0, dot)}' is not a valid framework adapter")
+        (framework, option.substring(dot + 1, separator), option.substring(separator + 1))
+    }
+
+    /**
+     * Parses a number of bytes with an optional unit (`k`, `m` or `g`), e.g., `512m`.
+     */
+    def parseSize(size: String): Long = {
+        if (size.isEmpty)
+            throw new IllegalArgumentException("invalid size: empty")
+        val unit = size.toLowerCase.last match {
+            case 'k' ⇒ 1L << 10
+            case 'm' ⇒ 1L << 20
+            case 'g' ⇒ 1L << 30
+            case _   ⇒ 1L
+        }
+        val digits = if (unit == 1L) size else size.substring(0, size.length - 1)
+        try {
+            digits.toLong * unit
+        } catch {
+            case _: NumberFormatException ⇒ throw new IllegalArgumentException(s"invalid size $size")
+        }
+    }
+
+    /**
+     * The options of the given adapter out of the options of all adapters (by lower case
+     * framework name).
+     */
+    def adapterOptions(adapter: JCGTestAdapter, options: Map[String, Map[String, String]]): AdapterOptions = {
+        options.get(adapter.frameworkName().toLowerCase) match {
+            case Some(values) ⇒ AdapterOptions.parse(adapter, values.asJava)
+            case None         ⇒ AdapterOptions.DEFAULTS
+        }
     }
 }
 
@@ -1,13 +1,11 @@
 import java.io.BufferedWriter
 import java.io.File
-import java.io.FileInputStream
 import java.io.FileWriter
 import java.io.PrintWriter
 import java.io.Writer
 
 import org.opalj.log.GlobalLogContext
 import org.opalj.log.OPALLogger
-import play.api.libs.json.Json
 
 import scala.io.Source
 
@@ -41,15 +39,16 @@ object FingerprintExtractor {
 
         val ow = new BufferedWriter(getOutputTarget(resultsDir))
 
-        val projectSpecFiles = projectsDir.listFiles { (_, name) ⇒
-            name.endsWith(".conf") && name.startsWith(config.projectFilter)
-        }.sorted
+        val catalog = ProjectCatalog.load(projectsDir, config.projectFilter)
 
-        printHeader(ow, projectSpecFiles)
+        printHeader(ow, catalog.projects.map(_.specFile))
 
         val adapters = if(config.adapters.nonEmpty) config.adapters else CommonEvaluationConfig.ALL_ADAPTERS
 
-        for {
+        // the projects of an adapter share the JDK related state of its framework
+        val sessions = new AdapterSessions(false, config.getAdapterOptions)
+
+        try for {
             adapter ← adapters
             cgAlgorithm ← adapter.possibleAlgorithms().filter(_.startsWith(config.algorithmFilter))
         } {
@@ -61,42 +60,50 @@ object FingerprintExtractor {
                 fingerprintFile.delete()
             }
             val fingerprintWriter = new PrintWriter(fingerprintFile)
-            for (psf ← projectSpecFiles) {
-                val projectSpec = Json.parse(new FileInputStream(psf)).validate[ProjectSpecification].get
-
-                val outDir = config.getOutputDirectory(adapter, cgAlgorithm, projectSpec, resultsDir)
-                outDir.mkdirs()
-
-                val cgFile = new File(outDir, config.SERIALIZATION_FILE_NAME)
-                if (cgFile.exists()) {
-                    cgFile.delete()
-                }
+            for (project ← catalog.projects) {
+                val projectSpec = project.spec
 
                 println(s"performing test case: ${projectSpec.name}")
 
-                try {
-                    adapter.serializeCG(
+                // the call graph is matched in memory, i.e., it is neither serialized nor parsed
+                val sink = new MatchingCallGraphSink(
+                    projectSpec, jreLocations(projectSpec.java), projectsDir, config.debug, adapter.locationSupport()
+                )
+                // the assessment of aborted analyses
+                val aborted: Option[Assessment] = try {
+                    sessions(adapter, jreLocations(projectSpec.java)).serializeCG(
                         cgAlgorithm,
-                        projectSpec.target(projectsDir).getCanonicalPath,
+                        project.target.getPath,
                         projectSpec.main.orNull,
-                        projectSpec.allClassPathEntryPaths(projectsDir),
-                        jreLocations(projectSpec.java),
-                        false,
-                        cgFile.getAbsolutePath
+                        project.classPathPaths,
+                        sink,
+                        config.newBudget(),
+                        new AnalysisReport
                     )
+                    None
                 } catch {
+                    case e: BudgetExceededException ⇒
+                        println(s"aborted: ${e.getMessage}")
+                        e.getReason match {
+                            case BudgetExceededException.Reason.TIMEOUT       ⇒ Some(Timeout)
+                            case BudgetExceededException.Reason.OUT_OF_MEMORY ⇒ Some(OutOfMemory)
+                        }
+                    case _: OutOfMemoryError ⇒
+                        println("aborted: out of memory")
+                        sessions.close()
+                        Some(OutOfMemory)
                     case e: Throwable ⇒
                         if (config.debug) {
                             println(e.printStackTrace())
                         }
+                        None
                 }
 
                 System.gc()
-                val locationSupport = adapter.locationSupport()
-                val result = CGMatcher.matchCallSites(projectSpec, jreLocations(projectSpec.java), projectsDir, cgFile, config.debug, locationSupport)
+                val result = aborted.map(a ⇒ Array(a, a)).getOrElse(sink.assessment)
                 val resultString = {
-                    if(result(0) == Error) {
-                        Error.shortNotation
+                    if(result(0) == Error || result(0) == Timeout || result(0) == OutOfMemory) {
+                        result(0).shortNotation
                     } else {
                         s"${result(0).shortNotation},${{result(1).shortNotation}}"
                     }
@@ -107,6 +114,8 @@ object FingerprintExtractor {
             }
             ow.newLine()
             fingerprintWriter.close()
+        } finally {
+            sessions.close()
         }
 
         ow.flush()
@@ -1,5 +1,4 @@
 import java.io.File
-import java.io.FileInputStream
 import java.io.PrintWriter
 
 import com.typesafe.config.Config
@@ -11,7 +10,6 @@ import org.opalj.hermes.HermesCore
 import org.opalj.log.GlobalLogContext
 import org.opalj.log.OPALLogger
 import org.opalj.util.PerformanceEvaluation.time
-import play.api.libs.json.Json
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable.ArrayBuffer
@@ -60,24 +58,16 @@ object TestCaseHermesJsonExtractor {
 
         assert(projectsDir.exists() && projectsDir.isDirectory)
 
-        val projectSpecFiles = projectsDir.listFiles(
-            (_, name) ⇒ name.endsWith(".conf")
-        ).sorted
-
-        val projects = for {
-            projectSpecFile ← projectSpecFiles
-            json = Json.parse(new FileInputStream(projectSpecFile))
-            projectSpec = json.validate[ProjectSpecification].getOrElse {
-                throw new IllegalArgumentException("invalid project.conf")
-            }
-            if projectSpec.name.startsWith(evalConfig.PROJECT_PREFIX_FILTER)
-        } yield {
-
-            val allTargets = ArrayBuffer(projectSpec.target(projectsDir).getCanonicalPath)
-            allTargets ++= JRELocation.getAllJREJars(jreLocations(projectSpec.java)).map(_.getCanonicalPath)
-            allTargets ++= projectSpec.allClassPathEntryFiles(projectsDir).map(_.getCanonicalPath)
+        val catalog = ProjectCatalog.load(projectsDir).filter(
+            _.name.startsWith(evalConfig.PROJECT_PREFIX_FILTER)
+        )
+
+        val projects = for (project ← catalog.projects) yield {
+            val allTargets = ArrayBuffer(project.target.getPath)
+            allTargets ++= JRELocation.getAllJREJars(jreLocations(project.spec.java)).map(_.getCanonicalPath)
+            allTargets ++= project.classPathPaths
             ConfigValueFactory.fromMap(Map(
-                "id" → projectSpec.name,
+                "id" → project.name,
                 "cp" → allTargets.mkString(File.pathSeparator)
             ).asJava)
         }
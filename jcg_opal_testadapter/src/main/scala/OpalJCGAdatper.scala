@@ -1,7 +1,4 @@
-import java.io.BufferedWriter
 import java.io.File
-import java.io.FileWriter
-import java.io.Writer
 import java.net.URL
 import scala.collection.JavaConverters._
 import com.typesafe.config.Config
@@ -9,6 +6,7 @@ import com.typesafe.config.ConfigFactory
 import com.typesafe.config.ConfigValueFactory
 import org.opalj.fpcf.FinalEP
 import org.opalj.fpcf.PropertyStore
+import org.opalj.br.ClassFile
 import org.opalj.br.DeclaredMethod
 import org.opalj.br.analyses.DeclaredMethods
 import org.opalj.br.analyses.DeclaredMethodsKey
@@ -20,6 +18,8 @@ import org.opalj.br.fpcf.properties.cg.NoCallees
 import org.opalj.br.fpcf.properties.cg.NoCalleesDueToNotReachableMethod
 import org.opalj.br.instructions.MethodInvocationInstruction
 import org.opalj.br.ObjectType
+import org.opalj.ai.domain.l0.PrimitiveTACAIDomain
+import org.opalj.ai.domain.l1.DefaultDomainWithCFGAndDefUse
 import org.opalj.ai.domain.l2.DefaultPerformInvocationsDomainWithCFGAndDefUse
 import org.opalj.ai.fpcf.properties.AIDomainFactoryKey
 import org.opalj.tac.cg.RTACallGraphKey
@@ -33,6 +33,22 @@ import org.opalj.tac.cg.RTACallGraphKey
  */
 object OpalJCGAdatper extends JCGTestAdapter {
 
+    val DomainOption: AdapterOption[String] = AdapterOption.choice(
+        "domain",
+        "l2",
+        "the abstract interpretation domain used to compute the three-address code",
+        "l0", "l1", "l2"
+    )
+
+    val PropertyStoreOption: AdapterOption[String] = AdapterOption.choice(
+        "propertyStore",
+        "default",
+        "the property store implementation, i.e., whether analyses are executed in parallel",
+        "default", "PKECPropertyStore", "PKESequentialPropertyStore"
+    )
+
+    override def supportedOptions(): Array[AdapterOption[_]] = Array(DomainOption, PropertyStoreOption)
+
     def possibleAlgorithms(): Array[String] = Array[String]("RTA")
 
     def frameworkName(): String = "OPAL"
@@ -46,11 +62,125 @@ object OpalJCGAdatper extends JCGTestAdapter {
         analyzeJDK: Boolean,
         outputFile: String
     ): Long = {
-        val before = System.nanoTime()
-        val baseConfig: Config = ConfigFactory.load().withValue(
-            "org.opalj.br.reader.ClassFileReader.Invokedynamic.rewrite",
-            ConfigValueFactory.fromAnyRef(true)
+        serializeCG(
+            algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, outputFile,
+            AdapterOptions.DEFAULTS, new AnalysisReport
+        ).getAnalysisTime
+    }
+
+    override def serializeCG(
+        algorithm:  String,
+        target:     String,
+        mainClass:  String,
+        classPath:  Array[String],
+        JDKPath:    String,
+        analyzeJDK: Boolean,
+        outputFile: String,
+        options:    AdapterOptions,
+        report:     AnalysisReport
+    ): AnalysisReport = {
+        CallGraphSink.writeFile(new File(outputFile)) { sink ⇒
+            serializeCG(
+                algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, sink, options,
+                AnalysisBudget.UNLIMITED, report
+            )
+        }
+    }
+
+    override def serializeCG(
+        algorithm:  String,
+        target:     String,
+        mainClass:  String,
+        classPath:  Array[String],
+        JDKPath:    String,
+        analyzeJDK: Boolean,
+        sink:       CallGraphSink,
+        options:    AdapterOptions,
+        budget:     AnalysisBudget,
+        report:     AnalysisReport
+    ): AnalysisReport = {
+        constructCallGraph(
+            algorithm, target, mainClass, classPath, new JDKClassFiles(JDKPath, analyzeJDK), sink,
+            options, budget, report
         )
+    }
+
+    /**
+     * Reads the class files of the JDK only once per session.
+     */
+    override def openSession(
+        JDKPath: String, analyzeJDK: Boolean, options: AdapterOptions
+    ): AdapterSession = {
+        val jdk = new JDKClassFiles(JDKPath, analyzeJDK)
+        new AdapterSession {
+            override def serializeCG(
+                algorithm: String,
+                target:    String,
+                mainClass: String,
+                classPath: Array[String],
+                sink:      CallGraphSink,
+                budget:    AnalysisBudget,
+                report:    AnalysisReport
+            ): AnalysisReport = {
+                constructCallGraph(
+                    algorithm, target, mainClass, classPath, jdk, sink, options, budget, report
+                )
+            }
+
+            override def close(): Unit = {}
+        }
+    }
+
+    /**
+     * The class files of a JDK, which are read on demand, i.e., as part of the first analysis,
+     * from its archives or its run-time image (see [[JREClassFiles]]). OPAL's class files are
+     * immutable, such that the projects of all targets of a session share them.
+     */
+    private class JDKClassFiles(JDKPath: String, analyzeJDK: Boolean) {
+
+        /**
+         * The class files of the JDK if it is analyzed.
+         */
+        lazy val classFiles: Iterable[(ClassFile, URL)] =
+            if (analyzeJDK) {
+                val reader = JavaClassFileReader(theConfig = defaultConfig)
+                JREClassFiles(JDKPath, reader.AllClassFiles(_), reader.ClassFile(_))
+            } else Seq.empty
+
+        /**
+         * The class files of the JDK as interfaces only if it is not analyzed.
+         */
+        lazy val libraryClassFiles: Iterable[(ClassFile, URL)] =
+            if (analyzeJDK) Seq.empty
+            else {
+                val reader = Project.JavaLibraryClassFileReader
+                JREClassFiles(JDKPath, reader.AllClassFiles(_), reader.ClassFile(_))
+            }
+    }
+
+    private def defaultConfig: Config = ConfigFactory.load().withValue(
+        "org.opalj.br.reader.ClassFileReader.Invokedynamic.rewrite",
+        ConfigValueFactory.fromAnyRef(true)
+    )
+
+    private def constructCallGraph(
+        algorithm: String,
+        target:    String,
+        mainClass: String,
+        classPath: Array[String],
+        jdk:       JDKClassFiles,
+        sink:      CallGraphSink,
+        options:   AdapterOptions,
+        budget:    AnalysisBudget,
+        report:    AnalysisReport
+    ): AnalysisReport = {
+        report.start()
+        val baseConfig: Config =
+            if (options.get(PropertyStoreOption) == "default") defaultConfig
+            else defaultConfig.withValue(
+                "org.opalj.fpcf.PropertyStore.Default",
+                ConfigValueFactory.fromAnyRef(options.get(PropertyStoreOption))
+            )
 
         // configure the initial entry points
         implicit val config: Config =
@@ -83,15 +213,10 @@ object OpalJCGAdatper extends JCGTestAdapter {
         val cfReader = JavaClassFileReader(theConfig = config)
         val targetClassFiles = cfReader.ClassFiles(new File(target))
         val cpClassFiles = cfReader.AllClassFiles(classPath.map(new File(_)))
-        val jreJars = JRELocation.getAllJREJars(JDKPath)
-        val jre = cfReader.AllClassFiles(jreJars)
-        val allClassFiles = targetClassFiles ++ cpClassFiles ++ (if (analyzeJDK) jre else Seq.empty)
-
-        val libClassFiles =
-            if (analyzeJDK)
-                Seq.empty
-            else
-                Project.JavaLibraryClassFileReader.AllClassFiles(jreJars)
+        val allClassFiles = targetClassFiles ++ cpClassFiles ++ jdk.classFiles
+        val libClassFiles = jdk.libraryClassFiles
+        report.endPhase(AnalysisReport.Phase.INPUT_LOADING)
+        budget.check()
 
         val project: Project[URL] = Project(
             allClassFiles,
@@ -99,77 +224,77 @@ object OpalJCGAdatper extends JCGTestAdapter {
             libraryClassFilesAreInterfacesOnly = true,
             Seq.empty
         )
+        report.endPhase(AnalysisReport.Phase.HIERARCHY)
+        budget.check()
 
-        val performInvocationsDomain = classOf[DefaultPerformInvocationsDomainWithCFGAndDefUse[_]]
+        val domain: Class[_ <: AnyRef] = options.get(DomainOption) match {
+            case "l0" ⇒ classOf[PrimitiveTACAIDomain]
+            case "l1" ⇒ classOf[DefaultDomainWithCFGAndDefUse[_]]
+            case "l2" ⇒ classOf[DefaultPerformInvocationsDomainWithCFGAndDefUse[_]]
+        }
 
         project.updateProjectInformationKeyInitializationData(AIDomainFactoryKey) {
-            case None               ⇒ Set(performInvocationsDomain)
-            case Some(requirements) ⇒ requirements + performInvocationsDomain
+            case None               ⇒ Set(domain)
+            case Some(requirements) ⇒ requirements + domain
         }
 
         implicit val ps: PropertyStore = project.get(PropertyStoreKey)
+        try {
+            // run RTA call graph, along with extra analyses e.g. for reflection
+            project.get(RTACallGraphKey)
+            budget.check()
 
-        // run RTA call graph, along with extra analyses e.g. for reflection
-        project.get(RTACallGraphKey)
+            // start the computation of the call graph
+            implicit val declaredMethods: DeclaredMethods = project.get(DeclaredMethodsKey)
+            for (dm ← declaredMethods.declaredMethods) {
+                ps.force(dm, Callees.key)
+            }
 
-        // start the computation of the call graph
-        implicit val declaredMethods: DeclaredMethods = project.get(DeclaredMethodsKey)
-        for (dm ← declaredMethods.declaredMethods) {
-            ps.force(dm, Callees.key)
-        }
+            // the phase cannot be interrupted, i.e., the budget is only checked afterwards (see
+            // AnalysisBudget)
+            ps.waitOnPhaseCompletion()
+            report.endPhase(AnalysisReport.Phase.CALL_GRAPH)
+            budget.check()
 
-        ps.waitOnPhaseCompletion()
-
-        val after = System.nanoTime()
-
-        val out = new BufferedWriter(new FileWriter(outputFile))
-        out.write(s"""{"reachableMethods":[""")
-        var firstRM = true
-        for {
-            dm ← declaredMethods.declaredMethods if (!dm.hasSingleDefinedMethod && !dm.hasMultipleDefinedMethods) ||
-                (dm.hasSingleDefinedMethod && dm.definedMethod.classFile.thisType == dm.declaringClassType)
-            calleeEOptP = ps(dm, Callees.key)
-            if calleeEOptP.ub ne NoCalleesDueToNotReachableMethod
-        } {
-            if (firstRM) {
-                firstRM = false
-            } else {
-                out.write(",")
-            }
-            out.write("{\"method\":")
-            writeMethodObject(dm, out)
-            out.write(",\"callSites\":[")
-            calleeEOptP match {
-                case FinalEP(_, NoCallees) ⇒
-                case FinalEP(_, callees: Callees) ⇒
-                    writeCallSites(dm, callees, out)
-                case _ ⇒ throw new RuntimeException()
+            for {
+                dm ← declaredMethods.declaredMethods if (!dm.hasSingleDefinedMethod && !dm.hasMultipleDefinedMethods) ||
+                    (dm.hasSingleDefinedMethod && dm.definedMethod.classFile.thisType == dm.declaringClassType)
+                calleeEOptP = ps(dm, Callees.key)
+                if calleeEOptP.ub ne NoCalleesDueToNotReachableMethod
+            } {
+                budget.check()
+                sink.startReachableMethod(createMethodObject(dm))
+                val edges = calleeEOptP match {
+                    case FinalEP(_, NoCallees) ⇒ 0L
+                    case FinalEP(_, callees: Callees) ⇒
+                        writeCallSites(dm, callees, sink)
+                    case _ ⇒ throw new RuntimeException()
+                }
+                sink.endReachableMethod()
+                report.addReachableMethod(edges)
             }
-            out.write("]}")
+            sink.close()
+            report.endPhase(AnalysisReport.Phase.EXPORT)
+        } finally {
+            // the property store's threads are released even if the analysis has been aborted
+            ps.shutdown()
         }
-        out.write("]}")
-        out.flush()
-        out.close()
-
-        ps.shutdown()
 
-        after - before
+        report
     }
 
     private def writeCallSites(
         method:  DeclaredMethod,
         callees: Callees,
-        out:     Writer
-    )(implicit ps: PropertyStore, declaredMethods: DeclaredMethods): Unit = {
+        sink:    CallGraphSink
+    )(implicit ps: PropertyStore, declaredMethods: DeclaredMethods): Long = {
         val bodyO = if (method.hasSingleDefinedMethod) method.definedMethod.body else None
-        var first = true
+        var edges = 0L
         for ((pc, targets) ← callees.callSites()) {
             bodyO match {
                 case None ⇒
                     for (tgt ← targets) {
-                        if (first) first = false
-                        else out.write(",")
-                        writeCallSite(tgt, -1, pc, Iterator(tgt), out)
+                        edges += writeCallSite(tgt, -1, pc, Iterator(tgt), sink)
                     }
 
                 case Some(body) ⇒
@@ -198,64 +323,49 @@ object OpalJCGAdatper extends JCGTestAdapter {
                         }
 
                         for (tgt ← indirectCallees) {
-                            if (first) first = false
-                            else out.write(",")
-                            writeCallSite(tgt, line, pc, Iterator(tgt), out)
+                            edges += writeCallSite(tgt, line, pc, Iterator(tgt), sink)
                         }
                         if (directCallees.nonEmpty) {
-                            if (first) first = false
-                            else out.write(",")
-                            writeCallSite(declaredTarget, line, pc, directCallees, out)
+                            edges += writeCallSite(declaredTarget, line, pc, directCallees, sink)
                         }
 
                     } else {
                         for (tgt ← targets) {
-                            if (first) first = false
-                            else out.write(",")
-                            writeCallSite(tgt, line, pc, Iterator(tgt), out)
+                            edges += writeCallSite(tgt, line, pc, Iterator(tgt), sink)
                         }
                     }
             }
         }
+        edges
     }
 
+    /**
+     * Writes the call site and returns the number of its targets.
+     */
     private def writeCallSite(
         declaredTarget: DeclaredMethod,
         line:           Int,
         pc:             Int,
         targets:        Iterator[DeclaredMethod],
-        out:            Writer
-    ): Unit = {
-        out.write("{\"declaredTarget\":")
-        writeMethodObject(declaredTarget, out)
-        out.write(",\"line\":")
-        out.write(line.toString)
-        out.write(",\"pc\":")
-        out.write(pc.toString)
-        out.write(",\"targets\":[")
-        var first = true
-        for (tgt ← targets) {
-            if (first) first = false
-            else out.write(",")
-            writeMethodObject(tgt, out)
-        }
-        out.write("]}")
+        sink:           CallGraphSink
+    ): Int = {
+        var targetCount = 0
+        sink.writeCallSite(
+            createMethodObject(declaredTarget), line, Some(pc), targets.map { tgt ⇒
+                targetCount += 1
+                createMethodObject(tgt)
+            }
+        )
+        targetCount
     }
 
-    private def writeMethodObject(
-        method: DeclaredMethod,
-        out:    Writer
-    ): Unit = {
-        out.write("{\"name\":\"")
-        out.write(method.name)
-        out.write("\",\"declaringClass\":\"")
-        out.write(method.declaringClassType.toJVMTypeName)
-        out.write("\",\"returnType\":\"")
-        out.write(method.descriptor.returnType.toJVMTypeName)
-        out.write("\",\"parameterTypes\":[")
-        if (method.descriptor.parametersCount > 0)
-            out.write(method.descriptor.parameterTypes.iterator.map[String](_.toJVMTypeName).mkString("\"", "\",\"", "\""))
-        out.write("]}")
+    private def createMethodObject(method: DeclaredMethod): Method = {
+        Method(
+            method.name,
+            method.declaringClassType.toJVMTypeName,
+            method.descriptor.returnType.toJVMTypeName,
+            method.descriptor.parameterTypes.iterator.map[String](_.toJVMTypeName).toList
+        )
     }
 
     /**
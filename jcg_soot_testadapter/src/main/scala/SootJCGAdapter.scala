@@ -1,8 +1,6 @@
 import java.io.ByteArrayOutputStream
 import java.io.File
-import java.io.FileWriter
 import java.io.PrintStream
-import play.api.libs.json.Json
 import soot.G
 import soot.PackManager
 import soot.Scene
@@ -21,6 +19,19 @@ object SootJCGAdapter extends JCGTestAdapter {
     private val VTA = "VTA"
     private val Spark = "SPARK"
 
+    val SimulateNativesOption: AdapterOption[java.lang.Boolean] = AdapterOption.bool(
+        "simulateNatives", true, "whether SPARK simulates the effects of native methods"
+    )
+
+    val OnFlyCGOption: AdapterOption[String] = AdapterOption.choice(
+        "onFlyCG",
+        "auto",
+        "whether SPARK builds the call graph on the fly (auto: only for VTA and SPARK)",
+        "auto", "true", "false"
+    )
+
+    override def supportedOptions(): Array[AdapterOption[_]] = Array(SimulateNativesOption, OnFlyCGOption)
+
     override def possibleAlgorithms(): Array[String] = Array(CHA, RTA, VTA, Spark)
 
     override def frameworkName(): String = "Soot"
@@ -34,6 +45,68 @@ object SootJCGAdapter extends JCGTestAdapter {
         analyzeJDK: Boolean,
         outputFile: String
     ): Long = {
+        serializeCG(
+            algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, outputFile,
+            AdapterOptions.DEFAULTS, new AnalysisReport
+        ).getAnalysisTime
+    }
+
+    override def serializeCG(
+        algorithm:  String,
+        target:     String,
+        mainClass:  String,
+        classPath:  Array[String],
+        JDKPath:    String,
+        analyzeJDK: Boolean,
+        outputFile: String,
+        options:    AdapterOptions,
+        report:     AnalysisReport
+    ): AnalysisReport = {
+        CallGraphSink.writeFile(new File(outputFile)) { sink ⇒
+            serializeCG(
+                algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, sink, options,
+                AnalysisBudget.UNLIMITED, report
+            )
+        }
+    }
+
+    override def serializeCG(
+        algorithm:  String,
+        target:     String,
+        mainClass:  String,
+        classPath:  Array[String],
+        JDKPath:    String,
+        analyzeJDK: Boolean,
+        sink:       CallGraphSink,
+        options:    AdapterOptions,
+        budget:     AnalysisBudget,
+        report:     AnalysisReport
+    ): AnalysisReport = {
+        // Soot's global Scene cannot drop the classes of a target, hence, there is nothing that a
+        // session could retain between the analyses (see `openSession`)
+        try {
+            constructCallGraph(
+                algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, sink, options, budget, report
+            )
+        } finally {
+            // the next analysis starts from scratch, even if this one has been aborted
+            G.reset()
+        }
+    }
+
+    private def constructCallGraph(
+        algorithm:  String,
+        target:     String,
+        mainClass:  String,
+        classPath:  Array[String],
+        JDKPath:    String,
+        analyzeJDK: Boolean,
+        sink:       CallGraphSink,
+        options:    AdapterOptions,
+        budget:     AnalysisBudget,
+        report:     AnalysisReport
+    ): AnalysisReport = {
+        report.start()
 
         val o = G.v().soot_options_Options()
         o.set_whole_program(true)
@@ -70,36 +143,49 @@ object SootJCGAdapter extends JCGTestAdapter {
             o.setPhaseOption("cg.spark", "enabled:true")
             o.setPhaseOption("cg.spark", "rta:true")
             o.setPhaseOption("cg.spark", "on-fly-cg:false")
-            o.setPhaseOption("cg.spark", "simulate-natives:true")
+            o.setPhaseOption("cg.spark", s"simulate-natives:${options.get(SimulateNativesOption)}")
         } else if (algorithm.contains(VTA)) {
             o.setPhaseOption("cg.spark", "enabled:true")
             o.setPhaseOption("cg.spark", "vta:true")
-            o.setPhaseOption("cg.spark", "simulate-natives:true")
+            o.setPhaseOption("cg.spark", s"simulate-natives:${options.get(SimulateNativesOption)}")
         } else if (algorithm.contains(Spark)) {
             o.setPhaseOption("cg.spark", "enabled:true")
-            o.setPhaseOption("cg.spark", "simulate-natives:true")
+            o.setPhaseOption("cg.spark", s"simulate-natives:${options.get(SimulateNativesOption)}")
         } else {
             throw new IllegalArgumentException(s"unknown algorithm $algorithm")
         }
+        if (!algorithm.contains(CHA) && options.get(OnFlyCGOption) != "auto")
+            o.setPhaseOption("cg.spark", s"on-fly-cg:${options.get(OnFlyCGOption)}")
 
         val out = new ByteArrayOutputStream()
         G.v.out = new PrintStream(out)
 
         val scene = Scene.v()
-        val before = System.nanoTime
         scene.loadNecessaryClasses()
+        report.endPhase(AnalysisReport.Phase.INPUT_LOADING)
+        // otherwise, the hierarchy is built on demand while constructing the call graph
+        scene.getOrMakeFastHierarchy()
+        report.endPhase(AnalysisReport.Phase.HIERARCHY)
+        // Soot cannot be interrupted while running the packs, i.e., the budget is only checked
+        // before and afterwards (see AnalysisBudget)
+        budget.check()
         // TODO SET ENTRYPOINTS?
         PackManager.v().runPacks()
-        val after = System.nanoTime
+        report.endPhase(AnalysisReport.Phase.CALL_GRAPH)
+        budget.check()
 
         val cg = scene.getCallGraph
 
         val worklist = mutable.Queue(scene.getEntryPoints.asScala: _*)
         val processed = mutable.Set(worklist: _*)
 
-        var reachableMethods = Set.empty[ReachableMethod]
+        if (algorithm.contains(CHA) && sink.usesTypeHierarchy) {
+            // CHA target sets are (almost) cones, which some formats can store symbolically
+            sink.useTypeHierarchy(createTypeHierarchy(scene))
+        }
 
         while (worklist.nonEmpty) {
+            budget.check()
             val currentMethod = worklist.dequeue()
 
             var callSitesMap = Map.empty[(SootMethod, Int), Set[SootMethod]]
@@ -140,17 +226,14 @@ object SootJCGAdapter extends JCGTestAdapter {
             }.toSet
 
             val method = createMethodObject(currentMethod)
-            reachableMethods += ReachableMethod(method, callSites)
+            sink.writeReachableMethod(method, callSites)
+            report.addReachableMethod(callSites.iterator.map(_.targets.size.toLong).sum)
         }
 
-        val file: FileWriter = new FileWriter(outputFile)
-        file.write(Json.prettyPrint(Json.toJson(ReachableMethods(reachableMethods))))
-        file.flush()
-        file.close()
-
-        G.reset()
+        sink.close()
+        report.endPhase(AnalysisReport.Phase.EXPORT)
 
-        after - before
+        report
     }
 
     private def addPhaseOptions(options: ArrayBuffer[String], phase: String, phaseOptions: Array[String]): Unit = {
@@ -159,6 +242,23 @@ object SootJCGAdapter extends JCGTestAdapter {
         options += phaseOptions.mkString(",")
     }
 
+    private def createTypeHierarchy(scene: Scene): TypeHierarchy = {
+        var supertypes = Map.empty[String, List[String]]
+        var declaredMethods = Map.empty[String, Set[Method]]
+        for (clazz ← scene.getClasses.asScala) {
+            val tpe = ASMBackendUtils.toTypeDesc(clazz.getType)
+            val superclass =
+                if (clazz.hasSuperclass) List(ASMBackendUtils.toTypeDesc(clazz.getSuperclass.getType))
+                else Nil
+            val interfaces = clazz.getInterfaces.asScala.map(i ⇒ ASMBackendUtils.toTypeDesc(i.getType))
+            supertypes += tpe → (superclass ++ interfaces)
+            declaredMethods += tpe → clazz.getMethods.asScala.collect {
+                case m if !m.isAbstract ⇒ createMethodObject(m)
+            }.toSet
+        }
+        new TypeHierarchy(supertypes, declaredMethods)
+    }
+
     private def createMethodObject(method: SootMethod): Method = {
         val name = method.getName
         val declaringClass = ASMBackendUtils.toTypeDesc(method.getDeclaringClass.getType)
@@ -6,10 +6,9 @@ import sootup.core.types.{ArrayType, ClassType, Type, VoidType}
 import sootup.java.bytecode.inputlocation.JavaClassPathAnalysisInputLocation
 import sootup.java.core.{JavaIdentifierFactory, JavaProject}
 import sootup.java.core.language.JavaLanguage
-import play.api.libs.json.Json
 import sootup.java.core.views.JavaView
 
-import java.io.FileWriter
+import java.io.File
 import java.util.Collections
 import scala.collection.JavaConverters._
 import scala.collection.mutable
@@ -34,14 +33,107 @@ object SootUpAdapter extends JCGTestAdapter {
         analyzeJDK: Boolean,
         outputFile: String
     ): Long = {
+        serializeCG(
+            algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, outputFile,
+            AdapterOptions.DEFAULTS, new AnalysisReport
+        ).getAnalysisTime
+    }
+
+    override def serializeCG(
+        algorithm: String,
+        target: String,
+        mainClass: String,
+        classPath: Array[String],
+        JDKPath: String,
+        analyzeJDK: Boolean,
+        outputFile: String,
+        options: AdapterOptions,
+        report: AnalysisReport
+    ): AnalysisReport = {
+        CallGraphSink.writeFile(new File(outputFile)) { sink ⇒
+            serializeCG(
+                algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, sink, options,
+                AnalysisBudget.UNLIMITED, report
+            )
+        }
+    }
+
+    override def serializeCG(
+        algorithm: String,
+        target: String,
+        mainClass: String,
+        classPath: Array[String],
+        JDKPath: String,
+        analyzeJDK: Boolean,
+        sink: CallGraphSink,
+        options: AdapterOptions,
+        budget: AnalysisBudget,
+        report: AnalysisReport
+    ): AnalysisReport = {
+        constructCallGraph(algorithm, target, mainClass, new JDKInputLocation(JDKPath), sink, budget, report)
+    }
+
+    /**
+     * Locates the jars of the JDK only once per session; the JDK's classes are still loaded for
+     * each target (see [[JDKInputLocation]]).
+     */
+    override def openSession(
+        JDKPath: String,
+        analyzeJDK: Boolean,
+        options: AdapterOptions
+    ): AdapterSession = {
+        val jdk = new JDKInputLocation(JDKPath)
+        new AdapterSession {
+            override def serializeCG(
+                algorithm: String,
+                target: String,
+                mainClass: String,
+                classPath: Array[String],
+                sink: CallGraphSink,
+                budget: AnalysisBudget,
+                report: AnalysisReport
+            ): AnalysisReport = {
+                constructCallGraph(algorithm, target, mainClass, jdk, sink, budget, report)
+            }
+
+            override def close(): Unit = {}
+        }
+    }
+
+    /**
+     * The input location of the jars of a JDK, which is created on demand and shared by the
+     * projects of all targets of a session; the classes themselves are loaded by the view of each
+     * project, i.e., a session does not amortize the (dominant) costs of loading the JDK.
+     */
+    private class JDKInputLocation(JDKPath: String) {
+
+        lazy val inputLocation: JavaClassPathAnalysisInputLocation = {
+            // the class path input location neither supports jmod files nor run-time images
+            val jre = JREIndex(JDKPath)
+            val jdkJars = jre.classArchives.filter(_.getName.endsWith(".jar"))
+            if (!jre.archiveOf(JREIndex.ObjectClass).exists(jdkJars.contains))
+                throw new IllegalArgumentException(s"SootUp only supports JDKs whose classes are stored in jar files: $JDKPath")
+            new JavaClassPathAnalysisInputLocation(jdkJars.map(_.getPath).mkString(File.pathSeparator))
+        }
+    }
+
+    private def constructCallGraph(
+        algorithm: String,
+        target: String,
+        mainClass: String,
+        jdk: JDKInputLocation,
+        sink: CallGraphSink,
+        budget: AnalysisBudget,
+        report: AnalysisReport
+    ): AnalysisReport = {
+        report.start()
 
         val identifierFactory = JavaIdentifierFactory.getInstance()
         val inputLocation = new JavaClassPathAnalysisInputLocation(target)
-        val rtJar = new JavaClassPathAnalysisInputLocation(System.getProperty("java.home") + "/lib/rt.jar")
         val javaVersion = new JavaLanguage(8);
         val javaProject = JavaProject.builder(javaVersion)
                                      .addInputLocation(inputLocation)
-                                     .addInputLocation(rtJar)
+                                     .addInputLocation(jdk.inputLocation)
                                      .build()
 
         val view = javaProject.createView()
@@ -67,9 +159,10 @@ object SootUpAdapter extends JCGTestAdapter {
             case RTA => new RapidTypeAnalysisAlgorithm(view)
             case _ => throw new IllegalArgumentException(s"unknown algorithm $algorithm")
         }
+        // the view loads the classes on demand, hence, the hierarchy is part of the call graph phase
+        report.endPhase(AnalysisReport.Phase.INPUT_LOADING)
+        budget.check()
 
-        var after: Long = 0L;
-        val before = System.nanoTime
         val cg = cgAlgorithm.initialize(entryMethods)
 //        val cg = if (algorithm.contains(VTA)) {
 //            val spark = new Spark.Builder(view, tempCG).vta(true).build
@@ -85,13 +178,13 @@ object SootUpAdapter extends JCGTestAdapter {
 //            after = System.nanoTime
 //            tempCG
 //        }
-        after = System.nanoTime
+        report.endPhase(AnalysisReport.Phase.CALL_GRAPH)
+        budget.check()
         val worklist = mutable.Queue(entryMethods.asScala: _*)
         val processed = mutable.Set(worklist: _*)
 
-        var reachableMethods = Set.empty[ReachableMethod]
-
         while (worklist.nonEmpty) {
+            budget.check()
             val entryMethod = worklist.dequeue()
             var callSitesMap = Map.empty[(MethodSignature, Int), Set[MethodSignature]]
             for (target <- cg.callsFrom(entryMethod).asScala) {
@@ -110,15 +203,14 @@ object SootUpAdapter extends JCGTestAdapter {
             }.toSet
 
             val method = createMethodObject(entryMethod)
-            reachableMethods += ReachableMethod(method, callSites)
+            sink.writeReachableMethod(method, callSites)
+            report.addReachableMethod(callSites.iterator.map(_.targets.size.toLong).sum)
         }
 
-        val file: FileWriter = new FileWriter(outputFile)
-        file.write(Json.prettyPrint(Json.toJson(ReachableMethods(reachableMethods))))
-        file.flush()
-        file.close()
+        sink.close()
+        report.endPhase(AnalysisReport.Phase.EXPORT)
 
-        after - before
+        report
 
     }
 
@@ -0,0 +1,126 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A typed option of a {@link JCGTestAdapter}, e.g., a reflection handling mode or whether native
+ * methods are simulated, along with its default value, i.e., the adapter's behavior if the option
+ * is not specified.
+ *
+ * Options are specified as strings, e.g., on the command line, and are parsed by
+ * {@link #parse(String)}; use {@link AdapterOptions} to access their values.
+ *
+ * @param <T> the type of the option's values
+ */
+public final class AdapterOption<T> {
+
+    private final String name;
+    private final String description;
+    private final T defaultValue;
+    private final Function<String, T> parser;
+    private final List<String> values;
+
+    private AdapterOption(
+            String name,
+            String description,
+            T defaultValue,
+            Function<String, T> parser,
+            List<String> values) {
+        this.name = name;
+        this.description = description;
+        this.defaultValue = defaultValue;
+        this.parser = parser;
+        this.values = values;
+    }
+
+    /**
+     * An option whose values are `true` or `false`.
+     */
+    public static AdapterOption<Boolean> bool(String name, boolean defaultValue, String description) {
+        return new AdapterOption<>(
+                name, description, defaultValue, value -> {
+                    if (!value.equals("true") && !value.equals("false"))
+                        throw new IllegalArgumentException(name + " must be true or false: " + value);
+                    return Boolean.valueOf(value);
+                }, Arrays.asList("true", "false")
+        );
+    }
+
+    /**
+     * An option whose values are integers.
+     */
+    public static AdapterOption<Integer> integer(String name, int defaultValue, String description) {
+        return new AdapterOption<>(
+                name, description, defaultValue, value -> {
+                    try {
+                        return Integer.valueOf(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException(name + " must be an integer: " + value);
+                    }
+                }, Collections.emptyList()
+        );
+    }
+
+    /**
+     * An option whose values are arbitrary strings, e.g., paths.
+     */
+    public static AdapterOption<String> string(String name, String defaultValue, String description) {
+        return new AdapterOption<>(
+                name, description, defaultValue, Function.identity(), Collections.emptyList()
+        );
+    }
+
+    /**
+     * An option whose values are one of the given strings.
+     */
+    public static AdapterOption<String> choice(
+            String name, String defaultValue, String description, String... values) {
+        List<String> allowedValues = Arrays.asList(values);
+        if (!allowedValues.contains(defaultValue))
+            throw new IllegalArgumentException("invalid default value of " + name + ": " + defaultValue);
+        return new AdapterOption<>(
+                name, description, defaultValue, value -> {
+                    if (!allowedValues.contains(value))
+                        throw new IllegalArgumentException(
+                                name + " must be one of " + String.join(", ", allowedValues) + ": " + value
+                        );
+                    return value;
+                }, allowedValues
+        );
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public T getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * The admissible values of the option or an empty list if the values are not restricted to a
+     * fixed set.
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Parses the given value of this option.
+     *
+     * @throws IllegalArgumentException if the value is not admissible
+     */
+    public T parse(String value) {
+        return parser.apply(value);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (default: " + defaultValue + ")";
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * The values of the {@link AdapterOption}s of a {@link JCGTestAdapter} for a single call graph
+ * construction; options that are not specified have their default value.
+ */
+public final class AdapterOptions {
+
+    /**
+     * All options have their default values.
+     */
+    public static final AdapterOptions DEFAULTS = new AdapterOptions(Collections.emptyMap());
+
+    private final Map<String, Object> values;
+
+    private AdapterOptions(Map<String, Object> values) {
+        this.values = values;
+    }
+
+    /**
+     * Parses the given option values (by option name) for the given adapter.
+     *
+     * @throws IllegalArgumentException if the adapter does not support one of the options or if a
+     *         value is not admissible
+     */
+    public static AdapterOptions parse(JCGTestAdapter adapter, Map<String, String> options) {
+        Map<String, AdapterOption<?>> supported = Arrays.stream(adapter.supportedOptions())
+                .collect(Collectors.toMap(AdapterOption::getName, option -> option));
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            AdapterOption<?> supportedOption = supported.get(option.getKey());
+            if (supportedOption == null)
+                throw new IllegalArgumentException(
+                        adapter.frameworkName() + " does not support the option " + option.getKey() +
+                                "; supported options: " + supported.values()
+                );
+            values.put(option.getKey(), supportedOption.parse(option.getValue()));
+        }
+        return new AdapterOptions(values);
+    }
+
+    /**
+     * The value of the given option.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(AdapterOption<T> option) {
+        Object value = values.get(option.getName());
+        return value == null ? option.getDefaultValue() : (T) value;
+    }
+
+    public boolean isSpecified(AdapterOption<?> option) {
+        return values.containsKey(option.getName());
+    }
+
+    /**
+     * The values of all options of the given adapter, including the default values.
+     */
+    public Map<String, Object> effectiveValues(JCGTestAdapter adapter) {
+        Map<String, Object> effective = new TreeMap<>();
+        for (AdapterOption<?> option : adapter.supportedOptions())
+            effective.put(option.getName(), get(option));
+        return effective;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Constructs the call graphs of multiple targets with the same JDK and options (see
+ * {@link JCGTestAdapter#openSession(String, boolean, AdapterOptions)}), such that an adapter can
+ * reuse the JDK related state of its framework, e.g., the parsed class files of the JDK, instead of
+ * recreating it for each target.
+ *
+ * Sessions are not thread-safe; they must be closed to release the retained state.
+ */
+public interface AdapterSession extends AutoCloseable {
+
+    /**
+     * Constructs the call graph of the given target like
+     * {@link JCGTestAdapter#serializeCG(String, String, String, String[], String, boolean, CallGraphSink, AdapterOptions, AnalysisBudget, AnalysisReport)}
+     * using the JDK and the options of the session.
+     *
+     * @param mainClass the main-class to be analysed (x.y.Foo) or `null` in case of a library
+     * @return the given report
+     */
+    AnalysisReport serializeCG(
+            String algorithm,
+            String target,
+            String mainClass,
+            String[] classPath,
+            CallGraphSink sink,
+            AnalysisBudget budget,
+            AnalysisReport report) throws Exception;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,115 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * The resources available to a single call graph construction: a deadline and a ceiling of the
+ * used heap.
+ *
+ * Adapters call {@link #check()} at safe points, e.g., in each iteration of a worklist or between
+ * the phases of a framework, which throws a {@link BudgetExceededException} once the budget is
+ * exceeded. Before propagating the exception, adapters release the framework's state, such that
+ * the JVM remains usable for subsequent call graph constructions.
+ *
+ * Frameworks that cannot be interrupted within a phase (e.g., Soot's packs or the phases of OPAL's
+ * property store) are only checked between their phases; such a phase runs to completion even if
+ * it exceeds the budget. To bound them reliably, run each analysis in its own JVM (e.g., with
+ * `-Xmx` and an external timeout).
+ */
+public final class AnalysisBudget {
+
+    /**
+     * Neither the time nor the heap is limited.
+     */
+    public static final AnalysisBudget UNLIMITED = new AnalysisBudget(0, 0, 0);
+
+    private static final List<MemoryPoolMXBean> MEMORY_POOLS = ManagementFactory.getMemoryPoolMXBeans();
+
+    private final long timeoutMillis;
+    private final long deadline;
+    private final long maxHeapBytes;
+
+    private AnalysisBudget(long timeoutMillis, long deadline, long maxHeapBytes) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = deadline;
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    /**
+     * A budget whose deadline is `timeoutMillis` from now; a timeout or heap ceiling that is not
+     * positive is unlimited.
+     */
+    public static AnalysisBudget of(long timeoutMillis, long maxHeapBytes) {
+        return new AnalysisBudget(
+                Math.max(timeoutMillis, 0),
+                System.nanoTime() + timeoutMillis * 1000000L,
+                Math.max(maxHeapBytes, 0)
+        );
+    }
+
+    /**
+     * The heap ceiling in bytes (0 if the heap is unlimited), e.g., to bound analyses that run in a
+     * separate process, whose heap is not checked by {@link #check()}.
+     */
+    public long getMaxHeapBytes() {
+        return maxHeapBytes;
+    }
+
+    public boolean hasDeadline() {
+        return timeoutMillis > 0;
+    }
+
+    /**
+     * The remaining time in nanoseconds ({@link Long#MAX_VALUE} if there is no deadline).
+     */
+    public long getRemainingNanos() {
+        return hasDeadline() ? deadline - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    public boolean isExceeded() {
+        return exceededReason() != null;
+    }
+
+    /**
+     * @throws BudgetExceededException if the deadline has passed or the used heap exceeds the
+     *         ceiling
+     */
+    public void check() {
+        BudgetExceededException.Reason reason = exceededReason();
+        if (reason == BudgetExceededException.Reason.TIMEOUT)
+            throw new BudgetExceededException(reason, "exceeded the timeout of " + timeoutMillis + " ms");
+        if (reason == BudgetExceededException.Reason.OUT_OF_MEMORY)
+            throw new BudgetExceededException(reason, "exceeded the heap ceiling of " + maxHeapBytes + " bytes");
+    }
+
+    private BudgetExceededException.Reason exceededReason() {
+        if (hasDeadline() && System.nanoTime() - deadline > 0)
+            return BudgetExceededException.Reason.TIMEOUT;
+        if (maxHeapBytes > 0) {
+            Runtime runtime = Runtime.getRuntime();
+            // the current usage includes garbage; only the usage after the last collection counts
+            if (runtime.totalMemory() - runtime.freeMemory() > maxHeapBytes && heapAfterLastGC() > maxHeapBytes)
+                return BudgetExceededException.Reason.OUT_OF_MEMORY;
+        }
+        return null;
+    }
+
+    private static long heapAfterLastGC() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : MEMORY_POOLS) {
+            if (pool.getType() == MemoryType.HEAP) {
+                MemoryUsage usage = pool.getCollectionUsage();
+                used += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisBudget(timeout: " + (hasDeadline() ? timeoutMillis + " ms" : "none") +
+                ", heap: " + (maxHeapBytes > 0 ? maxHeapBytes + " bytes" : "unlimited") + ")";
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * A structured report of a single call graph construction (see
+ * {@link JCGTestAdapter#serializeCG(String, String, String, String[], String, boolean, String, AdapterOptions, AnalysisReport)}):
+ * the duration of each {@link Phase}, the heap used at the end of each phase, and the size of
+ * the computed call graph.
+ *
+ * An adapter calls {@link #start()} once it begins to analyze the target and
+ * {@link #endPhase(Phase)} at the end of each phase it supports; a phase that is not supported
+ * separately by a framework, e.g., because it builds its class hierarchy lazily, is part of the
+ * subsequent phase.
+ */
+public final class AnalysisReport {
+
+    /**
+     * The phases of a call graph construction, in order.
+     */
+    public enum Phase {
+        /** Reading the target, class path and JDK, including the framework's setup. */
+        INPUT_LOADING("inputLoading"),
+        /** Building the class hierarchy. */
+        HIERARCHY("hierarchy"),
+        /** Computing the call graph. */
+        CALL_GRAPH("callGraph"),
+        /** Serializing the call graph. */
+        EXPORT("export");
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+
+        /**
+         * The (camel case) name of the phase used in machine readable reports.
+         */
+        public String key() {
+            return key;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long[] durations = new long[PHASES.length];
+    private final long[] usedHeap = new long[PHASES.length];
+    private final boolean[] recorded = new boolean[PHASES.length];
+
+    private long phaseStart = System.nanoTime();
+
+    private long reachableMethods = 0;
+    private long edges = 0;
+
+    /**
+     * Starts the first phase.
+     */
+    public void start() {
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Ends the given phase, which started at the end of the previous phase (or at
+     * {@link #start()}), and starts the next one.
+     */
+    public void endPhase(Phase phase) {
+        long now = System.nanoTime();
+        Runtime runtime = Runtime.getRuntime();
+        recordPhase(phase, now - phaseStart, runtime.totalMemory() - runtime.freeMemory());
+        phaseStart = now;
+    }
+
+    /**
+     * Records the duration of a phase that has been measured by other means; the used heap is
+     * unknown (-1) if not available.
+     */
+    public void recordPhase(Phase phase, long nanos, long usedHeapBytes) {
+        durations[phase.ordinal()] += nanos;
+        usedHeap[phase.ordinal()] = usedHeapBytes;
+        recorded[phase.ordinal()] = true;
+    }
+
+    /**
+     * Records a reachable method with the given number of call edges.
+     */
+    public void addReachableMethod(long edgeCount) {
+        reachableMethods += 1;
+        edges += edgeCount;
+    }
+
+    public boolean isRecorded(Phase phase) {
+        return recorded[phase.ordinal()];
+    }
+
+    /**
+     * The duration of the given phase in nanoseconds (0 if not recorded).
+     */
+    public long getDuration(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+    /**
+     * The heap used at the end of the given phase in bytes (-1 if unknown).
+     */
+    public long getUsedHeap(Phase phase) {
+        return recorded[phase.ordinal()] ? usedHeap[phase.ordinal()] : -1;
+    }
+
+    /**
+     * The duration of all phases except for the export, i.e., the time needed to construct the
+     * call graph in nanoseconds.
+     */
+    public long getAnalysisTime() {
+        long time = 0;
+        for (Phase phase : PHASES) {
+            if (phase != Phase.EXPORT)
+                time += durations[phase.ordinal()];
+        }
+        return time;
+    }
+
+    public long getReachableMethods() {
+        return reachableMethods;
+    }
+
+    public long getEdges() {
+        return edges;
+    }
+}
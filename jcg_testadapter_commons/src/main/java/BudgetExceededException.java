@@ -0,0 +1,42 @@
+/**
+ * Thrown by {@link AnalysisBudget#check()} if a call graph construction exceeds its budget; the
+ * call graph is incomplete then.
+ */
+public final class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The exceeded limit.
+     */
+    public enum Reason {
+        /** The deadline has passed. */
+        TIMEOUT("timeout"),
+        /** The used heap exceeds the ceiling. */
+        OUT_OF_MEMORY("outOfMemory");
+
+        private final String key;
+
+        Reason(String key) {
+            this.key = key;
+        }
+
+        /**
+         * The (camel case) name of the reason used in machine readable reports.
+         */
+        public String key() {
+            return key;
+        }
+    }
+
+    private final Reason reason;
+
+    public BudgetExceededException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.File;
+
 /**
  * A interface to adapt a static analysis framework to be used in the JCG context.
  *
@@ -22,6 +24,113 @@ public interface JCGTestAdapter {
             boolean analyzeJDK,
             String outputFile) throws Exception;
 
+    /**
+     * Constructs and serializes the call graph like
+     * {@link #serializeCG(String, String, String, String[], String, boolean, String)}, using the
+     * given values of the {@link #supportedOptions()}, and records the duration of each phase and
+     * the size of the call graph in the given report.
+     *
+     * Adapters that do not distinguish the phases report the elapsed time as
+     * {@link AnalysisReport.Phase#CALL_GRAPH}.
+     *
+     * @return the given report
+     */
+    default AnalysisReport serializeCG(
+            String algorithm,
+            String target,
+            String mainClass,
+            String[] classPath,
+            String JDKPath,
+            boolean analyzeJDK,
+            String outputFile,
+            AdapterOptions options,
+            AnalysisReport report) throws Exception {
+        long elapsed = serializeCG(
+                algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, outputFile
+        );
+        report.recordPhase(AnalysisReport.Phase.CALL_GRAPH, elapsed, -1);
+        return report;
+    }
+
+    /**
+     * Constructs the call graph like
+     * {@link #serializeCG(String, String, String, String[], String, boolean, String, AdapterOptions, AnalysisReport)},
+     * but pushes the reachable methods and their call sites into the given sink instead of
+     * serializing them; the sink is closed once the call graph is complete.
+     *
+     * The construction is aborted with a {@link BudgetExceededException} once it exceeds the
+     * given budget, which adapters check at safe points (see {@link AnalysisBudget}); the sink is
+     * not closed then, but has to be aborted by its owner (see {@link CallGraphSink#abort()}).
+     *
+     * Adapters that do not support sinks write the call graph into a temporary file, which is
+     * then replayed into the sink; they only check the budget before the call graph construction.
+     *
+     * @return the given report
+     */
+    default AnalysisReport serializeCG(
+            String algorithm,
+            String target,
+            String mainClass,
+            String[] classPath,
+            String JDKPath,
+            boolean analyzeJDK,
+            CallGraphSink sink,
+            AdapterOptions options,
+            AnalysisBudget budget,
+            AnalysisReport report) throws Exception {
+        budget.check();
+        File cgFile = File.createTempFile("jcg-", ".json");
+        try {
+            serializeCG(
+                    algorithm, target, mainClass, classPath, JDKPath, analyzeJDK,
+                    cgFile.getAbsolutePath(), options, report
+            );
+            CallGraphReader.replay(cgFile, sink);
+            sink.close();
+        } finally {
+            cgFile.delete();
+        }
+        return report;
+    }
+
+    /**
+     * Opens a session to construct the call graphs of multiple targets with the given JDK and
+     * options. Adapters whose frameworks can safely reuse the JDK related state between call
+     * graph constructions retain it in the session; by default, each call graph is constructed
+     * from scratch.
+     */
+    default AdapterSession openSession(String JDKPath, boolean analyzeJDK, AdapterOptions options) {
+        return new AdapterSession() {
+
+            @Override
+            public AnalysisReport serializeCG(
+                    String algorithm,
+                    String target,
+                    String mainClass,
+                    String[] classPath,
+                    CallGraphSink sink,
+                    AnalysisBudget budget,
+                    AnalysisReport report) throws Exception {
+                return JCGTestAdapter.this.serializeCG(
+                        algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, sink, options,
+                        budget, report
+                );
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * The options of the adapter, e.g., to trade soundness for speed, which can be specified for
+     * each call graph construction.
+     */
+    default AdapterOption<?>[] supportedOptions() {
+        return new AdapterOption<?>[0];
+    }
+
     String[] possibleAlgorithms();
 
     String frameworkName();
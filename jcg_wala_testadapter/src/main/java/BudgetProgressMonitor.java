@@ -0,0 +1,47 @@
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+/**
+ * A progress monitor that cancels WALA's call graph construction once the given budget is
+ * exceeded.
+ */
+public class BudgetProgressMonitor implements IProgressMonitor {
+
+    private final AnalysisBudget budget;
+
+    private volatile boolean canceled = false;
+
+    public BudgetProgressMonitor(AnalysisBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public void beginTask(String task, int totalWork) {
+    }
+
+    @Override
+    public void subTask(String subTask) {
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled || budget.isExceeded();
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void worked(int units) {
+    }
+
+    @Override
+    public String getCancelMessage() {
+        return "the analysis budget is exceeded: " + budget;
+    }
+}
@@ -1,5 +1,4 @@
 import java.io.File
-import java.io.FileWriter
 import java.io.PrintWriter
 import java.net.URL
 import java.net.URLClassLoader
@@ -9,18 +8,34 @@ import com.ibm.wala.classLoader.Language.JAVA
 import com.ibm.wala.core.util.config.AnalysisScopeReader
 import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl
 import com.ibm.wala.ipa.callgraph.AnalysisOptions
+import com.ibm.wala.ipa.callgraph.AnalysisScope
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException
 import com.ibm.wala.ipa.callgraph.impl.Util
 import com.ibm.wala.ipa.cha.ClassHierarchyFactory
 import com.ibm.wala.properties.WalaProperties
 import com.ibm.wala.types.MethodReference
 import com.ibm.wala.types.TypeReference
-import com.ibm.wala.util.NullProgressMonitor
-import play.api.libs.json.Json
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable
 
 object WalaJCGAdapter extends JCGTestAdapter {
+
+    val ReflectionOption: AdapterOption[String] = AdapterOption.choice(
+        "reflection",
+        AnalysisOptions.ReflectionOptions.FULL.name,
+        "the handling of reflection",
+        AnalysisOptions.ReflectionOptions.values().map(_.name): _*
+    )
+
+    val ExclusionsOption: AdapterOption[String] = AdapterOption.string(
+        "exclusions",
+        "",
+        "an exclusions file (by default, nothing is excluded if the JDK is analyzed)"
+    )
+
+    override def supportedOptions(): Array[AdapterOption[_]] = Array(ReflectionOption, ExclusionsOption)
+
     override def serializeCG(
         algorithm:  String,
         target:     String,
@@ -30,40 +45,155 @@ object WalaJCGAdapter extends JCGTestAdapter {
         analyzeJDK: Boolean,
         outputFile: String
     ): Long = {
-        val before = System.nanoTime
-        val cl = Thread.currentThread.getContextClassLoader
+        serializeCG(
+            algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, outputFile,
+            AdapterOptions.DEFAULTS, new AnalysisReport
+        ).getAnalysisTime
+    }
 
-        var cp = util.Arrays.stream(classPath).collect(Collectors.joining(File.pathSeparator))
-        cp = target + File.pathSeparator + cp
+    override def serializeCG(
+        algorithm:      String,
+        target:         String,
+        mainClass:      String,
+        classPath:      Array[String],
+        JDKPath:        String,
+        analyzeJDK:     Boolean,
+        outputFile:     String,
+        adapterOptions: AdapterOptions,
+        report:         AnalysisReport
+    ): AnalysisReport = {
+        CallGraphSink.writeFile(new File(outputFile)) { sink ⇒
+            serializeCG(
+                algorithm, target, mainClass, classPath, JDKPath, analyzeJDK, sink, adapterOptions,
+                AnalysisBudget.UNLIMITED, report
+            )
+        }
+    }
 
-        // write wala.properties with the specified JDK and store it in the classpath
-        val tmp = new File("tmp")
-        tmp.mkdirs()
-        val walaPropertiesFile = new File(tmp, "wala.properties")
-        val pw = new PrintWriter(walaPropertiesFile)
-        pw.println(s"java_runtime_dir = $JDKPath")
-        pw.close()
-
-        val sysloader = classOf[WalaProperties].getClassLoader.asInstanceOf[URLClassLoader]
-        val sysclass = classOf[URLClassLoader]
-        val m = sysclass.getDeclaredMethod("addURL", classOf[URL])
-        m.setAccessible(true)
-        m.invoke(sysloader, tmp.toURI.toURL)
-
-        val ex = if (analyzeJDK) {
-            new File(cl.getResource("no-exclusions.txt").getFile)
-        } else {
-            // TODO exclude more of the jdk
-            new File(cl.getResource("Java60RegressionExclusions.txt").getFile)
+    override def serializeCG(
+        algorithm:      String,
+        target:         String,
+        mainClass:      String,
+        classPath:      Array[String],
+        JDKPath:        String,
+        analyzeJDK:     Boolean,
+        sink:           CallGraphSink,
+        adapterOptions: AdapterOptions,
+        budget:         AnalysisBudget,
+        report:         AnalysisReport
+    ): AnalysisReport = {
+        constructCallGraph(
+            algorithm, target, mainClass, classPath, new JDKScope(JDKPath, analyzeJDK, adapterOptions),
+            sink, adapterOptions, budget, report
+        )
+    }
+
+    /**
+     * Creates the primordial scope of the JDK only once per session. This merely saves locating
+     * the JDK and reading the exclusions; the JDK's classes are still loaded for each target (see
+     * [[JDKScope]]).
+     */
+    override def openSession(
+        JDKPath: String, analyzeJDK: Boolean, adapterOptions: AdapterOptions
+    ): AdapterSession = {
+        val jdk = new JDKScope(JDKPath, analyzeJDK, adapterOptions)
+        new AdapterSession {
+            override def serializeCG(
+                algorithm: String,
+                target:    String,
+                mainClass: String,
+                classPath: Array[String],
+                sink:      CallGraphSink,
+                budget:    AnalysisBudget,
+                report:    AnalysisReport
+            ): AnalysisReport = {
+                constructCallGraph(
+                    algorithm, target, mainClass, classPath, jdk, sink, adapterOptions, budget, report
+                )
+            }
+
+            override def close(): Unit = {}
+        }
+    }
+
+    /**
+     * The primordial scope of a JDK, i.e., its modules and the exclusions, which is created on
+     * demand, i.e., as part of the first analysis, and shared by the scopes of all targets of a
+     * session. The class hierarchy, however, is built for each target, as WALA cannot remove the
+     * classes of a target from it and its class loaders cannot be shared between hierarchies;
+     * hence, a session does not amortize the (dominant) costs of loading the JDK.
+     */
+    private class JDKScope(JDKPath: String, analyzeJDK: Boolean, adapterOptions: AdapterOptions) {
+
+        private[this] lazy val primordialScope: AnalysisScope = {
+            val cl = Thread.currentThread.getContextClassLoader
+
+            // write wala.properties with the specified JDK and store it in the classpath
+            val tmp = new File("tmp")
+            tmp.mkdirs()
+            val walaPropertiesFile = new File(tmp, "wala.properties")
+            val pw = new PrintWriter(walaPropertiesFile)
+            pw.println(s"java_runtime_dir = $JDKPath")
+            pw.close()
+
+            val sysloader = classOf[WalaProperties].getClassLoader.asInstanceOf[URLClassLoader]
+            val sysclass = classOf[URLClassLoader]
+            val m = sysclass.getDeclaredMethod("addURL", classOf[URL])
+            m.setAccessible(true)
+            m.invoke(sysloader, tmp.toURI.toURL)
+
+            val ex = if (adapterOptions.get(ExclusionsOption).nonEmpty) {
+                new File(adapterOptions.get(ExclusionsOption))
+            } else if (analyzeJDK) {
+                new File(cl.getResource("no-exclusions.txt").getFile)
+            } else {
+                // TODO exclude more of the jdk
+                new File(cl.getResource("Java60RegressionExclusions.txt").getFile)
+            }
+
+            val scope = AnalysisScopeReader.instance.makePrimordialScope(ex)
+
+            // we do not need the wala.properties anymore!
+            walaPropertiesFile.delete()
+            tmp.delete()
+            scope
         }
 
-        val scope = AnalysisScopeReader.instance.makeJavaBinaryAnalysisScope(cp, ex)
+        /**
+         * Creates a scope of the JDK and the given class path (of the application).
+         */
+        def makeScope(cp: String): AnalysisScope = {
+            val scope = AnalysisScope.createJavaAnalysisScope()
+            scope.addToScope(primordialScope)
+            scope.setExclusions(primordialScope.getExclusions)
+            AnalysisScopeReader.instance.addClassPathToScope(cp, scope, scope.getApplicationLoader)
+            scope
+        }
+    }
 
-        // we do not need the wala.properties anymore!
-        walaPropertiesFile.delete()
-        tmp.delete()
+    private def constructCallGraph(
+        algorithm:      String,
+        target:         String,
+        mainClass:      String,
+        classPath:      Array[String],
+        jdk:            JDKScope,
+        sink:           CallGraphSink,
+        adapterOptions: AdapterOptions,
+        budget:         AnalysisBudget,
+        report:         AnalysisReport
+    ): AnalysisReport = {
+        report.start()
+
+        var cp = util.Arrays.stream(classPath).collect(Collectors.joining(File.pathSeparator))
+        cp = target + File.pathSeparator + cp
+
+        val scope = jdk.makeScope(cp)
+        report.endPhase(AnalysisReport.Phase.INPUT_LOADING)
+        budget.check()
 
         val classHierarchy = ClassHierarchyFactory.make(scope)
+        report.endPhase(AnalysisReport.Phase.HIERARCHY)
+        budget.check()
 
         val entrypoints =
             if (mainClass == null) {
@@ -74,33 +204,40 @@ object WalaJCGAdapter extends JCGTestAdapter {
             }
 
         val options = new AnalysisOptions(scope, entrypoints)
-        options.setReflectionOptions(AnalysisOptions.ReflectionOptions.FULL)
+        options.setReflectionOptions(AnalysisOptions.ReflectionOptions.valueOf(adapterOptions.get(ReflectionOption)))
 
         val cache = new AnalysisCacheImpl
 
-        val cg =
+        // the builders cancel the construction once the budget is exceeded
+        val monitor = new BudgetProgressMonitor(budget)
+        val cg = try {
             if (algorithm.contains("0-CFA")) {
                 val ncfaBuilder = Util.makeZeroCFABuilder(JAVA, options, cache, classHierarchy, scope)
-                ncfaBuilder.makeCallGraph(options)
+                ncfaBuilder.makeCallGraph(options, monitor)
             } else if (algorithm.contains("0-1-CFA")) {
                 val cfaBuilder = Util.makeZeroOneCFABuilder(JAVA, options, cache, classHierarchy, scope)
-                cfaBuilder.makeCallGraph(options)
+                cfaBuilder.makeCallGraph(options, monitor)
             } else if (algorithm.contains("1-CFA")) {
                 val cfaBuilder = Util.makeNCFABuilder(1, options, cache, classHierarchy, scope)
-                cfaBuilder.makeCallGraph(options)
+                cfaBuilder.makeCallGraph(options, monitor)
             } else if (algorithm.contains("RTA")) {
                 val rtaBuilder = Util.makeRTABuilder(options, cache, classHierarchy, scope)
-                rtaBuilder.makeCallGraph(options, new NullProgressMonitor)
+                rtaBuilder.makeCallGraph(options, monitor)
             } else throw new IllegalArgumentException
-        val after = System.nanoTime
+        } catch {
+            case e: CallGraphBuilderCancelException ⇒
+                budget.check()
+                throw e
+        }
+        report.endPhase(AnalysisReport.Phase.CALL_GRAPH)
 
         val initialEntryPoints = cg.getFakeRootNode.iterateCallSites().asScala.map(_.getDeclaredTarget)
 
         val worklist = mutable.Queue(initialEntryPoints.toSeq: _*)
         val processed = mutable.Set(worklist: _*)
 
-        var reachableMethods = Set.empty[ReachableMethod]
         while (worklist.nonEmpty) {
+            budget.check()
             val currentMethod = worklist.dequeue()
 
             val currentMethodResolved = classHierarchy.resolveMethod(currentMethod)
@@ -137,17 +274,15 @@ object WalaJCGAdapter extends JCGTestAdapter {
                 }
             }
 
-            reachableMethods +=
-                ReachableMethod(createMethodObject(currentMethod), callSites.toSet.flatten)
+            val reachableMethodCallSites = callSites.toSet.flatten
+            sink.writeReachableMethod(createMethodObject(currentMethod), reachableMethodCallSites)
+            report.addReachableMethod(reachableMethodCallSites.iterator.map(_.targets.size.toLong).sum)
         }
 
-        val file: FileWriter = new FileWriter(outputFile)
-        val prettyPrint = Json.prettyPrint(Json.toJson(ReachableMethods(reachableMethods)))
-        file.write(prettyPrint)
-        file.flush()
-        file.close()
+        sink.close()
+        report.endPhase(AnalysisReport.Phase.EXPORT)
 
-        after - before
+        report
     }
 
     override def possibleAlgorithms(): Array[String] = Array("0-1-CFA", "RTA", "0-CFA", "1-CFA") //Array("0-1-CFA") //"RTA = "0-CFA = "1-CFA = "0-1-CFA")